@@ -1,6 +1,7 @@
 package com.cope.meteorwebgui;
 
 import com.cope.meteorwebgui.events.EventMonitor;
+import com.cope.meteorwebgui.events.SettingInstrumentation;
 import com.cope.meteorwebgui.gui.WebGUITab;
 import com.cope.meteorwebgui.hud.HudPreviewService;
 import com.cope.meteorwebgui.server.MeteorWebServer;
@@ -40,6 +41,9 @@ public class MeteorWebGUIAddon extends MeteorAddon {
         Tabs.add(new WebGUITab());
         LOG.info("WebGUI tab registered");
 
+        // Meteor has no unload callback, so unhook settings when the game shuts down
+        Runtime.getRuntime().addShutdownHook(new Thread(MeteorWebGUIAddon::unload, "WebGUI Unload"));
+
         // Auto-start server if enabled
         if (WebGUIConfig.get().autoStart.get()) {
             LOG.info("Auto-start enabled, starting server...");
@@ -82,12 +86,16 @@ public class MeteorWebGUIAddon extends MeteorAddon {
             server = new MeteorWebServer(host, port);
             server.start();
 
+            // Client requests that mutate game state are applied on the game thread each tick
+            MeteorClient.EVENT_BUS.subscribe(server.getCommandQueue());
+
             // Initialize event monitoring
             eventMonitor = new EventMonitor(server);
             MeteorClient.EVENT_BUS.subscribe(eventMonitor);
             eventMonitor.startMonitoring();
 
             hudPreviewService = new HudPreviewService(server);
+            server.setHudPreviewService(hudPreviewService);
             hudPreviewService.start();
 
             LOG.info("WebGUI server started successfully");
@@ -123,6 +131,7 @@ public class MeteorWebGUIAddon extends MeteorAddon {
             }
 
             // Stop server
+            MeteorClient.EVENT_BUS.unsubscribe(server.getCommandQueue());
             server.shutdown();
             server = null;
 
@@ -133,6 +142,16 @@ public class MeteorWebGUIAddon extends MeteorAddon {
         }
     }
 
+    /**
+     * Stop the server if it is running and restore every setting callback the addon wrapped
+     */
+    public static void unload() {
+        if (isServerRunning()) {
+            stopServer();
+        }
+        SettingInstrumentation.uninstall();
+    }
+
     /**
      * Check if server is running
      */
@@ -0,0 +1,50 @@
+package com.cope.meteorwebgui.events;
+
+import meteordevelopment.meteorclient.systems.hud.HudElement;
+import meteordevelopment.meteorclient.systems.modules.Module;
+
+/**
+ * Entry points for the mixins that observe game state changes directly.
+ * Calls are forwarded to the running {@link EventMonitor}, if any, and ignored otherwise.
+ */
+public final class ChangeHooks {
+    private static volatile EventMonitor monitor;
+    private static volatile boolean moduleHookFired;
+
+    private ChangeHooks() {}
+
+    static void attach(EventMonitor eventMonitor) {
+        monitor = eventMonitor;
+    }
+
+    static void detach(EventMonitor eventMonitor) {
+        if (monitor == eventMonitor) {
+            monitor = null;
+        }
+    }
+
+    /**
+     * Whether the module toggle hook has fired at least once, i.e. the mixin is applied.
+     */
+    static boolean moduleHookFired() {
+        return moduleHookFired;
+    }
+
+    public static void moduleToggled(Module module) {
+        moduleHookFired = true;
+        EventMonitor current = monitor;
+        if (current != null) {
+            current.onModuleToggled(module);
+        }
+    }
+
+    /**
+     * A HUD element was toggled, moved or resized. Resizes are reported every frame, changed or not.
+     */
+    public static void hudElementChanged(HudElement element) {
+        EventMonitor current = monitor;
+        if (current != null) {
+            current.onHudElementChanged(element);
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package com.cope.meteorwebgui.events;
 
 import com.cope.meteorwebgui.mapping.HudMapper;
+import com.cope.meteorwebgui.mapping.TargetIndex;
 import com.cope.meteorwebgui.server.MeteorWebServer;
 import meteordevelopment.meteorclient.events.meteor.ActiveModulesChangedEvent;
-import meteordevelopment.meteorclient.events.render.Render2DEvent;
+import meteordevelopment.meteorclient.events.world.TickEvent;
 import meteordevelopment.meteorclient.settings.Setting;
-import meteordevelopment.meteorclient.settings.SettingGroup;
 import meteordevelopment.meteorclient.systems.hud.Hud;
 import meteordevelopment.meteorclient.systems.hud.HudElement;
 import meteordevelopment.meteorclient.systems.modules.Module;
@@ -14,20 +14,38 @@ import meteordevelopment.orbit.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
 
 /**
  * Monitors module and setting changes and broadcasts them to WebSocket clients
  */
 public class EventMonitor {
     private static final Logger LOG = LoggerFactory.getLogger("WebGUI Event Monitor");
+    // Re-check every HUD element this often even without a change hint, in case one was missed
+    private static final int HUD_RESCAN_TICKS = 20;
+    // Full module scan as a safety net for state changes that bypass Module.toggle
+    private static final int MODULE_RECONCILE_TICKS = 200;
 
     private final MeteorWebServer server;
-    private final Map<Setting<?>, Consumer<?>> originalCallbacks = new HashMap<>();
+    private final SettingInstrumentation.Listener settingListener = this::onSettingChanged;
     private final Map<String, Boolean> moduleStates = new HashMap<>();
-    private final Map<String, Boolean> hudStates = new HashMap<>();
+    private int ticksSinceReconcile;
+
+    // Last broadcast HUD state, in arrays indexed like the cached element list. The HudElement mixin marks
+    // elements dirty as they change and only those are compared, once per tick.
+    private HudElement[] hudElements = new HudElement[0];
+    private String[] hudIds = new String[0];
+    private final Map<HudElement, Integer> hudIndex = new IdentityHashMap<>();
+    private final BitSet hudActive = new BitSet();
+    private int[] hudBounds = new int[0];
+    private final BitSet hudDirty = new BitSet();
+    private int hudGeneration;
+    private int ticksSinceHudScan;
 
     public EventMonitor(MeteorWebServer server) {
         this.server = server;
@@ -47,151 +65,207 @@ public class EventMonitor {
 
         monitorHudElements();
 
+        // Requests resolve their targets through the index from now on
+        server.getTargetIndex().rebuild();
+
+        ChangeHooks.attach(this);
+        SettingInstrumentation.setListener(settingListener);
+
         LOG.info("Event monitoring started for {} modules", Modules.get().getCount());
     }
 
     /**
-     * Handle module toggle events
+     * Called by the {@code Module.toggle} mixin with the module that just changed, so only that one is compared.
+     */
+    void onModuleToggled(Module module) {
+        updateModuleState(module);
+    }
+
+    /**
      * ActiveModulesChangedEvent is a singleton event that fires whenever any module toggles,
-     * but doesn't tell us which one. So we compare current state to our tracked state.
+     * but doesn't tell us which one. Once the toggle hook is known to work it reports the module
+     * directly; until then, or if the mixin could not be applied, compare every module instead.
      */
     @EventHandler
     private void onModuleToggle(ActiveModulesChangedEvent event) {
-        // Find which module(s) changed state
+        if (!ChangeHooks.moduleHookFired()) {
+            reconcileModules();
+        }
+    }
+
+    @EventHandler
+    private void onTick(TickEvent.Post event) {
+        if (++ticksSinceReconcile >= MODULE_RECONCILE_TICKS) {
+            ticksSinceReconcile = 0;
+            reconcileModules();
+        }
+
+        if (hudGeneration != TargetIndex.hudGeneration()) {
+            refreshHudElements(true);
+        }
+        if (++ticksSinceHudScan >= HUD_RESCAN_TICKS) {
+            ticksSinceHudScan = 0;
+            refreshHudElements(true);
+            hudDirty.set(0, hudElements.length);
+        }
+        flushHudChanges();
+    }
+
+    private void reconcileModules() {
         for (Module module : Modules.get().getAll()) {
-            Boolean previousState = moduleStates.get(module.name);
-            boolean currentState = module.isActive();
+            updateModuleState(module);
+        }
+    }
 
-            if (previousState == null || previousState != currentState) {
-                // State changed!
-                moduleStates.put(module.name, currentState);
+    private void updateModuleState(Module module) {
+        boolean currentState = module.isActive();
+        Boolean previousState = moduleStates.put(module.name, currentState);
 
-                if (server.isRunning()) {
-                    server.broadcastModuleStateChange(module);
-                    LOG.debug("Module state changed: {} -> {}", module.name, currentState);
-                }
+        if (previousState == null || previousState != currentState) {
+            if (server.isRunning()) {
+                server.broadcastModuleStateChange(module);
+                LOG.debug("Module state changed: {} -> {}", module.name, currentState);
             }
         }
     }
 
-    @EventHandler
-    private void onHudRender(Render2DEvent event) {
-        for (HudElement element : Hud.get()) {
-            String id = HudMapper.getElementIdentifier(element);
-            boolean currentState = element.isActive();
-            Boolean previousState = hudStates.get(id);
-
-            if (previousState == null || previousState != currentState) {
-                hudStates.put(id, currentState);
-                if (server.isRunning()) {
-                    server.broadcastHudStateChange(element);
-                    LOG.debug("HUD state changed: {} -> {}", id, currentState);
-                }
+    /**
+     * Called by the {@code HudElement} mixin after a toggle, move or resize. Resizes happen every frame for
+     * most elements, so this only marks the element; {@link #flushHudChanges} compares it on the next tick.
+     */
+    void onHudElementChanged(HudElement element) {
+        Integer index = hudIndex.get(element);
+        if (index != null) {
+            hudDirty.set(index);
+        }
+    }
+
+    private void flushHudChanges() {
+        for (int i = hudDirty.nextSetBit(0); i >= 0; i = hudDirty.nextSetBit(i + 1)) {
+            HudElement element = hudElements[i];
+            int base = i * 4;
+            boolean active = element.isActive();
+            int x = element.getX();
+            int y = element.getY();
+            int width = element.getWidth();
+            int height = element.getHeight();
+
+            if (active == hudActive.get(i) && x == hudBounds[base] && y == hudBounds[base + 1]
+                && width == hudBounds[base + 2] && height == hudBounds[base + 3]) {
+                continue;
+            }
+
+            hudActive.set(i, active);
+            hudBounds[base] = x;
+            hudBounds[base + 1] = y;
+            hudBounds[base + 2] = width;
+            hudBounds[base + 3] = height;
+
+            if (server.isRunning()) {
+                server.broadcastHudStateChange(element);
+                LOG.debug("HUD state changed: {} -> {} ({}, {} {}x{})", hudIds[i], active, x, y, width, height);
             }
         }
+        hudDirty.clear();
     }
 
     /**
-     * Wrap setting callbacks
+     * Re-reads the HUD element list. Elements already tracked keep their last broadcast state; new ones are
+     * announced on the next flush if {@code announceNew} is set, otherwise their current state is taken as is.
      */
-    private void monitorModuleSettings(Module module) {
-        for (SettingGroup group : module.settings) {
-            for (Setting<?> setting : group) {
-                wrapSettingCallback(module, setting);
+    private void refreshHudElements(boolean announceNew) {
+        int generation = TargetIndex.hudGeneration();
+        boolean reported = generation != hudGeneration;
+        hudGeneration = generation;
+
+        // Common case: nothing changed, so compare in place before allocating anything
+        int count = 0;
+        boolean unchanged = true;
+        for (HudElement element : Hud.get()) {
+            if (count >= hudElements.length || hudElements[count] != element) {
+                unchanged = false;
+                break;
             }
+            count++;
         }
-    }
+        if (unchanged && count == hudElements.length) return;
 
-    private void monitorHudElements() {
+        if (!reported) {
+            // Found by the rescan, so the Hud mixin missed it; advance the generation for everyone caching the element list
+            TargetIndex.hudChanged();
+            hudGeneration = TargetIndex.hudGeneration();
+        }
+
+        Map<HudElement, Integer> previous = new IdentityHashMap<>(hudIndex);
+        BitSet previousActive = (BitSet) hudActive.clone();
+        int[] previousBounds = hudBounds;
+
+        List<HudElement> elements = new ArrayList<>();
         for (HudElement element : Hud.get()) {
-            String id = HudMapper.getElementIdentifier(element);
-            hudStates.put(id, element.isActive());
-            monitorHudSettings(element);
+            elements.add(element);
         }
-    }
 
-    private void monitorHudSettings(HudElement element) {
-        for (SettingGroup group : element.settings) {
-            for (Setting<?> setting : group) {
-                wrapHudSettingCallback(element, setting);
+        hudElements = elements.toArray(new HudElement[0]);
+        hudIds = new String[hudElements.length];
+        hudBounds = new int[hudElements.length * 4];
+        hudIndex.clear();
+        hudActive.clear();
+        hudDirty.clear();
+        for (int i = 0; i < hudElements.length; i++) {
+            HudElement element = hudElements[i];
+            hudIds[i] = HudMapper.getElementIdentifier(element);
+            hudIndex.put(element, i);
+
+            Integer index = previous.get(element);
+            if (index != null) {
+                hudActive.set(i, previousActive.get(index));
+                System.arraycopy(previousBounds, index * 4, hudBounds, i * 4, 4);
+                // It may have changed while untracked
+                hudDirty.set(i);
+                continue;
+            }
+
+            // Instrumenting is idempotent, so elements hooked at startup are skipped
+            monitorHudSettings(element);
+            if (!announceNew) {
+                hudActive.set(i, element.isActive());
+                hudBounds[i * 4] = element.getX();
+                hudBounds[i * 4 + 1] = element.getY();
+                hudBounds[i * 4 + 2] = element.getWidth();
+                hudBounds[i * 4 + 3] = element.getHeight();
+            } else {
+                // Opposite of the current state, so the next flush reports it
+                hudActive.set(i, !element.isActive());
+                hudDirty.set(i);
             }
         }
     }
 
     /**
-     * Wrap a setting's onChanged callback to broadcast value changes
+     * Hook setting callbacks
      */
-    @SuppressWarnings("unchecked")
-    private <T> void wrapSettingCallback(Module module, Setting<T> setting) {
-        try {
-            // Get the existing onChanged callback via reflection
-            var onChangedField = Setting.class.getDeclaredField("onChanged");
-            onChangedField.setAccessible(true);
-            Consumer<T> originalCallback = (Consumer<T>) onChangedField.get(setting);
-
-            // Store original for potential unwrapping later
-            if (originalCallback != null) {
-                originalCallbacks.put(setting, originalCallback);
-            }
-
-            // Create wrapped callback
-            Consumer<T> wrappedCallback = value -> {
-                // Call original callback if it exists
-                if (originalCallback != null) {
-                    try {
-                        originalCallback.accept(value);
-                    } catch (Exception e) {
-                        LOG.error("Error in original callback for {}.{}: {}",
-                            module.name, setting.name, e.getMessage());
-                    }
-                }
-
-                // Broadcast to WebSocket clients
-                if (server.isRunning()) {
-                    server.broadcastSettingChange(module, setting);
-                }
-            };
-
-            // Set the wrapped callback
-            onChangedField.set(setting, wrappedCallback);
-
-        } catch (Exception e) {
-            LOG.error("Failed to wrap callback for setting {}.{}: {}",
-                module.name, setting.name, e.getMessage());
-        }
+    private void monitorModuleSettings(Module module) {
+        SettingInstrumentation.instrument(module, module.settings);
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> void wrapHudSettingCallback(HudElement element, Setting<T> setting) {
-        try {
-            var onChangedField = Setting.class.getDeclaredField("onChanged");
-            onChangedField.setAccessible(true);
-            Consumer<T> originalCallback = (Consumer<T>) onChangedField.get(setting);
+    private void monitorHudElements() {
+        // Hooks each element's settings as it is first tracked
+        refreshHudElements(false);
+    }
 
-            if (originalCallback != null) {
-                originalCallbacks.put(setting, originalCallback);
-            }
+    private void monitorHudSettings(HudElement element) {
+        SettingInstrumentation.instrument(element, element.settings);
+    }
 
-            Consumer<T> wrappedCallback = value -> {
-                if (originalCallback != null) {
-                    try {
-                        originalCallback.accept(value);
-                    } catch (Exception e) {
-                        LOG.error("Error in original HUD callback for {}.{}: {}",
-                            element.info != null ? element.info.name : element.getClass().getSimpleName(), setting.name, e.getMessage());
-                    }
-                }
-
-                if (server.isRunning()) {
-                    server.broadcastHudSettingChange(element, setting);
-                }
-            };
-
-            onChangedField.set(setting, wrappedCallback);
-
-        } catch (Exception e) {
-            LOG.error("Failed to wrap callback for HUD setting {}.{}: {}",
-                element.info != null ? element.info.name : element.getClass().getSimpleName(), setting.name, e.getMessage());
+    /**
+     * Broadcast a hooked setting change to WebSocket clients
+     */
+    private void onSettingChanged(Object owner, Setting<?> setting) {
+        if (!server.isRunning()) return;
+        if (owner instanceof Module module) {
+            server.broadcastSettingChange(module, setting);
+        } else if (owner instanceof HudElement element) {
+            server.broadcastHudSettingChange(element, setting);
         }
     }
 
@@ -200,8 +274,15 @@ public class EventMonitor {
      */
     public void stopMonitoring() {
         LOG.info("Stopping event monitoring");
-        // Could restore original callbacks here if needed
-        originalCallbacks.clear();
-        hudStates.clear();
+        ChangeHooks.detach(this);
+        SettingInstrumentation.clearListener(settingListener);
+        SettingInstrumentation.uninstall();
+        hudElements = new HudElement[0];
+        hudIds = new String[0];
+        hudBounds = new int[0];
+        hudIndex.clear();
+        hudActive.clear();
+        hudDirty.clear();
+        server.getTargetIndex().clear();
     }
 }
@@ -0,0 +1,199 @@
+package com.cope.meteorwebgui.events;
+
+import meteordevelopment.meteorclient.settings.Setting;
+import meteordevelopment.meteorclient.settings.SettingGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The single layer of hooks on {@code Setting.onChanged}, shared by every server the addon starts.
+ * <p>
+ * Every setting is wrapped at most once, however often it is instrumented, and the hook forwards to whichever
+ * {@link Listener} is current. {@link #uninstall} puts the original callbacks back wherever our hook is still the
+ * outermost wrapper; one that another mod wrapped since is left alone rather than cut out from under it.
+ * Hooked settings are tracked weakly and by identity, so HUD elements that were removed can still be collected.
+ * <p>
+ * The field is read through a cached {@link VarHandle}. Meteor declares it final, which VarHandles cannot write,
+ * so writes go through a setter handle unreflected from the accessible field instead.
+ */
+public final class SettingInstrumentation {
+    private static final Logger LOG = LoggerFactory.getLogger("WebGUI Setting Hooks");
+
+    private static final VarHandle ON_CHANGED;
+    private static final MethodHandle SET_ON_CHANGED;
+
+    static {
+        VarHandle handle = null;
+        MethodHandle setter = null;
+        try {
+            Field field = Setting.class.getDeclaredField("onChanged");
+            field.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(Setting.class, MethodHandles.lookup());
+            handle = lookup.unreflectVarHandle(field);
+            setter = Modifier.isFinal(field.getModifiers()) ? lookup.unreflectSetter(field) : null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.error("Cannot access Setting.onChanged, setting changes will not be broadcast: {}", e.getMessage());
+        }
+        ON_CHANGED = handle;
+        SET_ON_CHANGED = setter;
+    }
+
+    private static final Set<SettingRef> HOOKED = new HashSet<>();
+    private static final ReferenceQueue<Setting<?>> CLEARED = new ReferenceQueue<>();
+    private static volatile Listener listener;
+
+    private SettingInstrumentation() {}
+
+    /**
+     * Receives every instrumented setting change, on the thread that made it.
+     */
+    public interface Listener {
+        void settingChanged(Object owner, Setting<?> setting);
+    }
+
+    /**
+     * Routes hooked changes to {@code current}, or nowhere if {@code null}.
+     */
+    public static void setListener(Listener current) {
+        listener = current;
+    }
+
+    /**
+     * Clears the listener only if it is still {@code previous}, so a late stop cannot detach a newer server.
+     */
+    public static void clearListener(Listener previous) {
+        if (listener == previous) {
+            listener = null;
+        }
+    }
+
+    /**
+     * Hooks every setting of {@code owner}, a module or HUD element, that is not hooked yet.
+     */
+    public static synchronized void instrument(Object owner, Iterable<SettingGroup> settings) {
+        if (ON_CHANGED == null) return;
+        expunge();
+
+        for (SettingGroup group : settings) {
+            for (Setting<?> setting : group) {
+                SettingRef ref = new SettingRef(setting, CLEARED);
+                if (!HOOKED.add(ref)) continue;
+                try {
+                    Consumer<?> original = (Consumer<?>) ON_CHANGED.get(setting);
+                    write(setting, new Hook(owner, setting, original));
+                } catch (Throwable e) {
+                    HOOKED.remove(ref);
+                    LOG.error("Failed to hook setting {}: {}", setting.name, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores the original callback of every setting whose outermost wrapper is still our hook.
+     */
+    public static synchronized void uninstall() {
+        if (ON_CHANGED == null) return;
+        expunge();
+
+        int restored = 0;
+        for (Iterator<SettingRef> iterator = HOOKED.iterator(); iterator.hasNext(); ) {
+            Setting<?> setting = iterator.next().get();
+            if (setting == null) {
+                iterator.remove();
+                continue;
+            }
+            try {
+                if (ON_CHANGED.get(setting) instanceof Hook hook && hook.setting == setting) {
+                    write(setting, hook.original);
+                    iterator.remove();
+                    restored++;
+                }
+            } catch (Throwable e) {
+                LOG.error("Failed to unhook setting {}: {}", setting.name, e.getMessage());
+            }
+        }
+        LOG.info("Restored {} setting callbacks, {} left wrapped by others", restored, HOOKED.size());
+    }
+
+    private static void expunge() {
+        for (Reference<?> ref; (ref = CLEARED.poll()) != null; ) {
+            HOOKED.remove(ref);
+        }
+    }
+
+    private static void write(Setting<?> setting, Consumer<?> value) throws Throwable {
+        if (SET_ON_CHANGED != null) {
+            SET_ON_CHANGED.invoke(setting, value);
+        } else {
+            ON_CHANGED.set(setting, value);
+        }
+    }
+
+    private static final class Hook implements Consumer<Object> {
+        private final Object owner;
+        private final Setting<?> setting;
+        private final Consumer<Object> original;
+
+        @SuppressWarnings("unchecked")
+        private Hook(Object owner, Setting<?> setting, Consumer<?> original) {
+            this.owner = owner;
+            this.setting = setting;
+            this.original = (Consumer<Object>) original;
+        }
+
+        @Override
+        public void accept(Object value) {
+            if (original != null) {
+                try {
+                    original.accept(value);
+                } catch (Exception e) {
+                    LOG.error("Error in original callback for {}: {}", setting.name, e.getMessage());
+                }
+            }
+
+            Listener current = listener;
+            if (current != null) {
+                current.settingChanged(owner, setting);
+            }
+        }
+    }
+
+    /**
+     * Weak reference to a setting that compares by identity, so settings can overload equals freely.
+     */
+    private static final class SettingRef extends WeakReference<Setting<?>> {
+        private final int hash;
+
+        private SettingRef(Setting<?> setting, ReferenceQueue<Setting<?>> queue) {
+            super(setting, queue);
+            hash = System.identityHashCode(setting);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof SettingRef ref) || ref.hash != hash) return false;
+            Object referent = get();
+            return referent != null && referent == ref.get();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.cope.meteorwebgui.hud;
+
+import com.google.gson.stream.JsonWriter;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.Registry;
+import net.minecraft.util.Identifier;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact list of the non-text primitives a HUD element drew: one opcode per primitive, with its coordinates in
+ * {@code floats} and its colors and references in {@code ints}, both in draw order. Each opcode has a fixed number
+ * of each, see {@link #FLOATS} and {@link #INTS}.
+ * <p>
+ * The render thread appends into a pooled, growable instance and records items and entities by raw registry index
+ * and textures by reference, so drawing allocates nothing. {@link #freeze} turns that into an immutable copy on the
+ * publisher thread, where every reference is resolved to an identifier in {@code refs} and replaced by its index
+ * there. The web UI's {@code HudDrawList.vue} replays the frozen list on a canvas.
+ */
+final class HudDrawList {
+    static final byte QUAD = 1;
+    static final byte GRADIENT = 2;
+    static final byte LINE = 3;
+    static final byte TRIANGLE = 4;
+    static final byte TEXTURE = 5;
+    static final byte ITEM = 6;
+    static final byte ENTITY = 7;
+
+    // Indexed by opcode
+    private static final int[] FLOATS = {0, 4, 4, 4, 6, 4, 3, 4};
+    private static final int[] INTS = {0, 1, 4, 1, 1, 2, 2, 1};
+
+    private static final int INITIAL_OPS = 8;
+    private static final Map<Integer, String> ITEM_IDS = new ConcurrentHashMap<>();
+    private static final Map<Integer, String> ENTITY_IDS = new ConcurrentHashMap<>();
+
+    byte[] ops;
+    float[] floats;
+    int[] ints;
+    // Captured textures, by the index a TEXTURE op stores; frozen lists hold resolved identifiers in refs instead
+    private Identifier[] textures;
+    String[] refs;
+    int opCount;
+    int floatCount;
+    int intCount;
+    private int textureCount;
+
+    HudDrawList() {
+        this(new byte[INITIAL_OPS], new float[INITIAL_OPS * 4], new int[INITIAL_OPS * 2], new Identifier[2], null);
+        reset();
+    }
+
+    private HudDrawList(byte[] ops, float[] floats, int[] ints, Identifier[] textures, String[] refs) {
+        this.ops = ops;
+        this.floats = floats;
+        this.ints = ints;
+        this.textures = textures;
+        this.refs = refs;
+        this.opCount = ops.length;
+        this.floatCount = floats.length;
+        this.intCount = ints.length;
+    }
+
+    void reset() {
+        if (textureCount > 0) {
+            Arrays.fill(textures, 0, textureCount, null);
+        }
+        opCount = 0;
+        floatCount = 0;
+        intCount = 0;
+        textureCount = 0;
+    }
+
+    void quad(double x, double y, double width, double height, int color) {
+        op(QUAD);
+        put(x, y, width, height);
+        ints[intCount++] = color;
+    }
+
+    /**
+     * Colors in Meteor's order: top left, top right, bottom right, bottom left.
+     */
+    void gradient(double x, double y, double width, double height, int topLeft, int topRight, int bottomRight, int bottomLeft) {
+        op(GRADIENT);
+        put(x, y, width, height);
+        ints[intCount++] = topLeft;
+        ints[intCount++] = topRight;
+        ints[intCount++] = bottomRight;
+        ints[intCount++] = bottomLeft;
+    }
+
+    void line(double x1, double y1, double x2, double y2, int color) {
+        op(LINE);
+        put(x1, y1, x2, y2);
+        ints[intCount++] = color;
+    }
+
+    void triangle(double x1, double y1, double x2, double y2, double x3, double y3, int color) {
+        op(TRIANGLE);
+        put(x1, y1, x2, y2);
+        floats[floatCount++] = (float) x3;
+        floats[floatCount++] = (float) y3;
+        ints[intCount++] = color;
+    }
+
+    void texture(Identifier texture, double x, double y, double width, double height, int color) {
+        op(TEXTURE);
+        put(x, y, width, height);
+        if (textureCount == textures.length) {
+            textures = Arrays.copyOf(textures, textureCount << 1);
+        }
+        textures[textureCount] = texture;
+        ints[intCount++] = color;
+        ints[intCount++] = textureCount++;
+    }
+
+    void item(int itemRawId, int count, double x, double y, double scale) {
+        op(ITEM);
+        floats[floatCount++] = (float) x;
+        floats[floatCount++] = (float) y;
+        floats[floatCount++] = (float) scale;
+        ints[intCount++] = itemRawId;
+        ints[intCount++] = count;
+    }
+
+    void entity(int entityTypeRawId, double x, double y, double width, double height) {
+        op(ENTITY);
+        put(x, y, width, height);
+        ints[intCount++] = entityTypeRawId;
+    }
+
+    /**
+     * Mixes the recorded primitives into {@code hash}, the same way {@link HudPreviewFrame} mixes text lines.
+     */
+    long fingerprint(long hash) {
+        for (int i = 0; i < opCount; i++) hash = HudPreviewFrame.mix(hash, ops[i]);
+        for (int i = 0; i < floatCount; i++) hash = HudPreviewFrame.mix(hash, Float.floatToIntBits(floats[i]));
+        for (int i = 0; i < intCount; i++) hash = HudPreviewFrame.mix(hash, ints[i]);
+        for (int i = 0; i < textureCount; i++) hash = HudPreviewFrame.mix(hash, textures[i].hashCode());
+        return hash;
+    }
+
+    /**
+     * Immutable, trimmed copy with every reference resolved into {@code refs}; {@code null} if nothing was drawn.
+     */
+    HudDrawList freeze() {
+        if (opCount == 0) return null;
+
+        int[] resolvedInts = Arrays.copyOf(ints, intCount);
+        String[] resolvedRefs = new String[opCount];
+        int refCount = 0;
+        int intIndex = 0;
+        for (int i = 0; i < opCount; i++) {
+            byte op = ops[i];
+            // Reference slots: TEXTURE's second int, ITEM's and ENTITY's first
+            int slot = op == TEXTURE ? intIndex + 1 : op == ITEM || op == ENTITY ? intIndex : -1;
+            if (slot >= 0) {
+                String id = op == TEXTURE ? textures[ints[slot]].toString()
+                    : op == ITEM ? ITEM_IDS.computeIfAbsent(ints[slot], raw -> id(Registries.ITEM, raw))
+                    : ENTITY_IDS.computeIfAbsent(ints[slot], raw -> id(Registries.ENTITY_TYPE, raw));
+                int ref = indexOf(resolvedRefs, refCount, id);
+                if (ref < 0) {
+                    ref = refCount;
+                    resolvedRefs[refCount++] = id;
+                }
+                resolvedInts[slot] = ref;
+            }
+            intIndex += INTS[op];
+        }
+
+        return new HudDrawList(Arrays.copyOf(ops, opCount), Arrays.copyOf(floats, floatCount), resolvedInts,
+            null, Arrays.copyOf(resolvedRefs, refCount));
+    }
+
+    /**
+     * Whether two frozen lists draw the same thing.
+     */
+    static boolean same(HudDrawList a, HudDrawList b) {
+        if (a == null || b == null) return a == b;
+        return Arrays.equals(a.ops, b.ops) && Arrays.equals(a.floats, b.floats)
+            && Arrays.equals(a.ints, b.ints) && Arrays.equals(a.refs, b.refs);
+    }
+
+    /**
+     * Streams a frozen list as {@code {ops, floats, ints, refs}}.
+     */
+    void writeJson(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name("ops").beginArray();
+        for (byte op : ops) out.value(op);
+        out.endArray();
+        out.name("floats").beginArray();
+        for (float value : floats) out.value(value);
+        out.endArray();
+        out.name("ints").beginArray();
+        for (int value : ints) out.value(value);
+        out.endArray();
+        out.name("refs").beginArray();
+        for (String ref : refs) out.value(ref);
+        out.endArray();
+        out.endObject();
+    }
+
+    private void op(byte op) {
+        if (opCount == ops.length) {
+            ops = Arrays.copyOf(ops, opCount << 1);
+        }
+        if (floatCount + FLOATS[op] > floats.length) {
+            floats = Arrays.copyOf(floats, floats.length << 1);
+        }
+        if (intCount + INTS[op] > ints.length) {
+            ints = Arrays.copyOf(ints, ints.length << 1);
+        }
+        ops[opCount++] = op;
+    }
+
+    private void put(double a, double b, double c, double d) {
+        floats[floatCount++] = (float) a;
+        floats[floatCount++] = (float) b;
+        floats[floatCount++] = (float) c;
+        floats[floatCount++] = (float) d;
+    }
+
+    private static <T> String id(Registry<T> registry, int rawId) {
+        T value = registry.get(rawId);
+        Identifier id = value != null ? registry.getId(value) : null;
+        return id != null ? id.toString() : "unknown";
+    }
+
+    private static int indexOf(String[] values, int count, String value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i].equals(value)) return i;
+        }
+        return -1;
+    }
+}
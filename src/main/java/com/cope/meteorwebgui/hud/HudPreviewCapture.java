@@ -1,34 +1,52 @@
 package com.cope.meteorwebgui.hud;
 
 import com.cope.meteorwebgui.mapping.HudMapper;
-import com.google.gson.JsonArray;
+import com.cope.meteorwebgui.mapping.TargetIndex;
 import meteordevelopment.meteorclient.systems.hud.HudElement;
-import meteordevelopment.meteorclient.systems.hud.HudElementInfo;
 import meteordevelopment.meteorclient.utils.render.color.Color;
+import net.minecraft.util.Identifier;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Lightweight capture helper that records text draw calls emitted by HUD elements.
+ * Lightweight capture helper that records the text and primitive draw calls emitted by HUD elements.
  * Heavy processing happens elsewhere; this class stays on the render thread hot path only.
+ * <p>
+ * Capture is off for ordinary frames. {@link #requestFrame} arms it for the next whole HUD frame only, which the
+ * preview service does shortly before each publish while a client is watching.
+ * <p>
+ * A sampled frame is written into the render thread's back {@link HudPreviewFrame} and then swapped into an
+ * exchange slot with a single atomic operation; the publisher swaps its front frame out of that slot the same way.
+ * Each side only ever touches the frame it holds, so neither waits on the other and no frame is reallocated.
  */
 public final class HudPreviewCapture {
-    private static final ThreadLocal<CaptureBuffer> ACTIVE_BUFFER = new ThreadLocal<>();
-    private static final Map<String, HudPreviewSnapshot> SNAPSHOTS = new ConcurrentHashMap<>();
     private static final AtomicBoolean ENABLED = new AtomicBoolean(false);
 
+    // Holds the most recently completed frame until the publisher takes it
+    private static final AtomicReference<HudPreviewFrame> READY = new AtomicReference<>(new HudPreviewFrame());
+
+    // Render thread only
+    private static final Map<HudElement, String> NAMES = new IdentityHashMap<>();
+    private static HudPreviewFrame back = new HudPreviewFrame();
+    private static HudPreviewFrame.Element active;
+    private static Thread activeThread;
+    private static boolean capturingFrame;
+    private static long frameSequence;
+    private static int namesGeneration = -1;
+    private static volatile boolean frameRequested;
+
+    // Publisher thread only
+    private static HudPreviewFrame front = new HudPreviewFrame();
+
     private HudPreviewCapture() {}
 
     public static void setEnabled(boolean enabled) {
         ENABLED.set(enabled);
         if (!enabled) {
-            ACTIVE_BUFFER.remove();
-            SNAPSHOTS.clear();
+            frameRequested = false;
         }
     }
 
@@ -36,86 +54,145 @@ public final class HudPreviewCapture {
         return ENABLED.get();
     }
 
-    public static void begin(HudElement element) {
-        if (!ENABLED.get() || element == null) return;
-        ACTIVE_BUFFER.set(new CaptureBuffer(element));
+    /**
+     * Arms capture for the next HUD frame. Safe to call from any thread.
+     */
+    public static void requestFrame() {
+        if (ENABLED.get()) {
+            frameRequested = true;
+        }
+    }
+
+    /**
+     * Called before the HUD renders its elements; decides whether this frame is captured.
+     */
+    public static void beginFrame() {
+        capturingFrame = false;
+        if (!frameRequested) return;
+        frameRequested = false;
+        if (!ENABLED.get()) return;
+
+        capturingFrame = true;
+        back.reset();
+        if (namesGeneration != TargetIndex.hudGeneration()) {
+            // Elements were added or removed; forget the identifiers of the ones that are gone
+            namesGeneration = TargetIndex.hudGeneration();
+            NAMES.clear();
+        }
     }
 
-    public static void end() {
-        CaptureBuffer buffer = ACTIVE_BUFFER.get();
-        ACTIVE_BUFFER.remove();
-        if (!ENABLED.get() || buffer == null) return;
+    public static void endFrame() {
+        active = null;
+        if (!capturingFrame) return;
+        capturingFrame = false;
+
+        // A frame in which the HUD drew nothing (hidden, or not in game) would wrongly prune every preview
+        if (back.size() == 0) return;
+        back.sequence = ++frameSequence;
+        back = READY.getAndSet(back);
+    }
+
+    public static void begin(HudElement element) {
+        active = null;
+        if (!capturingFrame || element == null) return;
+
+        String name = NAMES.get(element);
+        if (name == null) {
+            name = HudMapper.getElementIdentifier(element);
+            NAMES.put(element, name);
+        }
+        active = back.add(element, name);
+        activeThread = Thread.currentThread();
+    }
 
-        HudPreviewSnapshot snapshot = buffer.build();
-        if (snapshot != null) {
-            SNAPSHOTS.put(snapshot.getName(), snapshot);
+    public static void end(HudElement element) {
+        HudPreviewFrame.Element entry = active;
+        active = null;
+        if (entry != null) {
+            entry.finish(element);
         }
     }
 
     public static void recordText(String text, double x, double y, Color color, boolean shadow, double scale) {
-        CaptureBuffer buffer = ACTIVE_BUFFER.get();
-        if (buffer == null) return;
-        buffer.addLine(text, x, y, color, shadow, scale);
+        HudPreviewFrame.Element entry = current();
+        if (entry == null) return;
+        entry.addLine(text, x, y, color, shadow, scale);
     }
 
-    public static void markNonText() {
-        CaptureBuffer buffer = ACTIVE_BUFFER.get();
-        if (buffer == null) return;
-        buffer.markNonText();
+    /**
+     * Whether draw calls on this thread are being recorded right now, so callers can skip preparing arguments.
+     */
+    public static boolean isCapturing() {
+        return current() != null;
     }
 
-    public static Collection<HudPreviewSnapshot> copySnapshots() {
-        return List.copyOf(SNAPSHOTS.values());
+    public static void recordQuad(double x, double y, double width, double height, Color color) {
+        HudPreviewFrame.Element entry = current();
+        if (entry == null) return;
+        entry.nonText().quad(x, y, width, height, packed(color));
     }
 
-    public static JsonArray serializeSnapshots() {
-        JsonArray array = new JsonArray();
-        for (HudPreviewSnapshot snapshot : SNAPSHOTS.values()) {
-            array.add(snapshot.toJson());
-        }
-        return array;
+    public static void recordGradient(double x, double y, double width, double height,
+                                      Color topLeft, Color topRight, Color bottomRight, Color bottomLeft) {
+        HudPreviewFrame.Element entry = current();
+        if (entry == null) return;
+        entry.nonText().gradient(x, y, width, height, packed(topLeft), packed(topRight), packed(bottomRight), packed(bottomLeft));
     }
 
-    private static final class CaptureBuffer {
-        private final HudElement element;
-        private final List<HudTextLine> lines = new ArrayList<>();
-        private boolean hasNonText;
+    public static void recordLine(double x1, double y1, double x2, double y2, Color color) {
+        HudPreviewFrame.Element entry = current();
+        if (entry == null) return;
+        entry.nonText().line(x1, y1, x2, y2, packed(color));
+    }
 
-        private CaptureBuffer(HudElement element) {
-            this.element = element;
-        }
+    public static void recordTriangle(double x1, double y1, double x2, double y2, double x3, double y3, Color color) {
+        HudPreviewFrame.Element entry = current();
+        if (entry == null) return;
+        entry.nonText().triangle(x1, y1, x2, y2, x3, y3, packed(color));
+    }
 
-        private void addLine(String text, double x, double y, Color color, boolean shadow, double scale) {
-            if (text == null || text.isEmpty()) return;
-            lines.add(new HudTextLine(text, x, y, color != null ? color.getPacked() : Color.WHITE.getPacked(), shadow, scale));
-        }
+    public static void recordTexture(Identifier texture, double x, double y, double width, double height, Color color) {
+        HudPreviewFrame.Element entry = current();
+        if (entry == null || texture == null) return;
+        entry.nonText().texture(texture, x, y, width, height, packed(color));
+    }
 
-        private void markNonText() {
-            hasNonText = true;
-        }
+    /**
+     * @param itemRawId raw index of the item in {@code Registries.ITEM}
+     */
+    public static void recordItem(int itemRawId, int count, double x, double y, double scale) {
+        HudPreviewFrame.Element entry = current();
+        if (entry == null) return;
+        entry.nonText().item(itemRawId, count, x, y, scale);
+    }
 
-        private HudPreviewSnapshot build() {
-            if (element == null) return null;
-            HudElementInfo<?> info = element.info;
-            String name = HudMapper.getElementIdentifier(element);
-            String title = info != null ? info.title : name;
-            String description = info != null ? info.description : "";
-            String group = info != null && info.group != null ? info.group.title() : "HUD";
-
-            return new HudPreviewSnapshot(
-                name,
-                title,
-                description,
-                group,
-                element.isActive(),
-                element.getX(),
-                element.getY(),
-                element.getWidth(),
-                element.getHeight(),
-                hasNonText,
-                lines,
-                System.currentTimeMillis()
-            );
-        }
+    /**
+     * @param entityTypeRawId raw index of the entity's type in {@code Registries.ENTITY_TYPE}
+     */
+    public static void recordEntity(int entityTypeRawId, double x, double y, double width, double height) {
+        HudPreviewFrame.Element entry = current();
+        if (entry == null) return;
+        entry.nonText().entity(entityTypeRawId, x, y, width, height);
+    }
+
+    /**
+     * Swaps in the latest completed frame. Publisher thread only.
+     *
+     * @return the frame, owned by the caller until the next call, or {@code null} if nothing new was captured
+     */
+    static HudPreviewFrame takeFrame() {
+        if (READY.get().sequence <= front.sequence) return null;
+        front = READY.getAndSet(front);
+        return front;
+    }
+
+    private static int packed(Color color) {
+        return color != null ? color.getPacked() : Color.WHITE.getPacked();
+    }
+
+    // The renderer can be driven outside a wrapped element render, or from another thread; neither is recorded
+    private static HudPreviewFrame.Element current() {
+        HudPreviewFrame.Element entry = active;
+        return entry != null && activeThread == Thread.currentThread() ? entry : null;
     }
 }
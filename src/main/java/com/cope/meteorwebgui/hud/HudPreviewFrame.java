@@ -0,0 +1,167 @@
+package com.cope.meteorwebgui.hud;
+
+import meteordevelopment.meteorclient.systems.hud.HudElement;
+import meteordevelopment.meteorclient.systems.hud.HudElementInfo;
+import meteordevelopment.meteorclient.utils.render.color.Color;
+
+import java.util.Arrays;
+
+/**
+ * Everything the HUD drew in one sampled frame, one pooled {@link Element} per rendered element.
+ * <p>
+ * Frames are reused: the render thread fills one while the publisher reads another, and they are handed over
+ * through {@link HudPreviewCapture}'s exchange slot. Nothing is reallocated once the arrays have grown to fit.
+ */
+final class HudPreviewFrame {
+    static final byte FLAG_SHADOW = 1;
+
+    private static final int INITIAL_ELEMENTS = 16;
+    private static final int INITIAL_LINES = 8;
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private Element[] elements = new Element[INITIAL_ELEMENTS];
+    private int count;
+    long sequence;
+
+    void reset() {
+        count = 0;
+    }
+
+    int size() {
+        return count;
+    }
+
+    Element get(int index) {
+        return elements[index];
+    }
+
+    /**
+     * Next pooled entry, reset for {@code element}.
+     */
+    Element add(HudElement element, String name) {
+        if (count == elements.length) {
+            elements = Arrays.copyOf(elements, count << 1);
+        }
+        Element entry = elements[count];
+        if (entry == null) {
+            entry = new Element();
+            elements[count] = entry;
+        }
+        count++;
+        entry.begin(element, name);
+        return entry;
+    }
+
+    static final class Element {
+        String name;
+        String title;
+        String description;
+        String group;
+        boolean active;
+        int x;
+        int y;
+        int width;
+        int height;
+        boolean hasNonText;
+
+        // Parallel per-line arrays; the first lineCount entries belong to this frame
+        String[] texts = new String[INITIAL_LINES];
+        double[] xs = new double[INITIAL_LINES];
+        double[] ys = new double[INITIAL_LINES];
+        int[] colors = new int[INITIAL_LINES];
+        double[] scales = new double[INITIAL_LINES];
+        byte[] flags = new byte[INITIAL_LINES];
+        int lineCount;
+        private int previousLineCount;
+        final HudDrawList draw = new HudDrawList();
+
+        /**
+         * Content hash built up while the element draws, covering everything a snapshot would contain.
+         */
+        long fingerprint;
+
+        private void begin(HudElement element, String name) {
+            HudElementInfo<?> info = element.info;
+            this.name = name;
+            this.title = info != null ? info.title : name;
+            this.description = info != null ? info.description : "";
+            this.group = info != null && info.group != null ? info.group.title() : "HUD";
+            previousLineCount = lineCount;
+            lineCount = 0;
+            hasNonText = false;
+            draw.reset();
+            fingerprint = name.hashCode();
+        }
+
+        void addLine(String text, double x, double y, Color color, boolean shadow, double scale) {
+            if (text == null || text.isEmpty()) return;
+            int packed = color != null ? color.getPacked() : Color.WHITE.getPacked();
+            byte flag = shadow ? FLAG_SHADOW : 0;
+
+            int i = lineCount++;
+            if (i == texts.length) grow();
+            texts[i] = text;
+            xs[i] = x;
+            ys[i] = y;
+            colors[i] = packed;
+            scales[i] = scale;
+            flags[i] = flag;
+
+            long hash = fingerprint;
+            hash = mix(hash, text.hashCode());
+            hash = mix(hash, Double.doubleToLongBits(x));
+            hash = mix(hash, Double.doubleToLongBits(y));
+            hash = mix(hash, packed);
+            hash = mix(hash, Double.doubleToLongBits(scale));
+            fingerprint = mix(hash, flag);
+        }
+
+        /**
+         * The draw list for a non-text primitive about to be recorded.
+         */
+        HudDrawList nonText() {
+            hasNonText = true;
+            return draw;
+        }
+
+        void finish(HudElement element) {
+            if (lineCount < previousLineCount) {
+                // Drop references to lines that are no longer drawn
+                Arrays.fill(texts, lineCount, previousLineCount, null);
+            }
+            active = element.isActive();
+            x = element.getX();
+            y = element.getY();
+            width = element.getWidth();
+            height = element.getHeight();
+
+            long hash = mix(fingerprint, lineCount);
+            hash = mix(hash, active ? 1 : 0);
+            hash = mix(hash, hasNonText ? 1 : 0);
+            hash = mix(hash, x);
+            hash = mix(hash, y);
+            hash = mix(hash, width);
+            hash = mix(hash, height);
+            fingerprint = draw.fingerprint(hash);
+        }
+
+        HudPreviewSnapshot toSnapshot(long updatedAt, long version) {
+            return new HudPreviewSnapshot(name, title, description, group, active, x, y, width, height, hasNonText,
+                lineCount, texts, xs, ys, colors, scales, flags, draw.freeze(), updatedAt, version);
+        }
+
+        private void grow() {
+            int size = texts.length << 1;
+            texts = Arrays.copyOf(texts, size);
+            xs = Arrays.copyOf(xs, size);
+            ys = Arrays.copyOf(ys, size);
+            colors = Arrays.copyOf(colors, size);
+            scales = Arrays.copyOf(scales, size);
+            flags = Arrays.copyOf(flags, size);
+        }
+    }
+
+    static long mix(long hash, long value) {
+        return Long.rotateLeft((hash ^ value) * MIX, 31);
+    }
+}
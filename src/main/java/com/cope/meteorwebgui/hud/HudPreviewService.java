@@ -1,15 +1,15 @@
 package com.cope.meteorwebgui.hud;
 
+import com.cope.meteorwebgui.protocol.JsonStreams;
 import com.cope.meteorwebgui.protocol.MessageType;
-import com.cope.meteorwebgui.protocol.WSMessage;
 import com.cope.meteorwebgui.server.MeteorWebServer;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
@@ -18,15 +18,35 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Periodically publishes HUD preview snapshots to connected WebGUI clients.
+ * Periodically publishes HUD preview snapshots to the WebGUI clients that show the HUD.
+ * <p>
+ * Previews are sampled rather than recorded every frame: shortly before each publish, and only while a client is
+ * subscribed, capture is armed for a single HUD frame. At 5 publishes a second that is about 1 frame in 30 at
+ * 150 FPS, and none at all while nobody is watching.
+ * <p>
+ * Elements the clients already know are sent as {@link MessageType#HUD_PREVIEW_DELTA}s against the version they
+ * hold. Every {@link #KEYFRAME_INTERVAL} publishes, every element is resent in full (minus its static fields) so a
+ * client that missed a delta, for example because it subscribed while one was in flight, converges again.
  */
 public class HudPreviewService {
     private static final Logger LOG = LoggerFactory.getLogger("WebGUI HudPreviewService");
     private static final long DEFAULT_INTERVAL_MS = 200L;
+    // How long before a publish the sample frame is armed; a few frames even at low frame rates
+    private static final long SAMPLE_LEAD_MS = 50L;
+    // Publishes between keyframes, 5 seconds at the default interval
+    private static final int KEYFRAME_INTERVAL = 25;
 
     private final MeteorWebServer server;
-    private final Map<String, Integer> snapshotHashes = new ConcurrentHashMap<>();
-    private final Gson gson = new Gson();
+    // Last published snapshot per element; entries are only mutated by the scheduler thread, and are what a
+    // client that subscribes is sent first
+    private final Map<String, Published> published = new ConcurrentHashMap<>();
+    // Only touched by the scheduler thread
+    private final List<HudPreviewSnapshot> added = new ArrayList<>();
+    private final List<HudPreviewSnapshot> refreshed = new ArrayList<>();
+    private final List<HudPreviewSnapshot> deltaBases = new ArrayList<>();
+    private final List<HudPreviewSnapshot> deltaTargets = new ArrayList<>();
+    private long publishCount;
+    private long nextVersion;
 
     private ScheduledExecutorService scheduler;
 
@@ -46,7 +66,8 @@ public class HudPreviewService {
             return thread;
         };
         scheduler = Executors.newSingleThreadScheduledExecutor(factory);
-        scheduler.scheduleAtFixedRate(this::publishSnapshots, 0L, DEFAULT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::requestSample, DEFAULT_INTERVAL_MS - SAMPLE_LEAD_MS, DEFAULT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::publishSnapshots, DEFAULT_INTERVAL_MS, DEFAULT_INTERVAL_MS, TimeUnit.MILLISECONDS);
         LOG.info("HUD preview service started ({} ms interval)", DEFAULT_INTERVAL_MS);
     }
 
@@ -55,36 +76,148 @@ public class HudPreviewService {
             scheduler.shutdownNow();
             scheduler = null;
         }
-        snapshotHashes.clear();
+        published.clear();
         HudPreviewCapture.setEnabled(false);
         LOG.info("HUD preview service stopped");
     }
 
-    private void publishSnapshots() {
-        Collection<HudPreviewSnapshot> snapshots = HudPreviewCapture.copySnapshots();
-        JsonArray changedElements = new JsonArray();
+    private void requestSample() {
+        if (server.hasHudPreviewSubscribers()) {
+            HudPreviewCapture.requestFrame();
+        }
+    }
 
-        for (HudPreviewSnapshot snapshot : snapshots) {
-            int hash = snapshot.contentHash();
-            Integer previous = snapshotHashes.put(snapshot.getName(), hash);
-            if (previous != null && previous == hash) {
-                continue;
-            }
-            changedElements.add(snapshot.toJson());
+    private void publishSnapshots() {
+        if (!server.hasHudPreviewSubscribers()) {
+            return;
         }
 
-        if (changedElements.size() == 0) {
+        HudPreviewFrame frame = HudPreviewCapture.takeFrame();
+        if (frame == null) {
             return;
         }
 
-        JsonObject data = new JsonObject();
-        data.add("elements", changedElements);
+        boolean keyframe = ++publishCount % KEYFRAME_INTERVAL == 0;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < frame.size(); i++) {
+            HudPreviewFrame.Element element = frame.get(i);
+            Published previous = published.get(element.name);
+            if (previous != null && previous.fingerprint == element.fingerprint) {
+                previous.sequence = frame.sequence;
+                if (keyframe) refreshed.add(previous.snapshot);
+                continue;
+            }
+
+            // Versions are unique across elements, so a stale version can never match a re-added element's
+            HudPreviewSnapshot snapshot = element.toSnapshot(now, ++nextVersion);
+            if (previous == null) {
+                previous = new Published(snapshot);
+                published.put(element.name, previous);
+                added.add(snapshot);
+            } else if (keyframe) {
+                refreshed.add(snapshot);
+            } else {
+                deltaBases.add(previous.snapshot);
+                deltaTargets.add(snapshot);
+            }
+            previous.snapshot = snapshot;
+            previous.fingerprint = element.fingerprint;
+            previous.sequence = frame.sequence;
+        }
+        pruneStale(frame.sequence);
 
         try {
-            WSMessage message = new WSMessage(MessageType.HUD_PREVIEW_UPDATE, data);
-            server.broadcast(gson.toJson(message));
+            if (!added.isEmpty() || !refreshed.isEmpty()) {
+                server.broadcastHudPreview(MessageType.HUD_PREVIEW_UPDATE, updateData(List.copyOf(added), List.copyOf(refreshed)));
+            }
+            if (!deltaTargets.isEmpty()) {
+                server.broadcastHudPreview(MessageType.HUD_PREVIEW_DELTA, deltaData(List.copyOf(deltaBases), List.copyOf(deltaTargets)));
+            }
         } catch (Exception e) {
             LOG.error("Failed to broadcast HUD preview update: {}", e.getMessage(), e);
+        } finally {
+            added.clear();
+            refreshed.clear();
+            deltaBases.clear();
+            deltaTargets.clear();
+        }
+    }
+
+    // Elements missing from the latest frame were removed or hidden; drop their previews until they draw again
+    private void pruneStale(long sequence) {
+        for (Iterator<Map.Entry<String, Published>> iterator = published.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, Published> entry = iterator.next();
+            if (entry.getValue().sequence != sequence) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The latest published snapshot of every element, for a client that just subscribed. Safe to call from any thread.
+     */
+    public Collection<HudPreviewSnapshot> currentSnapshots() {
+        List<HudPreviewSnapshot> snapshots = new ArrayList<>(published.size());
+        for (Published entry : published.values()) {
+            snapshots.add(entry.snapshot);
+        }
+        return snapshots;
+    }
+
+    /**
+     * Data of a complete {@link MessageType#HUD_PREVIEW_UPDATE} message for the given snapshots.
+     * The returned body only reads the immutable snapshots, so it can be encoded later on any thread.
+     */
+    public static JsonStreams.Body updateData(Collection<HudPreviewSnapshot> snapshots) {
+        return out -> {
+            out.beginObject();
+            out.name("elements").beginArray();
+            for (HudPreviewSnapshot snapshot : snapshots) {
+                snapshot.writeJson(out);
+            }
+            out.endArray();
+            out.endObject();
+        };
+    }
+
+    /**
+     * Full update for newly seen elements and keyframe entries, the latter without their static fields.
+     */
+    private static JsonStreams.Body updateData(List<HudPreviewSnapshot> added, List<HudPreviewSnapshot> refreshed) {
+        return out -> {
+            out.beginObject();
+            out.name("elements").beginArray();
+            for (HudPreviewSnapshot snapshot : added) {
+                snapshot.writeJson(out, true);
+            }
+            for (HudPreviewSnapshot snapshot : refreshed) {
+                snapshot.writeJson(out, false);
+            }
+            out.endArray();
+            out.endObject();
+        };
+    }
+
+    private static JsonStreams.Body deltaData(List<HudPreviewSnapshot> bases, List<HudPreviewSnapshot> targets) {
+        return out -> {
+            out.beginObject();
+            out.name("elements").beginArray();
+            for (int i = 0; i < targets.size(); i++) {
+                targets.get(i).writeDelta(out, bases.get(i));
+            }
+            out.endArray();
+            out.endObject();
+        };
+    }
+
+    private static final class Published {
+        // Read by client threads through currentSnapshots
+        private volatile HudPreviewSnapshot snapshot;
+        private long fingerprint;
+        private long sequence;
+
+        private Published(HudPreviewSnapshot snapshot) {
+            this.snapshot = snapshot;
         }
     }
 }
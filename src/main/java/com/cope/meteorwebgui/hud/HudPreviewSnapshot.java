@@ -1,16 +1,19 @@
 package com.cope.meteorwebgui.hud;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Immutable snapshot describing a HUD element preview payload.
+ * <p>
+ * Snapshots of the same element are numbered by {@code version}. Clients holding one version can be brought to the
+ * next with {@link #writeDelta}, which only carries what differs; see {@code applyPreviewDelta} in the web UI.
  */
 public class HudPreviewSnapshot {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
     private final String name;
     private final String title;
     private final String description;
@@ -21,8 +24,17 @@ public class HudPreviewSnapshot {
     private final int width;
     private final int height;
     private final boolean hasNonText;
-    private final List<HudTextLine> lines;
+    // Parallel line arrays, trimmed copies of the capture buffer
+    private final String[] texts;
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] colors;
+    private final double[] scales;
+    private final byte[] flags;
+    // Non-text primitives, null if the element drew none
+    private final HudDrawList draw;
     private final long updatedAt;
+    private final long version;
 
     public HudPreviewSnapshot(String name,
                               String title,
@@ -34,8 +46,16 @@ public class HudPreviewSnapshot {
                               int width,
                               int height,
                               boolean hasNonText,
-                              List<HudTextLine> lines,
-                              long updatedAt) {
+                              int lineCount,
+                              String[] texts,
+                              double[] xs,
+                              double[] ys,
+                              int[] colors,
+                              double[] scales,
+                              byte[] flags,
+                              HudDrawList draw,
+                              long updatedAt,
+                              long version) {
         this.name = name;
         this.title = title;
         this.description = description;
@@ -46,60 +66,144 @@ public class HudPreviewSnapshot {
         this.width = width;
         this.height = height;
         this.hasNonText = hasNonText;
-        this.lines = List.copyOf(lines);
+        this.texts = Arrays.copyOf(texts, lineCount);
+        this.xs = Arrays.copyOf(xs, lineCount);
+        this.ys = Arrays.copyOf(ys, lineCount);
+        this.colors = Arrays.copyOf(colors, lineCount);
+        this.scales = Arrays.copyOf(scales, lineCount);
+        this.flags = Arrays.copyOf(flags, lineCount);
+        this.draw = draw;
         this.updatedAt = updatedAt;
+        this.version = version;
     }
 
     public String getName() {
         return name;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public boolean hasNonText() {
         return hasNonText;
     }
 
-    public List<HudTextLine> getLines() {
-        return Collections.unmodifiableList(lines);
+    private boolean hasShadow(int line) {
+        return (flags[line] & HudPreviewFrame.FLAG_SHADOW) != 0;
     }
 
-    public JsonObject toJson() {
-        JsonObject obj = new JsonObject();
-        obj.addProperty("name", name);
-        obj.addProperty("title", title);
-        obj.addProperty("description", description);
-        obj.addProperty("group", group);
-        obj.addProperty("active", active);
-        obj.addProperty("x", x);
-        obj.addProperty("y", y);
-        obj.addProperty("width", width);
-        obj.addProperty("height", height);
-        obj.addProperty("hasNonText", hasNonText);
-        obj.addProperty("updatedAt", updatedAt);
-
-        JsonArray linesArray = new JsonArray();
-        for (HudTextLine line : lines) {
-            JsonObject lineObj = new JsonObject();
-            lineObj.addProperty("text", line.getText());
-            lineObj.addProperty("x", line.getX());
-            lineObj.addProperty("y", line.getY());
-            lineObj.addProperty("color", String.format("#%08X", line.getColor()));
-            lineObj.addProperty("shadow", line.hasShadow());
-            lineObj.addProperty("scale", line.getScale());
-            linesArray.add(lineObj);
+    /**
+     * Streams the full preview of the element.
+     */
+    public void writeJson(JsonWriter out) throws IOException {
+        writeJson(out, true);
+    }
+
+    /**
+     * Streams the full preview; without {@code withStatic}, leaves out the title, description and group,
+     * which never change for an element the client already knows.
+     */
+    public void writeJson(JsonWriter out, boolean withStatic) throws IOException {
+        out.beginObject();
+        out.name("name").value(name);
+        if (withStatic) {
+            out.name("title").value(title);
+            out.name("description").value(description);
+            out.name("group").value(group);
+        }
+        out.name("active").value(active);
+        out.name("x").value(x);
+        out.name("y").value(y);
+        out.name("width").value(width);
+        out.name("height").value(height);
+        out.name("hasNonText").value(hasNonText);
+        out.name("updatedAt").value(updatedAt);
+        out.name("version").value(version);
+
+        out.name("lines").beginArray();
+        char[] color = new char[9];
+        for (int i = 0; i < texts.length; i++) {
+            out.beginObject();
+            out.name("text").value(texts[i]);
+            out.name("x").value(xs[i]);
+            out.name("y").value(ys[i]);
+            out.name("color").value(formatColor(colors[i], color));
+            out.name("shadow").value(hasShadow(i));
+            out.name("scale").value(scales[i]);
+            out.endObject();
         }
-        obj.add("lines", linesArray);
-        return obj;
+        out.endArray();
+        if (draw != null) {
+            out.name("draw");
+            draw.writeJson(out);
+        }
+        out.endObject();
     }
 
-    public int contentHash() {
-        return Objects.hash(name, title, description, group, active, x, y, width, height, hasNonText, linesHash());
+    /**
+     * Streams what changed since {@code previous}, an earlier snapshot of the same element: bounds and flags that
+     * differ, the new line count, per changed line its index and the fields that differ, and the draw list if it
+     * changed at all.
+     */
+    public void writeDelta(JsonWriter out, HudPreviewSnapshot previous) throws IOException {
+        out.beginObject();
+        out.name("name").value(name);
+        out.name("base").value(previous.version);
+        out.name("version").value(version);
+        out.name("updatedAt").value(updatedAt);
+        if (active != previous.active) out.name("active").value(active);
+        if (x != previous.x) out.name("x").value(x);
+        if (y != previous.y) out.name("y").value(y);
+        if (width != previous.width) out.name("width").value(width);
+        if (height != previous.height) out.name("height").value(height);
+        if (hasNonText != previous.hasNonText) out.name("hasNonText").value(hasNonText);
+        if (texts.length != previous.texts.length) out.name("lineCount").value(texts.length);
+
+        out.name("changes").beginArray();
+        char[] color = new char[9];
+        for (int i = 0; i < texts.length; i++) {
+            boolean added = i >= previous.texts.length;
+            boolean text = added || !texts[i].equals(previous.texts[i]);
+            boolean lineX = added || xs[i] != previous.xs[i];
+            boolean lineY = added || ys[i] != previous.ys[i];
+            boolean lineColor = added || colors[i] != previous.colors[i];
+            boolean shadow = added || flags[i] != previous.flags[i];
+            boolean scale = added || scales[i] != previous.scales[i];
+            if (!(text || lineX || lineY || lineColor || shadow || scale)) continue;
+
+            out.beginObject();
+            out.name("index").value(i);
+            if (text) out.name("text").value(texts[i]);
+            if (lineX) out.name("x").value(xs[i]);
+            if (lineY) out.name("y").value(ys[i]);
+            if (lineColor) out.name("color").value(formatColor(colors[i], color));
+            if (shadow) out.name("shadow").value(hasShadow(i));
+            if (scale) out.name("scale").value(scales[i]);
+            out.endObject();
+        }
+        out.endArray();
+
+        // The draw list goes whole; an empty object tells the client the element stopped drawing primitives,
+        // since null fields are not written
+        if (!HudDrawList.same(draw, previous.draw)) {
+            out.name("draw");
+            if (draw != null) {
+                draw.writeJson(out);
+            } else {
+                out.beginObject().endObject();
+            }
+        }
+        out.endObject();
     }
 
-    private int linesHash() {
-        int hash = 7;
-        for (HudTextLine line : lines) {
-            hash = 31 * hash + Objects.hash(line.getText(), line.getX(), line.getY(), line.getColor(), line.hasShadow(), line.getScale());
+    // Same output as String.format("#%08X", packed) without going through Formatter
+    private static String formatColor(int packed, char[] chars) {
+        chars[0] = '#';
+        for (int i = 8; i > 0; i--) {
+            chars[i] = HEX[packed & 0xF];
+            packed >>>= 4;
         }
-        return hash;
+        return new String(chars);
     }
 }
@@ -0,0 +1,686 @@
+package com.cope.meteorwebgui.mapping;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import meteordevelopment.meteorclient.renderer.Fonts;
+import meteordevelopment.meteorclient.renderer.text.FontFace;
+import meteordevelopment.meteorclient.renderer.text.FontFamily;
+import meteordevelopment.meteorclient.renderer.text.FontInfo;
+import meteordevelopment.meteorclient.settings.DoubleSetting;
+import meteordevelopment.meteorclient.settings.IntSetting;
+import meteordevelopment.meteorclient.settings.Setting;
+import meteordevelopment.meteorclient.systems.modules.Module;
+import meteordevelopment.meteorclient.systems.modules.Modules;
+import meteordevelopment.meteorclient.utils.misc.ISerializable;
+import meteordevelopment.meteorclient.utils.misc.Keybind;
+import meteordevelopment.meteorclient.utils.misc.MyPotion;
+import meteordevelopment.meteorclient.utils.network.PacketUtils;
+import meteordevelopment.meteorclient.utils.render.color.SettingColor;
+import net.minecraft.block.Block;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.PotionContentsComponent;
+import net.minecraft.entity.effect.StatusEffect;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.potion.Potion;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+import org.joml.Vector3d;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Codecs for Meteor's own setting classes.
+ */
+@SuppressWarnings("unchecked")
+final class BuiltinSettingCodecs {
+    private static final Logger LOG = LoggerFactory.getLogger("WebGUI Setting Codecs");
+
+    /**
+     * Fallback for settings without a codec: the value's string form, applied through {@link Setting#parse}.
+     */
+    static final SettingCodec UNKNOWN = parsed(SettingType.UNKNOWN);
+
+    private BuiltinSettingCodecs() {}
+
+    static void registerAll() {
+        register("BoolSetting", codec(SettingType.BOOL,
+            (setting, value, out) -> out.name("value").value((Boolean) value),
+            (setting, data) -> ((Setting<Boolean>) setting).set(data.get("value").getAsBoolean())));
+
+        register("IntSetting", codec(SettingType.INT,
+            (setting, value, out) -> out.name("value").value((Integer) value),
+            (setting, data) -> ((Setting<Integer>) setting).set(data.get("value").getAsInt()))
+            .metadata((setting, meta) -> {
+                IntSetting intSetting = (IntSetting) setting;
+                // Handle Integer.MAX_VALUE/MIN_VALUE which can't be serialized to JSON
+                meta.name("min").value(intSetting.min == Integer.MIN_VALUE ? -999999999 : intSetting.min);
+                meta.name("max").value(intSetting.max == Integer.MAX_VALUE ? 999999999 : intSetting.max);
+                meta.name("sliderMin").value(intSetting.sliderMin);
+                meta.name("sliderMax").value(intSetting.sliderMax);
+                meta.name("noSlider").value(intSetting.noSlider);
+            }));
+
+        register("DoubleSetting", codec(SettingType.DOUBLE,
+            (setting, value, out) -> out.name("value").value((Double) value),
+            (setting, data) -> ((Setting<Double>) setting).set(data.get("value").getAsDouble()))
+            .metadata((setting, meta) -> {
+                DoubleSetting doubleSetting = (DoubleSetting) setting;
+                // Handle Double.MAX_VALUE/MIN_VALUE which can't be serialized to JSON
+                double min = Double.isInfinite(doubleSetting.min) ? -999999999.0 : doubleSetting.min;
+                double max = Double.isInfinite(doubleSetting.max) ? 999999999.0 : doubleSetting.max;
+                meta.name("min").value(min);
+                meta.name("max").value(max);
+                meta.name("sliderMin").value(doubleSetting.sliderMin);
+                meta.name("sliderMax").value(doubleSetting.sliderMax);
+                meta.name("noSlider").value(doubleSetting.noSlider);
+                meta.name("decimalPlaces").value(doubleSetting.decimalPlaces);
+            }));
+
+        register("StringSetting", string(SettingType.STRING));
+        register("ProvidedStringSetting", string(SettingType.PROVIDED_STRING)
+            .metadata((setting, meta) -> writeSuggestions(meta.name("suggestions"), setting)));
+
+        register("EnumSetting", codec(SettingType.ENUM,
+            (setting, value, out) -> out.name("value").value(value.toString()),
+            (setting, data) -> setting.parse(data.get("value").getAsString()))
+            .metadata((setting, meta) -> writeSuggestions(meta.name("values"), setting)));
+
+        register("ColorSetting", codec(SettingType.COLOR,
+            (setting, value, out) -> writeColor((SettingColor) value, out),
+            (setting, data) -> {
+                Setting<SettingColor> colorSetting = (Setting<SettingColor>) setting;
+                SettingColor color = colorSetting.get();
+                color.r = data.get("r").getAsInt();
+                color.g = data.get("g").getAsInt();
+                color.b = data.get("b").getAsInt();
+                color.a = data.get("a").getAsInt();
+                color.rainbow = data.has("rainbow") && data.get("rainbow").getAsBoolean();
+                color.validate();
+                colorSetting.onChanged();
+                return true;
+            })
+            .metadata((setting, meta) -> {
+                meta.name("format").value("rgba");
+                meta.name("minValue").value(0);
+                meta.name("maxValue").value(255);
+                meta.name("supportsRainbow").value(true);
+            }));
+
+        register("KeybindSetting", codec(SettingType.KEYBIND,
+            (setting, value, out) -> writeKeybindValue((Keybind) value, out),
+            (setting, data) -> {
+                Setting<Keybind> keybindSetting = (Setting<Keybind>) setting;
+                Keybind keybind = keybindSetting.get();
+                boolean isKey = data.get("isKey").getAsBoolean();
+                int inputValue = data.get("value").getAsInt();
+                int modifiers = data.has("modifiers") ? data.get("modifiers").getAsInt() : 0;
+                if (keybind != null) {
+                    keybind.set(isKey, inputValue, modifiers);
+                    keybindSetting.onChanged();
+                    return true;
+                }
+                return false;
+            })
+            .empty(BuiltinSettingCodecs::writeDefaultKeybindValue)
+            .metadata((setting, meta) -> {
+                meta.name("supportsMouse").value(true);
+                meta.name("supportsModifiers").value(true);
+            }));
+
+        register("BlockSetting", registryEntry(SettingType.BLOCK, Registries.BLOCK, "block")
+            .metadata(searchable("blocks")));
+        register("ItemSetting", registryEntry(SettingType.ITEM, Registries.ITEM, "item")
+            .metadata(searchable("items")));
+
+        register("PotionSetting", codec(SettingType.POTION,
+            (setting, value, out) -> {
+                Identifier id = null;
+                if (value instanceof Potion potion) {
+                    id = Registries.POTION.getId(potion);
+                } else if (value instanceof MyPotion myPotion) {
+                    id = extractPotionId(myPotion.potion);
+                }
+                if (id != null) {
+                    out.name("id").value(id.toString());
+                    out.name("value").value(id.toString());
+                }
+            },
+            (setting, data) -> {
+                Identifier id = readIdentifier(data, setting, "id");
+                if (id == null) return false;
+                Potion potion = Registries.POTION.get(id);
+                if (potion == null || !Registries.POTION.getId(potion).equals(id)) {
+                    LOG.warn("Invalid potion ID '{}' for setting {}", id, setting.name);
+                    return false;
+                }
+                return ((Setting<Potion>) setting).set(potion);
+            })
+            .empty(BuiltinSettingCodecs::writeEmptyRegistryEntry)
+            .metadata((setting, meta) -> {
+                meta.name("values").beginArray();
+                for (MyPotion value : MyPotion.values()) {
+                    Identifier id = extractPotionId(value.potion);
+                    meta.beginObject();
+                    meta.name("id").value(id != null ? id.toString() : value.name());
+                    meta.name("label").value(value.name());
+                    meta.endObject();
+                }
+                meta.endArray();
+            }));
+
+        register("BlockListSetting", registryList(SettingType.BLOCK_LIST, Registries.BLOCK, ArrayList::new, "block")
+            .metadata(searchable("blocks")));
+        register("ItemListSetting", registryList(SettingType.ITEM_LIST, Registries.ITEM, ArrayList::new, "item")
+            .metadata(searchable("items")));
+        register("EntityTypeListSetting", registryList(SettingType.ENTITY_TYPE_LIST, Registries.ENTITY_TYPE, ObjectOpenHashSet::new, "entity type")
+            .metadata(searchable("entities")));
+        register("StatusEffectListSetting", registryList(SettingType.STATUS_EFFECT_LIST, Registries.STATUS_EFFECT, ArrayList::new, "status effect")
+            .metadata(searchable("statusEffects")));
+        register("ParticleTypeListSetting", registryList(SettingType.PARTICLE_TYPE_LIST, Registries.PARTICLE_TYPE, ArrayList::new, "particle type")
+            .metadata((setting, meta) -> meta.name("searchable").value(true)));
+        register("SoundEventListSetting", registryList(SettingType.SOUND_EVENT_LIST, Registries.SOUND_EVENT, ArrayList::new, "sound event")
+            .metadata((setting, meta) -> meta.name("searchable").value(true)));
+        // StorageBlockListSetting stores BlockEntityTypes, not Blocks
+        register("StorageBlockListSetting", registryList(SettingType.STORAGE_BLOCK_LIST, Registries.BLOCK_ENTITY_TYPE, ArrayList::new, "storage block entity"));
+        register("ScreenHandlerListSetting", registryList(SettingType.SCREEN_HANDLER_LIST, Registries.SCREEN_HANDLER, ArrayList::new, "screen handler")
+            .metadata((setting, meta) -> meta.name("searchable").value(true)));
+
+        register("ModuleListSetting", codec(SettingType.MODULE_LIST,
+            (setting, value, out) -> {
+                out.name("items").beginArray();
+                for (Module module : (List<Module>) value) {
+                    out.value(module.name);
+                }
+                out.endArray();
+            },
+            (setting, data) -> {
+                JsonArray items = data.getAsJsonArray("items");
+                List<Module> modules = new ArrayList<>();
+                for (int i = 0; i < items.size(); i++) {
+                    try {
+                        Module module = Modules.get().get(items.get(i).getAsString());
+                        if (module != null) {
+                            modules.add(module);
+                        }
+                    } catch (Exception e) {
+                        LOG.warn("Invalid module name in list: {}", items.get(i).getAsString());
+                    }
+                }
+                return ((Setting<List<Module>>) setting).set(modules);
+            })
+            .empty(BuiltinSettingCodecs::writeEmptyItems)
+            .metadata(searchable("modules")));
+
+        register("EnchantmentListSetting", codec(SettingType.ENCHANTMENT_LIST,
+            (setting, value, out) -> writeEmptyItems(out),
+            (setting, data) -> {
+                // In 1.21, enchantments may not be in Registries - skip if not available
+                LOG.warn("ENCHANTMENT_LIST setting type not fully supported in 1.21");
+                return false;
+            })
+            .empty(BuiltinSettingCodecs::writeEmptyItems)
+            .metadata(searchable("enchantments")));
+
+        register("StringListSetting", codec(SettingType.STRING_LIST,
+            (setting, value, out) -> {
+                out.name("items").beginArray();
+                for (String string : (List<String>) value) {
+                    out.value(string);
+                }
+                out.endArray();
+            },
+            (setting, data) -> {
+                JsonArray items = data.getAsJsonArray("items");
+                List<String> strings = new ArrayList<>();
+                for (int i = 0; i < items.size(); i++) {
+                    strings.add(items.get(i).getAsString());
+                }
+                return ((Setting<List<String>>) setting).set(strings);
+            })
+            .empty(BuiltinSettingCodecs::writeEmptyItems)
+            .metadata((setting, meta) -> meta.name("freeInput").value(true)));
+
+        register("ColorListSetting", codec(SettingType.COLOR_LIST,
+            (setting, value, out) -> {
+                out.name("items").beginArray();
+                for (SettingColor color : (List<SettingColor>) value) {
+                    out.beginObject();
+                    writeColor(color, out);
+                    out.endObject();
+                }
+                out.endArray();
+            },
+            (setting, data) -> {
+                JsonArray items = data.getAsJsonArray("items");
+                List<SettingColor> colors = new ArrayList<>();
+                for (int i = 0; i < items.size(); i++) {
+                    JsonObject colorObj = items.get(i).getAsJsonObject();
+                    SettingColor color = new SettingColor(
+                        colorObj.get("r").getAsInt(),
+                        colorObj.get("g").getAsInt(),
+                        colorObj.get("b").getAsInt(),
+                        colorObj.get("a").getAsInt()
+                    );
+                    if (colorObj.has("rainbow")) {
+                        color.rainbow = colorObj.get("rainbow").getAsBoolean();
+                    }
+                    colors.add(color);
+                }
+                return ((Setting<List<SettingColor>>) setting).set(colors);
+            })
+            .empty(BuiltinSettingCodecs::writeEmptyItems)
+            .metadata((setting, meta) -> {
+                meta.name("itemType").value("color");
+                meta.name("supportsRainbow").value(true);
+            }));
+
+        register("PacketListSetting", codec(SettingType.PACKET_LIST,
+            (setting, value, out) -> {
+                out.name("items").beginArray();
+                for (Class<? extends Packet<?>> packet : (Set<Class<? extends Packet<?>>>) value) {
+                    out.value(PacketUtils.getName(packet));
+                }
+                out.endArray();
+            },
+            (setting, data) -> {
+                JsonArray items = data.getAsJsonArray("items");
+                Set<Class<? extends Packet<?>>> packets = new ObjectOpenHashSet<>();
+                for (int i = 0; i < items.size(); i++) {
+                    try {
+                        String name = items.get(i).getAsString();
+                        Class<? extends Packet<?>> packet = PacketUtils.getPacket(name);
+                        if (packet != null) packets.add(packet);
+                        else LOG.warn("Unknown packet '{}' in setting {}", name, setting.name);
+                    } catch (Exception e) {
+                        LOG.warn("Invalid packet entry in setting {}: {}", setting.name, e.getMessage());
+                    }
+                }
+                return ((Setting<Set<Class<? extends Packet<?>>>>) setting).set(packets);
+            })
+            .empty(BuiltinSettingCodecs::writeEmptyItems));
+
+        register("BlockPosSetting", codec(SettingType.BLOCK_POS,
+            (setting, value, out) -> {
+                BlockPos pos = (BlockPos) value;
+                out.name("x").value(pos.getX());
+                out.name("y").value(pos.getY());
+                out.name("z").value(pos.getZ());
+            },
+            (setting, data) -> {
+                int x = data.get("x").getAsInt();
+                int y = data.get("y").getAsInt();
+                int z = data.get("z").getAsInt();
+                return ((Setting<BlockPos>) setting).set(new BlockPos(x, y, z));
+            })
+            .metadata((setting, meta) -> {
+                meta.name("minY").value(-64);
+                meta.name("maxY").value(319);
+            }));
+
+        register("Vector3dSetting", codec(SettingType.VECTOR3D,
+            (setting, value, out) -> {
+                if (value instanceof Vector3d vec) {
+                    out.name("x").value(vec.x);
+                    out.name("y").value(vec.y);
+                    out.name("z").value(vec.z);
+                } else if (value instanceof Vec3d vec) {
+                    out.name("x").value(vec.x);
+                    out.name("y").value(vec.y);
+                    out.name("z").value(vec.z);
+                } else {
+                    out.name("error").value("Unsupported vector type: " + value.getClass().getName());
+                }
+            },
+            (setting, data) -> {
+                double x = data.get("x").getAsDouble();
+                double y = data.get("y").getAsDouble();
+                double z = data.get("z").getAsDouble();
+                // Meteor's Vector3dSetting holds a JOML vector; keep the holder type of whatever setting this is
+                if (setting.get() instanceof Vec3d) {
+                    return ((Setting<Vec3d>) setting).set(new Vec3d(x, y, z));
+                }
+                return ((Setting<Vector3d>) setting).set(new Vector3d(x, y, z));
+            }));
+
+        register("FontFaceSetting", codec(SettingType.FONT_FACE,
+            (setting, value, out) -> {
+                FontFace fontFace = (FontFace) value;
+                out.name("family").value(fontFace.info.family());
+                out.name("type").value(fontFace.info.type().name());
+                out.name("label").value(fontFace.info.toString());
+            },
+            (setting, data) -> {
+                if (!data.has("family") || !data.has("type")) return false;
+                String family = data.get("family").getAsString();
+                String typeName = data.get("type").getAsString();
+                FontFace fontFace = findFontFace(family, typeName);
+                if (fontFace == null) {
+                    LOG.warn("Invalid font face {}-{} for setting {}", family, typeName, setting.name);
+                    return false;
+                }
+                return ((Setting<FontFace>) setting).set(fontFace);
+            })
+            .empty(out -> {
+                out.name("family").value("");
+                out.name("type").value("");
+                out.name("label").value("");
+            })
+            .metadata((setting, meta) -> writeFontFamilies(meta.name("families"))));
+
+        register("StatusEffectAmplifierMapSetting", codec(SettingType.STATUS_EFFECT_AMPLIFIER_MAP,
+            (setting, value, out) -> {
+                out.name("entries").beginArray();
+                for (Map.Entry<StatusEffect, Integer> entry : ((Map<StatusEffect, Integer>) value).entrySet()) {
+                    out.beginObject();
+                    out.name("effect").value(Registries.STATUS_EFFECT.getId(entry.getKey()).toString());
+                    out.name("amplifier").value(entry.getValue());
+                    out.endObject();
+                }
+                out.endArray();
+            },
+            (setting, data) -> {
+                JsonArray entries = data.getAsJsonArray("entries");
+                Map<StatusEffect, Integer> map = new HashMap<>();
+                for (int i = 0; i < entries.size(); i++) {
+                    try {
+                        JsonObject entry = entries.get(i).getAsJsonObject();
+                        Identifier id = Identifier.of(entry.get("effect").getAsString());
+                        StatusEffect effect = Registries.STATUS_EFFECT.get(id);
+                        int amplifier = entry.get("amplifier").getAsInt();
+                        if (effect != null) {
+                            map.put(effect, amplifier);
+                        }
+                    } catch (Exception e) {
+                        LOG.warn("Invalid status effect amplifier map entry: {}", e.getMessage());
+                    }
+                }
+                return ((Setting<Map<StatusEffect, Integer>>) setting).set(map);
+            })
+            .empty(BuiltinSettingCodecs::writeEmptyEntries)
+            .metadata((setting, meta) -> {
+                meta.name("keyRegistry").value("statusEffects");
+                meta.name("valueType").value("integer");
+            }));
+
+        register("BlockDataSetting", codec(SettingType.BLOCK_DATA,
+            (setting, value, out) -> {
+                out.name("entries").beginArray();
+                for (Map.Entry<Block, ?> entry : ((Map<Block, ?>) value).entrySet()) {
+                    Identifier id = Registries.BLOCK.getId(entry.getKey());
+                    if (id == null) continue;
+                    Object data = entry.getValue();
+                    out.beginObject();
+                    out.name("block").value(id.toString());
+                    if (data instanceof ISerializable<?> serializable) {
+                        out.name("data").value(serializable.toTag().toString());
+                    } else {
+                        out.name("data").value(String.valueOf(data));
+                    }
+                    out.endObject();
+                }
+                out.endArray();
+            },
+            // Edited in game only; see the "editable" flag
+            (setting, data) -> false)
+            .empty(BuiltinSettingCodecs::writeEmptyEntries)
+            .metadata((setting, meta) -> meta.name("editable").value(false)));
+
+        register("GenericSetting", parsed(SettingType.GENERIC));
+    }
+
+    private static void register(String simpleName, SettingCodec codec) {
+        SettingCodecs.registerBuiltin(simpleName, codec);
+    }
+
+    @FunctionalInterface
+    interface ValueWriter {
+        void write(Setting<?> setting, Object value, JsonWriter out) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface EmptyWriter {
+        void write(JsonWriter out) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface ValueReader {
+        boolean read(Setting<?> setting, JsonObject data);
+    }
+
+    @FunctionalInterface
+    interface MetadataWriter {
+        void write(Setting<?> setting, JsonWriter meta) throws IOException;
+    }
+
+    private static Codec codec(SettingType type, ValueWriter writer, ValueReader reader) {
+        return new Codec(type, writer, reader, out -> out.name("value").nullValue(), (setting, meta) -> {});
+    }
+
+    /**
+     * A codec assembled from its parts; {@link #empty} and {@link #metadata} return adjusted copies.
+     */
+    private record Codec(SettingType type, ValueWriter writer, ValueReader reader,
+                         EmptyWriter emptyWriter, MetadataWriter metadataWriter) implements SettingCodec {
+        Codec empty(EmptyWriter emptyWriter) {
+            return new Codec(type, writer, reader, emptyWriter, metadataWriter);
+        }
+
+        Codec metadata(MetadataWriter metadataWriter) {
+            return new Codec(type, writer, reader, emptyWriter, metadataWriter);
+        }
+
+        @Override
+        public void writeValue(Setting<?> setting, Object value, JsonWriter out) throws IOException {
+            writer.write(setting, value, out);
+        }
+
+        @Override
+        public void writeEmptyValue(JsonWriter out) throws IOException {
+            emptyWriter.write(out);
+        }
+
+        @Override
+        public boolean readValue(Setting<?> setting, JsonObject data) {
+            return reader.read(setting, data);
+        }
+
+        @Override
+        public void writeMetadata(Setting<?> setting, JsonWriter meta) throws IOException {
+            metadataWriter.write(setting, meta);
+        }
+    }
+
+    private static Codec parsed(SettingType type) {
+        return codec(type,
+            (setting, value, out) -> out.name("value").value(value.toString()),
+            (setting, data) -> data.has("value") && setting.parse(data.get("value").getAsString()));
+    }
+
+    private static Codec string(SettingType type) {
+        return codec(type,
+            (setting, value, out) -> out.name("value").value((String) value),
+            (setting, data) -> ((Setting<String>) setting).set(data.get("value").getAsString()));
+    }
+
+    /**
+     * A single registry entry, sent as its identifier and validated against the registry on the way back.
+     */
+    private static <T> Codec registryEntry(SettingType type, Registry<T> registry, String noun) {
+        return codec(type,
+            (setting, value, out) -> {
+                Identifier id = registry.getId((T) value);
+                if (id != null) {
+                    out.name("id").value(id.toString());
+                    out.name("value").value(id.toString());
+                }
+            },
+            (setting, data) -> {
+                Identifier id = readIdentifier(data, setting, "id");
+                if (id == null) return false;
+                T entry = registry.get(id);
+                // Defaulted registries return their default (air) instead of null for unknown ids
+                if (entry == null || !id.equals(registry.getId(entry))) {
+                    LOG.warn("Invalid {} ID '{}' for setting {}", noun, id, setting.name);
+                    return false;
+                }
+                return ((Setting<T>) setting).set(entry);
+            })
+            .empty(BuiltinSettingCodecs::writeEmptyRegistryEntry);
+    }
+
+    /**
+     * A list or set of registry entries, sent as identifiers. Unknown identifiers are dropped with a warning.
+     */
+    private static <T> Codec registryList(SettingType type, Registry<T> registry, Supplier<Collection<T>> collection, String noun) {
+        return codec(type,
+            (setting, value, out) -> {
+                out.name("items").beginArray();
+                for (T entry : (Collection<T>) value) {
+                    Identifier id = registry.getId(entry);
+                    if (id != null) out.value(id.toString());
+                }
+                out.endArray();
+            },
+            (setting, data) -> {
+                JsonArray items = data.getAsJsonArray("items");
+                Collection<T> entries = collection.get();
+                for (int i = 0; i < items.size(); i++) {
+                    try {
+                        Identifier id = Identifier.of(items.get(i).getAsString());
+                        T entry = registry.get(id);
+                        if (entry != null && id.equals(registry.getId(entry))) {
+                            entries.add(entry);
+                        }
+                    } catch (Exception e) {
+                        LOG.warn("Invalid {} ID in list: {}", noun, items.get(i).getAsString());
+                    }
+                }
+                return ((Setting<Collection<T>>) setting).set(entries);
+            })
+            .empty(BuiltinSettingCodecs::writeEmptyItems);
+    }
+
+    private static MetadataWriter searchable(String registry) {
+        return (setting, meta) -> {
+            meta.name("registry").value(registry);
+            meta.name("searchable").value(true);
+        };
+    }
+
+    private static void writeSuggestions(JsonWriter out, Setting<?> setting) throws IOException {
+        out.beginArray();
+        for (String suggestion : setting.getSuggestions()) {
+            out.value(suggestion);
+        }
+        out.endArray();
+    }
+
+    private static void writeColor(SettingColor color, JsonWriter out) throws IOException {
+        out.name("r").value(color.r);
+        out.name("g").value(color.g);
+        out.name("b").value(color.b);
+        out.name("a").value(color.a);
+        out.name("rainbow").value(color.rainbow);
+    }
+
+    private static void writeEmptyItems(JsonWriter out) throws IOException {
+        out.name("items").beginArray().endArray();
+    }
+
+    private static void writeEmptyEntries(JsonWriter out) throws IOException {
+        out.name("entries").beginArray().endArray();
+    }
+
+    private static void writeEmptyRegistryEntry(JsonWriter out) throws IOException {
+        out.name("value").nullValue();
+        out.name("id").value("");
+    }
+
+    private static void writeKeybindValue(Keybind keybind, JsonWriter out) throws IOException {
+        NbtCompound tag = keybind.toTag();
+        out.name("isKey").value(tag.getBoolean("isKey", false));
+        out.name("value").value(tag.getInt("value", -1));
+        out.name("modifiers").value(tag.getInt("modifiers", 0));
+        out.name("label").value(keybind.toString());
+    }
+
+    private static void writeDefaultKeybindValue(JsonWriter out) throws IOException {
+        out.name("isKey").value(true);
+        out.name("value").value(-1);
+        out.name("modifiers").value(0);
+        out.name("label").value("None");
+    }
+
+    private static void writeFontFamilies(JsonWriter out) throws IOException {
+        out.beginArray();
+        for (FontFamily family : Fonts.FONT_FAMILIES) {
+            out.beginObject();
+            out.name("name").value(family.getName());
+            out.name("types").beginArray();
+            for (FontInfo.Type type : FontInfo.Type.values()) {
+                if (family.hasType(type)) out.value(type.name());
+            }
+            out.endArray();
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    private static FontFace findFontFace(String familyName, String typeName) {
+        if (familyName == null || typeName == null) return null;
+        String normalizedType = typeName.toUpperCase(Locale.ROOT);
+        for (FontFamily family : Fonts.FONT_FAMILIES) {
+            if (!family.getName().equalsIgnoreCase(familyName)) continue;
+            try {
+                FontInfo.Type type = FontInfo.Type.valueOf(normalizedType);
+                FontFace fontFace = family.get(type);
+                if (fontFace != null) return fontFace;
+            } catch (IllegalArgumentException ignored) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Identifier extractPotionId(ItemStack stack) {
+        if (stack == null) return null;
+        PotionContentsComponent contents = stack.get(DataComponentTypes.POTION_CONTENTS);
+        if (contents == null) return null;
+        var entryOpt = contents.potion();
+        if (entryOpt.isEmpty()) return null;
+        return entryOpt.get().getKey().map(RegistryKey::getValue).orElse(null);
+    }
+
+    private static Identifier readIdentifier(JsonObject valueData, Setting<?> setting, String key) {
+        if (!valueData.has(key)) {
+            LOG.warn("Missing '{}' value for setting {}", key, setting.name);
+            return null;
+        }
+        try {
+            String raw = valueData.get(key).getAsString();
+            return Identifier.of(raw);
+        } catch (Exception e) {
+            LOG.warn("Invalid identifier for setting {}: {}", setting.name, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.cope.meteorwebgui.mapping;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Forwards what a {@link SettingCodec} writes into the object the caller has open, keeping track of the containers
+ * the codec opened. A codec that throws halfway can then be closed off with {@link #abort} instead of leaving the
+ * whole document unbalanced.
+ * <p>
+ * With {@link #member} the object is a named member of the caller's object that is only written once the codec
+ * adds its first property, so codecs without metadata leave no empty {@code typeMetadata} behind.
+ */
+final class CodecWriter extends JsonWriter {
+    private JsonWriter out;
+    private String member;
+    private boolean open;
+    // Containers the codec opened and has not closed yet, true for objects
+    private boolean[] stack = new boolean[8];
+    private int depth;
+    private boolean named;
+
+    CodecWriter() {
+        super(java.io.Writer.nullWriter());
+        setSerializeNulls(false);
+    }
+
+    /**
+     * Forwards properties into the object {@code out} has open.
+     */
+    CodecWriter into(JsonWriter out) {
+        reset(out, null);
+        open = true;
+        return this;
+    }
+
+    /**
+     * Forwards properties into a member object {@code name} of the object {@code out} has open, written on first use.
+     */
+    CodecWriter member(JsonWriter out, String name) {
+        reset(out, name);
+        open = false;
+        return this;
+    }
+
+    /**
+     * Closes the member object, if anything was written into it.
+     */
+    void finish() throws IOException {
+        if (open && member != null) {
+            out.endObject();
+        }
+    }
+
+    /**
+     * Closes whatever the codec left open, so the caller's object can be written to again.
+     */
+    void abort() throws IOException {
+        if (named) {
+            out.nullValue();
+            named = false;
+        }
+        while (depth > 0) {
+            if (stack[--depth]) out.endObject();
+            else out.endArray();
+        }
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        open();
+        out.beginArray();
+        push(false);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        out.endArray();
+        depth--;
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        open();
+        out.beginObject();
+        push(true);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        out.endObject();
+        depth--;
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        open();
+        out.name(name);
+        named = true;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        open();
+        out.value(value);
+        named = false;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        open();
+        out.value(value);
+        named = false;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        open();
+        out.value(value);
+        named = false;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+        open();
+        out.value(value);
+        named = false;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        open();
+        out.value(value);
+        named = false;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        open();
+        out.value(value);
+        named = false;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        open();
+        out.value(value);
+        named = false;
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        open();
+        out.nullValue();
+        named = false;
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        open();
+        out.jsonValue(value);
+        named = false;
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        // The underlying writer belongs to the caller
+    }
+
+    private void reset(JsonWriter out, String member) {
+        this.out = out;
+        this.member = member;
+        depth = 0;
+        named = false;
+    }
+
+    private void open() throws IOException {
+        if (!open) {
+            open = true;
+            out.name(member).beginObject();
+        }
+    }
+
+    private void push(boolean object) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth << 1);
+        }
+        stack[depth++] = object;
+        named = false;
+    }
+}
@@ -1,48 +1,28 @@
 package com.cope.meteorwebgui.mapping;
 
-import com.cope.meteorwebgui.hud.HudPreviewCapture;
+import com.cope.meteorwebgui.protocol.JsonFragment;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import meteordevelopment.meteorclient.settings.Setting;
-import meteordevelopment.meteorclient.settings.SettingGroup;
-import meteordevelopment.meteorclient.systems.hud.Hud;
 import meteordevelopment.meteorclient.systems.hud.HudElement;
 import meteordevelopment.meteorclient.systems.hud.HudElementInfo;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
 
 
 /**
  * Maps Meteor HUD elements and their settings for the WebGUI initial state payload.
  */
 public final class HudMapper {
-    private static final Logger LOG = LoggerFactory.getLogger("WebGUI HudMapper");
     private static final String HUD_PREFIX = "hud::";
 
     private HudMapper() {}
 
-    public static JsonObject mapHudState() {
-        JsonObject data = new JsonObject();
-        data.add("elements", mapHudElements());
-        data.add("previews", HudPreviewCapture.serializeSnapshots());
-        return data;
-    }
-
-    private static JsonArray mapHudElements() {
-        JsonArray elements = new JsonArray();
-        try {
-            Hud hud = Hud.get();
-            for (HudElement element : hud) {
-                elements.add(mapElement(element));
-            }
-            LOG.info("Mapped {} HUD elements", elements.size());
-        } catch (Exception e) {
-            LOG.error("Failed to map HUD elements: {}", e.getMessage(), e);
-        }
-        return elements;
-    }
-
-    private static JsonObject mapElement(HudElement element) {
+    /**
+     * Map an element using already mapped setting groups, so cached groups can be reused.
+     */
+    public static JsonObject mapElement(HudElement element, JsonArray settingGroups) {
         JsonObject obj = new JsonObject();
         obj.addProperty("name", getElementIdentifier(element));
         obj.addProperty("title", element.info != null ? element.info.title : element.getClass().getSimpleName());
@@ -55,29 +35,57 @@ public final class HudMapper {
         obj.addProperty("y", element.getY());
         obj.addProperty("width", element.getWidth());
         obj.addProperty("height", element.getHeight());
+        obj.add("settingGroups", settingGroups);
+        return obj;
+    }
 
-        JsonArray settingGroupsArray = new JsonArray();
-        for (SettingGroup group : element.settings) {
-            JsonObject groupObj = new JsonObject();
-            groupObj.addProperty("name", group.name);
-
-            JsonArray settingsArray = new JsonArray();
-            for (Setting<?> setting : group) {
-                settingsArray.add(SettingsReflector.getSettingMetadata(setting));
-            }
-
-            groupObj.add("settings", settingsArray);
-            settingGroupsArray.add(groupObj);
-        }
+    /**
+     * Stream an element like {@link #mapElement(HudElement, JsonArray)}, splicing in already serialized setting groups.
+     */
+    public static void writeElement(JsonWriter out, HudElement element, JsonFragment settingGroups) throws IOException {
+        out.beginObject();
+        out.name("name").value(getElementIdentifier(element));
+        out.name("title").value(element.info != null ? element.info.title : element.getClass().getSimpleName());
+        out.name("description").value(element.info != null ? element.info.description : "");
+        out.name("group").value(element.info != null && element.info.group != null ? element.info.group.title() : "HUD");
+        out.name("category").value("HUD");
+        out.name("addon").value(element.info != null && element.info.group != null ? element.info.group.title() : "Meteor HUD");
+        out.name("active").value(element.isActive());
+        out.name("x").value(element.getX());
+        out.name("y").value(element.getY());
+        out.name("width").value(element.getWidth());
+        out.name("height").value(element.getHeight());
+        out.name("settingGroups");
+        settingGroups.writeTo(out);
+        out.endObject();
+    }
 
-        obj.add("settingGroups", settingGroupsArray);
-        return obj;
+    /**
+     * Stream the static part of an element for the schema bundle; position, size and state travel with the values.
+     */
+    public static void writeElementSchema(JsonWriter out, HudElement element, JsonFragment settingGroupSchema) throws IOException {
+        out.beginObject();
+        out.name("name").value(getElementIdentifier(element));
+        out.name("title").value(element.info != null ? element.info.title : element.getClass().getSimpleName());
+        out.name("description").value(element.info != null ? element.info.description : "");
+        out.name("group").value(element.info != null && element.info.group != null ? element.info.group.title() : "HUD");
+        out.name("category").value("HUD");
+        out.name("addon").value(element.info != null && element.info.group != null ? element.info.group.title() : "Meteor HUD");
+        out.name("settingGroups");
+        settingGroupSchema.writeTo(out);
+        out.endObject();
     }
 
     public static String getElementIdentifier(HudElement element) {
+        return HUD_PREFIX + getElementName(element) + "#" + System.identityHashCode(element);
+    }
+
+    /**
+     * The element's type name, without the prefix and instance suffix of its identifier.
+     */
+    public static String getElementName(HudElement element) {
         HudElementInfo<?> info = element.info;
-        String base = info != null ? info.name : element.getClass().getSimpleName();
-        return HUD_PREFIX + base + "#" + System.identityHashCode(element);
+        return info != null ? info.name : element.getClass().getSimpleName();
     }
 
     public static boolean isHudIdentifier(String identifier) {
@@ -89,49 +97,36 @@ public final class HudMapper {
         return isHudIdentifier(identifier) ? identifier.substring(HUD_PREFIX.length()) : identifier;
     }
 
-    public static HudElement findElement(String identifier) {
-        if (identifier == null) return null;
-        String target = normalizeIdentifier(identifier);
-        String base = target;
-        Integer hash = null;
-        int hashIndex = target.lastIndexOf('#');
-        if (hashIndex >= 0 && hashIndex < target.length() - 1) {
-            base = target.substring(0, hashIndex);
-            try {
-                hash = Integer.parseInt(target.substring(hashIndex + 1));
-            } catch (NumberFormatException ignored) {
-                hash = null;
-            }
-        }
-        Hud hud = Hud.get();
-        for (HudElement element : hud) {
-            HudElementInfo<?> info = element.info;
-            String name = info != null ? info.name : element.getClass().getSimpleName();
-            if (name.equalsIgnoreCase(base)) {
-                if (hash == null || hash == System.identityHashCode(element)) {
-                    return element;
-                }
-            }
+    /**
+     * What a HUD state change reports, read on the game thread so the message can be built on another.
+     */
+    public record HudState(String elementName, boolean active, int x, int y, int width, int height) {
+        public static HudState of(HudElement element) {
+            return new HudState(getElementIdentifier(element), element.isActive(),
+                element.getX(), element.getY(), element.getWidth(), element.getHeight());
         }
-        return null;
     }
 
-    public static JsonObject createHudStateMessage(HudElement element) {
+    public static JsonObject createHudStateMessage(HudState state) {
         JsonObject data = new JsonObject();
-        data.addProperty("elementName", getElementIdentifier(element));
-        data.addProperty("active", element.isActive());
-        data.addProperty("x", element.getX());
-        data.addProperty("y", element.getY());
-        data.addProperty("width", element.getWidth());
-        data.addProperty("height", element.getHeight());
+        data.addProperty("elementName", state.elementName());
+        data.addProperty("active", state.active());
+        data.addProperty("x", state.x());
+        data.addProperty("y", state.y());
+        data.addProperty("width", state.width());
+        data.addProperty("height", state.height());
         return data;
     }
 
-    public static JsonObject createHudSettingChangeMessage(HudElement element, Setting<?> setting) {
-        JsonObject data = new JsonObject();
-        data.addProperty("elementName", getElementIdentifier(element));
-        data.addProperty("settingName", setting.name);
-        data.add("value", SettingsReflector.getSettingValue(setting, SettingsReflector.detectSettingType(setting)));
-        return data;
+    /**
+     * Stream a HUD setting value change message for a value taken with {@link SettingsReflector#copyValue}.
+     */
+    public static void writeHudSettingChange(JsonWriter out, String elementName, Setting<?> setting, Object value) throws IOException {
+        out.beginObject();
+        out.name("elementName").value(elementName);
+        out.name("settingName").value(setting.name);
+        out.name("value");
+        SettingsReflector.writeSettingValue(out, setting, value);
+        out.endObject();
     }
 }
@@ -1,7 +1,9 @@
 package com.cope.meteorwebgui.mapping;
 
+import com.cope.meteorwebgui.protocol.JsonFragment;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import meteordevelopment.meteorclient.settings.Setting;
 import meteordevelopment.meteorclient.settings.SettingGroup;
 import meteordevelopment.meteorclient.systems.modules.Category;
@@ -10,6 +12,7 @@ import meteordevelopment.meteorclient.systems.modules.Modules;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -52,6 +55,20 @@ public class ModuleMapper {
      * Map a single module to JSON
      */
     public static JsonObject mapModule(Module module) {
+        JsonArray settingGroups;
+        try {
+            settingGroups = mapSettingGroups(module.settings);
+        } catch (Exception e) {
+            LOG.error("Failed to map settings of module {}: {}", module.name, e.getMessage());
+            settingGroups = new JsonArray();
+        }
+        return mapModule(module, settingGroups);
+    }
+
+    /**
+     * Map a module using already mapped setting groups, so cached groups can be reused
+     */
+    public static JsonObject mapModule(Module module, JsonArray settingGroups) {
         JsonObject moduleObj = new JsonObject();
 
         try {
@@ -61,29 +78,130 @@ public class ModuleMapper {
             moduleObj.addProperty("category", module.category.name);
             moduleObj.addProperty("active", module.isActive());
             moduleObj.addProperty("addon", module.addon != null ? module.addon.name : "Meteor Client");
+            moduleObj.add("settingGroups", settingGroups);
 
-            // Map setting groups
-            JsonArray settingGroupsArray = new JsonArray();
-            for (SettingGroup group : module.settings) {
-                JsonObject groupObj = new JsonObject();
-                groupObj.addProperty("name", group.name);
+        } catch (Exception e) {
+            LOG.error("Failed to map module {}: {}", module.name, e.getMessage());
+        }
 
-                JsonArray settingsArray = new JsonArray();
-                for (Setting<?> setting : group) {
-                    settingsArray.add(SettingsReflector.getSettingMetadata(setting));
-                }
+        return moduleObj;
+    }
 
-                groupObj.add("settings", settingsArray);
-                settingGroupsArray.add(groupObj);
+    /**
+     * Map setting groups with full setting metadata (shared by modules and HUD elements)
+     */
+    public static JsonArray mapSettingGroups(Iterable<SettingGroup> groups) {
+        JsonArray settingGroupsArray = new JsonArray();
+        for (SettingGroup group : groups) {
+            JsonObject groupObj = new JsonObject();
+            groupObj.addProperty("name", group.name);
+
+            JsonArray settingsArray = new JsonArray();
+            for (Setting<?> setting : group) {
+                settingsArray.add(SettingsReflector.getSettingMetadata(setting));
             }
 
-            moduleObj.add("settingGroups", settingGroupsArray);
+            groupObj.add("settings", settingsArray);
+            settingGroupsArray.add(groupObj);
+        }
+        return settingGroupsArray;
+    }
 
-        } catch (Exception e) {
-            LOG.error("Failed to map module {}: {}", module.name, e.getMessage());
+    /**
+     * Stream a module like {@link #mapModule(Module, JsonArray)}, splicing in setting groups that were
+     * serialized earlier by {@link #writeSettingGroups}
+     */
+    public static void writeModule(JsonWriter out, Module module, JsonFragment settingGroups) throws IOException {
+        out.beginObject();
+        out.name("name").value(module.name);
+        out.name("title").value(module.title);
+        out.name("description").value(module.description);
+        out.name("category").value(module.category.name);
+        out.name("active").value(module.isActive());
+        out.name("addon").value(module.addon != null ? module.addon.name : "Meteor Client");
+        out.name("settingGroups");
+        settingGroups.writeTo(out);
+        out.endObject();
+    }
+
+    /**
+     * Stream setting groups like {@link #mapSettingGroups}
+     */
+    public static void writeSettingGroups(JsonWriter out, Iterable<SettingGroup> groups) throws IOException {
+        out.beginArray();
+        for (SettingGroup group : groups) {
+            out.beginObject();
+            out.name("name").value(group.name);
+            out.name("settings").beginArray();
+            for (Setting<?> setting : group) {
+                SettingsReflector.writeSettingMetadata(out, setting);
+            }
+            out.endArray();
+            out.endObject();
         }
+        out.endArray();
+    }
 
-        return moduleObj;
+    /**
+     * Stream the static part of a module for the schema bundle: everything {@link #writeModule} writes
+     * except the active state and the live setting values
+     */
+    public static void writeModuleSchema(JsonWriter out, Module module, JsonFragment settingGroupSchema) throws IOException {
+        out.beginObject();
+        out.name("name").value(module.name);
+        out.name("title").value(module.title);
+        out.name("description").value(module.description);
+        out.name("category").value(module.category.name);
+        out.name("addon").value(module.addon != null ? module.addon.name : "Meteor Client");
+        out.name("settingGroups");
+        settingGroupSchema.writeTo(out);
+        out.endObject();
+    }
+
+    /**
+     * Stream setting groups with only the static part of each setting
+     */
+    public static void writeSettingGroupSchemas(JsonWriter out, Iterable<SettingGroup> groups) throws IOException {
+        out.beginArray();
+        for (SettingGroup group : groups) {
+            out.beginObject();
+            out.name("name").value(group.name);
+            out.name("settings").beginArray();
+            for (Setting<?> setting : group) {
+                SettingsReflector.writeSettingSchema(out, setting);
+            }
+            out.endArray();
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    /**
+     * Stream the current value of every setting, flattened across groups in schema order
+     */
+    public static void writeSettingValues(JsonWriter out, Iterable<SettingGroup> groups) throws IOException {
+        out.beginArray();
+        for (SettingGroup group : groups) {
+            for (Setting<?> setting : group) {
+                SettingsReflector.writeSettingValue(out, setting);
+            }
+        }
+        out.endArray();
+    }
+
+    /**
+     * Stream the flattened indices of the settings that are currently hidden; usually an empty array
+     */
+    public static void writeHiddenSettings(JsonWriter out, Iterable<SettingGroup> groups) throws IOException {
+        out.beginArray();
+        int index = 0;
+        for (SettingGroup group : groups) {
+            for (Setting<?> setting : group) {
+                if (!setting.isVisible()) out.value(index);
+                index++;
+            }
+        }
+        out.endArray();
     }
 
     /**
@@ -122,23 +240,24 @@ public class ModuleMapper {
     }
 
     /**
-     * Get module state change message
+     * Get module state change message for the state the module was in when it changed
      */
-    public static JsonObject createModuleStateMessage(Module module) {
+    public static JsonObject createModuleStateMessage(Module module, boolean active) {
         JsonObject data = new JsonObject();
         data.addProperty("moduleName", module.name);
-        data.addProperty("active", module.isActive());
+        data.addProperty("active", active);
         return data;
     }
 
     /**
-     * Get setting value change message
+     * Stream a setting value change message for a value taken with {@link SettingsReflector#copyValue}
      */
-    public static JsonObject createSettingChangeMessage(Module module, Setting<?> setting) {
-        JsonObject data = new JsonObject();
-        data.addProperty("moduleName", module.name);
-        data.addProperty("settingName", setting.name);
-        data.add("value", SettingsReflector.getSettingValue(setting, SettingsReflector.detectSettingType(setting)));
-        return data;
+    public static void writeSettingChange(JsonWriter out, Module module, Setting<?> setting, Object value) throws IOException {
+        out.beginObject();
+        out.name("moduleName").value(module.name);
+        out.name("settingName").value(setting.name);
+        out.name("value");
+        SettingsReflector.writeSettingValue(out, setting, value);
+        out.endObject();
     }
 }
@@ -0,0 +1,46 @@
+package com.cope.meteorwebgui.mapping;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import meteordevelopment.meteorclient.settings.Setting;
+
+import java.io.IOException;
+
+/**
+ * Converts the values of one kind of setting to and from the WebUI's JSON value containers.
+ * Codecs are resolved once per setting class through {@link SettingCodecs}; addons can register
+ * their own for setting classes that would otherwise be treated as {@link SettingType#UNKNOWN}.
+ */
+public interface SettingCodec {
+    /**
+     * The type reported to the WebUI, which decides how the setting is rendered and which
+     * value container it sends back.
+     */
+    SettingType type();
+
+    /**
+     * Writes the value container properties for a non-null value into the object {@code out} has open.
+     */
+    void writeValue(Setting<?> setting, Object value, JsonWriter out) throws IOException;
+
+    /**
+     * Writes the container for a setting that has no value at all.
+     */
+    default void writeEmptyValue(JsonWriter out) throws IOException {
+        out.name("value").nullValue();
+    }
+
+    /**
+     * Applies a value container sent by the WebUI.
+     *
+     * @return {@code true} if the setting accepted the value
+     */
+    boolean readValue(Setting<?> setting, JsonObject data);
+
+    /**
+     * Writes type-specific metadata such as ranges or the registry to pick entries from, as properties of the
+     * object {@code meta} has open. Nothing is sent for codecs that write no properties.
+     */
+    default void writeMetadata(Setting<?> setting, JsonWriter meta) throws IOException {
+    }
+}
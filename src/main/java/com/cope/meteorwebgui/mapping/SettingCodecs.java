@@ -0,0 +1,70 @@
+package com.cope.meteorwebgui.mapping;
+
+import meteordevelopment.meteorclient.settings.Setting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of {@link SettingCodec}s by setting class.
+ * A setting's codec is looked up once per concrete class, walking up its superclasses so subclasses of
+ * built-in settings keep their parent's codec, and is then cached in a {@link ClassValue}.
+ */
+public final class SettingCodecs {
+    private static final Logger LOG = LoggerFactory.getLogger("WebGUI Setting Codecs");
+
+    private static final Map<Class<?>, SettingCodec> REGISTERED = new ConcurrentHashMap<>();
+    private static volatile ClassValue<SettingCodec> resolved = newResolver();
+
+    static {
+        BuiltinSettingCodecs.registerAll();
+    }
+
+    private SettingCodecs() {}
+
+    /**
+     * Registers a codec for {@code settingClass} and its subclasses, replacing any codec registered for that exact class.
+     * Meant to be called by addons during initialization.
+     */
+    @SuppressWarnings("rawtypes")
+    public static void register(Class<? extends Setting> settingClass, SettingCodec codec) {
+        SettingCodec previous = REGISTERED.put(settingClass, codec);
+        // Classes resolved earlier may now map to a more specific codec
+        resolved = newResolver();
+        if (previous != null) {
+            LOG.info("Replaced setting codec for {} ({} -> {})", settingClass.getName(), previous.type(), codec.type());
+        }
+    }
+
+    /**
+     * Registers a built-in codec by class name, so Meteor versions without that setting class still load.
+     */
+    static void registerBuiltin(String simpleName, SettingCodec codec) {
+        String className = "meteordevelopment.meteorclient.settings." + simpleName;
+        try {
+            Class<?> settingClass = Class.forName(className, false, Setting.class.getClassLoader());
+            REGISTERED.putIfAbsent(settingClass, codec);
+        } catch (ClassNotFoundException e) {
+            LOG.debug("Setting class {} not present, skipping its codec", className);
+        }
+    }
+
+    public static SettingCodec get(Setting<?> setting) {
+        return resolved.get(setting.getClass());
+    }
+
+    private static ClassValue<SettingCodec> newResolver() {
+        return new ClassValue<>() {
+            @Override
+            protected SettingCodec computeValue(Class<?> type) {
+                for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                    SettingCodec codec = REGISTERED.get(current);
+                    if (codec != null) return codec;
+                }
+                return BuiltinSettingCodecs.UNKNOWN;
+            }
+        };
+    }
+}
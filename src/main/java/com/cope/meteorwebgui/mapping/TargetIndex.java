@@ -0,0 +1,182 @@
+package com.cope.meteorwebgui.mapping;
+
+import meteordevelopment.meteorclient.settings.Setting;
+import meteordevelopment.meteorclient.settings.SettingGroup;
+import meteordevelopment.meteorclient.settings.Settings;
+import meteordevelopment.meteorclient.systems.hud.Hud;
+import meteordevelopment.meteorclient.systems.hud.HudElement;
+import meteordevelopment.meteorclient.systems.modules.Module;
+import meteordevelopment.meteorclient.systems.modules.Modules;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Constant-time lookup of the config targets clients address by name: modules, HUD elements and their settings.
+ * <p>
+ * Modules are indexed once when monitoring starts. The HUD part is rebuilt lazily after {@link #hudChanged},
+ * which the {@code Hud} mixin calls whenever elements are added or removed; a lookup that misses also triggers
+ * one rebuild, so an element added behind our back is still found. Must be used on the game thread.
+ */
+public final class TargetIndex {
+    private static final Logger LOG = LoggerFactory.getLogger("WebGUI Target Index");
+
+    // Bumped by the Hud mixin; compared against the generation the HUD maps were built from
+    private static final AtomicInteger HUD_GENERATION = new AtomicInteger();
+
+    private final Map<String, Module> modules = new HashMap<>();
+    private final Map<String, HudElement> hudById = new HashMap<>();
+    private final Map<String, HudElement> hudByName = new HashMap<>();
+    private final Map<Object, Map<String, Setting<?>>> settings = new IdentityHashMap<>();
+    private int hudGeneration = -1;
+
+    /**
+     * Marks the HUD part of every index stale. Safe to call from any thread.
+     */
+    public static void hudChanged() {
+        HUD_GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Counter that advances whenever HUD elements are added or removed, for callers caching their own view of the HUD.
+     */
+    public static int hudGeneration() {
+        return HUD_GENERATION.get();
+    }
+
+    /**
+     * Indexes every registered module and HUD element, replacing whatever was indexed before.
+     */
+    public void rebuild() {
+        modules.clear();
+        settings.clear();
+        for (Module module : Modules.get().getAll()) {
+            addModule(module);
+        }
+        rebuildHud();
+        LOG.info("Indexed {} modules and {} HUD elements", modules.size(), hudById.size());
+    }
+
+    public void clear() {
+        modules.clear();
+        hudById.clear();
+        hudByName.clear();
+        settings.clear();
+        hudGeneration = -1;
+    }
+
+    /**
+     * Indexes a module registered after {@link #rebuild}.
+     */
+    public void addModule(Module module) {
+        modules.put(key(module.name), module);
+        settings.put(module, indexSettings(module.settings));
+    }
+
+    public void removeModule(Module module) {
+        modules.remove(key(module.name), module);
+        settings.remove(module);
+    }
+
+    /**
+     * Module by name, ignoring case like {@link Modules#get(String)}.
+     */
+    public Module findModule(String name) {
+        if (name == null) return null;
+        Module module = modules.get(key(name));
+        if (module == null) {
+            // Registered after the index was built
+            module = Modules.get().get(name);
+            if (module != null) addModule(module);
+        }
+        return module;
+    }
+
+    /**
+     * HUD element by identifier, with or without the {@code hud::} prefix and {@code #id} suffix;
+     * see {@link HudMapper#getElementIdentifier}.
+     */
+    public HudElement findHudElement(String identifier) {
+        if (identifier == null) return null;
+        if (hudGeneration != HUD_GENERATION.get()) {
+            rebuildHud();
+        }
+
+        HudElement element = lookupHud(identifier);
+        if (element == null) {
+            rebuildHud();
+            element = lookupHud(identifier);
+        }
+        return element;
+    }
+
+    /**
+     * Setting of a module or HUD element by its exact name.
+     */
+    public Setting<?> findSetting(Object target, String settingName) {
+        Map<String, Setting<?>> byName = settings.get(target);
+        if (byName == null) {
+            Settings owned = target instanceof Module module ? module.settings
+                : target instanceof HudElement element ? element.settings
+                : null;
+            if (owned == null) return null;
+            byName = indexSettings(owned);
+            settings.put(target, byName);
+        }
+        return byName.get(settingName);
+    }
+
+    private HudElement lookupHud(String identifier) {
+        String target = key(HudMapper.normalizeIdentifier(identifier));
+        HudElement element = hudById.get(target);
+        if (element != null) return element;
+
+        int hashIndex = target.lastIndexOf('#');
+        if (hashIndex < 0 || hashIndex == target.length() - 1) {
+            return hudByName.get(target);
+        }
+
+        // A stale id still resolves by name only if its suffix is not a valid id, as before
+        try {
+            Integer.parseInt(target.substring(hashIndex + 1));
+            return null;
+        } catch (NumberFormatException e) {
+            return hudByName.get(target.substring(0, hashIndex));
+        }
+    }
+
+    private void rebuildHud() {
+        hudGeneration = HUD_GENERATION.get();
+        for (HudElement element : hudById.values()) {
+            settings.remove(element);
+        }
+        hudById.clear();
+        hudByName.clear();
+
+        for (HudElement element : Hud.get()) {
+            hudById.put(key(HudMapper.normalizeIdentifier(HudMapper.getElementIdentifier(element))), element);
+            hudByName.putIfAbsent(key(HudMapper.getElementName(element)), element);
+            settings.put(element, indexSettings(element.settings));
+        }
+    }
+
+    private static Map<String, Setting<?>> indexSettings(Settings owned) {
+        Map<String, Setting<?>> byName = new HashMap<>();
+        for (SettingGroup group : owned) {
+            for (Setting<?> setting : group) {
+                // First one wins, matching the linear search this replaces
+                byName.putIfAbsent(setting.name, setting);
+            }
+        }
+        return byName;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,17 @@
+package com.cope.meteorwebgui.mixin;
+
+import com.cope.meteorwebgui.events.ChangeHooks;
+import meteordevelopment.meteorclient.systems.hud.HudElement;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(HudElement.class)
+public class HudElementMixin {
+    // Optional: the event monitor still re-checks every element once a second without them
+    @Inject(method = {"toggle", "setPos", "setSize", "move"}, at = @At("RETURN"), require = 0)
+    private void meteorwebgui$changed(CallbackInfo ci) {
+        ChangeHooks.hudElementChanged((HudElement) (Object) this);
+    }
+}
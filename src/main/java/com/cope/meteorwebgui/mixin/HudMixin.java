@@ -1,20 +1,45 @@
 package com.cope.meteorwebgui.mixin;
 
 import com.cope.meteorwebgui.hud.HudPreviewCapture;
+import com.cope.meteorwebgui.mapping.TargetIndex;
 import meteordevelopment.meteorclient.systems.hud.Hud;
 import meteordevelopment.meteorclient.systems.hud.HudElement;
 import meteordevelopment.meteorclient.systems.hud.HudRenderer;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 @Mixin(Hud.class)
 public class HudMixin {
+    @Inject(method = "onRender(Lmeteordevelopment/meteorclient/events/render/Render2DEvent;)V", at = @At("HEAD"))
+    private void meteorwebgui$beginFrame(CallbackInfo ci) {
+        HudPreviewCapture.beginFrame();
+    }
+
+    @Inject(method = "onRender(Lmeteordevelopment/meteorclient/events/render/Render2DEvent;)V", at = @At("RETURN"))
+    private void meteorwebgui$endFrame(CallbackInfo ci) {
+        HudPreviewCapture.endFrame();
+    }
+
     @Redirect(method = "onRender(Lmeteordevelopment/meteorclient/events/render/Render2DEvent;)V",
         at = @At(value = "INVOKE", target = "Lmeteordevelopment/meteorclient/systems/hud/HudElement;render(Lmeteordevelopment/meteorclient/systems/hud/HudRenderer;)V"))
     private void meteorwebgui$wrapRender(HudElement element, HudRenderer renderer) {
         HudPreviewCapture.begin(element);
         element.render(renderer);
-        HudPreviewCapture.end();
+        HudPreviewCapture.end(element);
+    }
+
+    // Element list mutations; optional so a Meteor version that renames one only loses the hint, not the mixin
+    @Inject(method = {"add", "remove", "clear", "resetToDefaultElements"}, at = @At("RETURN"), require = 0)
+    private void meteorwebgui$elementsChanged(CallbackInfo ci) {
+        TargetIndex.hudChanged();
+    }
+
+    @Inject(method = "fromTag", at = @At("RETURN"), require = 0)
+    private void meteorwebgui$elementsLoaded(CallbackInfoReturnable<Hud> cir) {
+        TargetIndex.hudChanged();
     }
 }
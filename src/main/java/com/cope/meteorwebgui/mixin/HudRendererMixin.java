@@ -5,6 +5,7 @@ import meteordevelopment.meteorclient.systems.hud.HudRenderer;
 import meteordevelopment.meteorclient.utils.render.color.Color;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.item.ItemStack;
+import net.minecraft.registry.Registries;
 import net.minecraft.util.Identifier;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
@@ -26,42 +27,42 @@ public class HudRendererMixin {
     }
 
     @Inject(method = "line(DDDDLmeteordevelopment/meteorclient/utils/render/color/Color;)V", at = @At("HEAD"))
-    private void meteorwebgui$markLine(double x1, double y1, double x2, double y2, Color color, CallbackInfo ci) {
-        HudPreviewCapture.markNonText();
+    private void meteorwebgui$captureLine(double x1, double y1, double x2, double y2, Color color, CallbackInfo ci) {
+        HudPreviewCapture.recordLine(x1, y1, x2, y2, color);
     }
 
     @Inject(method = "quad(DDDDLmeteordevelopment/meteorclient/utils/render/color/Color;)V", at = @At("HEAD"))
-    private void meteorwebgui$markQuad(double x, double y, double width, double height, Color color, CallbackInfo ci) {
-        HudPreviewCapture.markNonText();
+    private void meteorwebgui$captureQuad(double x, double y, double width, double height, Color color, CallbackInfo ci) {
+        HudPreviewCapture.recordQuad(x, y, width, height, color);
     }
 
     @Inject(method = "quad(DDDDLmeteordevelopment/meteorclient/utils/render/color/Color;Lmeteordevelopment/meteorclient/utils/render/color/Color;Lmeteordevelopment/meteorclient/utils/render/color/Color;Lmeteordevelopment/meteorclient/utils/render/color/Color;)V", at = @At("HEAD"))
-    private void meteorwebgui$markGradient(double x, double y, double width, double height, Color c1, Color c2, Color c3, Color c4, CallbackInfo ci) {
-        HudPreviewCapture.markNonText();
+    private void meteorwebgui$captureGradient(double x, double y, double width, double height, Color c1, Color c2, Color c3, Color c4, CallbackInfo ci) {
+        HudPreviewCapture.recordGradient(x, y, width, height, c1, c2, c3, c4);
     }
 
     @Inject(method = "triangle(DDDDDDLmeteordevelopment/meteorclient/utils/render/color/Color;)V", at = @At("HEAD"))
-    private void meteorwebgui$markTriangle(double x1, double y1, double x2, double y2, double x3, double y3, Color color, CallbackInfo ci) {
-        HudPreviewCapture.markNonText();
+    private void meteorwebgui$captureTriangle(double x1, double y1, double x2, double y2, double x3, double y3, Color color, CallbackInfo ci) {
+        HudPreviewCapture.recordTriangle(x1, y1, x2, y2, x3, y3, color);
     }
 
     @Inject(method = "texture(Lnet/minecraft/util/Identifier;DDDDLmeteordevelopment/meteorclient/utils/render/color/Color;)V", at = @At("HEAD"))
-    private void meteorwebgui$markTexture(Identifier texture, double x, double y, double width, double height, Color color, CallbackInfo ci) {
-        HudPreviewCapture.markNonText();
+    private void meteorwebgui$captureTexture(Identifier texture, double x, double y, double width, double height, Color color, CallbackInfo ci) {
+        HudPreviewCapture.recordTexture(texture, x, y, width, height, color);
     }
 
+    // The overload without a count label delegates here, so hooking it as well would record every item twice
     @Inject(method = "item(Lnet/minecraft/item/ItemStack;IIFZLjava/lang/String;)V", at = @At("HEAD"))
-    private void meteorwebgui$markItem(ItemStack stack, int x, int y, float scale, boolean overlay, String countLabel, CallbackInfo ci) {
-        HudPreviewCapture.markNonText();
-    }
-
-    @Inject(method = "item(Lnet/minecraft/item/ItemStack;IIFZ)V", at = @At("HEAD"))
-    private void meteorwebgui$markItemSimple(ItemStack stack, int x, int y, float scale, boolean overlay, CallbackInfo ci) {
-        HudPreviewCapture.markNonText();
+    private void meteorwebgui$captureItem(ItemStack stack, int x, int y, float scale, boolean overlay, String countLabel, CallbackInfo ci) {
+        if (HudPreviewCapture.isCapturing()) {
+            HudPreviewCapture.recordItem(Registries.ITEM.getRawId(stack.getItem()), stack.getCount(), x, y, scale);
+        }
     }
 
     @Inject(method = "entity(Lnet/minecraft/entity/LivingEntity;IIIIFF)V", at = @At("HEAD"))
-    private void meteorwebgui$markEntity(LivingEntity entity, int x, int y, int sizeX, int sizeY, float pitch, float yaw, CallbackInfo ci) {
-        HudPreviewCapture.markNonText();
+    private void meteorwebgui$captureEntity(LivingEntity entity, int x, int y, int sizeX, int sizeY, float pitch, float yaw, CallbackInfo ci) {
+        if (HudPreviewCapture.isCapturing()) {
+            HudPreviewCapture.recordEntity(Registries.ENTITY_TYPE.getRawId(entity.getType()), x, y, sizeX, sizeY);
+        }
     }
 }
@@ -0,0 +1,17 @@
+package com.cope.meteorwebgui.mixin;
+
+import com.cope.meteorwebgui.events.ChangeHooks;
+import meteordevelopment.meteorclient.systems.modules.Module;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(Module.class)
+public class ModuleMixin {
+    // Optional: without it the event monitor falls back to scanning every module
+    @Inject(method = "toggle()V", at = @At("RETURN"), require = 0)
+    private void meteorwebgui$toggled(CallbackInfo ci) {
+        ChangeHooks.moduleToggled((Module) (Object) this);
+    }
+}
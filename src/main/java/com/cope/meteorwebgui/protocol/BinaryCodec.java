@@ -0,0 +1,733 @@
+package com.cope.meteorwebgui.protocol;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compact binary encoding of {@link WSMessage}, used by clients that negotiate {@link WireProtocol#BINARY}.
+ * <p>
+ * Layout: {@code u8 version, varint typeId, u8 flags, [string id], [varint rev], [value data]}.
+ * Values are tagged: integers are zigzag varints, fractional numbers use float32 when that is exact,
+ * {@code #AARRGGBB} color strings pack into four bytes, and well-known object keys are replaced by
+ * their index in {@link #KEYS}. The mirror implementation lives in {@code webui/src/protocol/binary.ts}.
+ * <p>
+ * Streamed messages are encoded straight from the same {@link JsonStreams.Body} that writes their JSON form,
+ * through a {@link Writer}, so neither encoding is derived from the other.
+ */
+public final class BinaryCodec {
+    public static final int VERSION = 1;
+
+    private static final int FLAG_ID = 1;
+    private static final int FLAG_DATA = 1 << 1;
+    private static final int FLAG_REV = 1 << 2;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_FLOAT32 = 4;
+    private static final int TAG_FLOAT64 = 5;
+    private static final int TAG_STRING = 6;
+    private static final int TAG_COLOR = 7;
+    private static final int TAG_ARRAY = 8;
+    private static final int TAG_OBJECT = 9;
+
+    private static final long MAX_SAFE_INTEGER = (1L << 53) - 1;
+
+    /**
+     * Object keys that are sent as a single varint. Append-only: indices are part of the wire format.
+     */
+    private static final String[] KEYS = {
+        "name", "title", "description", "type", "value", "defaultValue", "visible", "typeMetadata",
+        "settingGroups", "settings", "category", "addon", "active", "x", "y", "z",
+        "width", "height", "lines", "text", "color", "shadow", "scale", "elements",
+        "previews", "group", "hasNonText", "updatedAt", "moduleName", "settingName", "elementName", "success",
+        "r", "g", "b", "a", "rainbow", "items", "entries", "id",
+        "label", "min", "max", "sliderMin", "sliderMax", "noSlider", "decimalPlaces", "modules",
+        "hud", "error", "registryType", "registry", "isKey", "modifiers", "family", "namespace",
+        "updates", "results", "hudSettings", "applied", "session", "rev",
+        "schema", "hash", "flush", "subscribed", "version", "base", "lineCount", "changes",
+        "index", "draw", "ops", "floats", "ints", "refs"
+    };
+
+    private static final Map<String, Integer> KEY_INDEX = new HashMap<>();
+
+    static {
+        for (int i = 0; i < KEYS.length; i++) {
+            KEY_INDEX.put(KEYS[i], i);
+        }
+    }
+
+    private BinaryCodec() {}
+
+    public static byte[] encode(WSMessage message) {
+        Sink sink = new Sink();
+        JsonElement data = message.getData();
+        boolean hasData = data != null && !data.isJsonNull();
+        writeHeader(sink, message.getMessageType(), message.getType(), message.getId(), message.getRev(), hasData);
+        if (hasData) writeValue(sink, data);
+        return sink.toByteArray();
+    }
+
+    /**
+     * Encodes a message whose data is streamed by {@code data}, the binary counterpart of {@link JsonStreams#message}.
+     */
+    public static byte[] message(MessageType type, Long rev, JsonStreams.Body data) {
+        Writer out = new Writer();
+        writeHeader(out.sink, type, type.getValue(), null, rev, true);
+        try {
+            data.write(out);
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.sink.toByteArray();
+    }
+
+    /**
+     * Encodes an already serialized JSON message. The JSON is read token by token, without building a tree.
+     *
+     * @throws com.google.gson.JsonParseException if {@code json} is not a message object
+     */
+    public static byte[] encodeJson(String json) {
+        String type = null;
+        String id = null;
+        Long rev = null;
+        Writer data = null;
+        try {
+            JsonReader in = new JsonReader(new StringReader(json));
+            in.setStrictness(Strictness.LENIENT);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "type" -> type = nextStringOrNull(in);
+                    case "id" -> id = nextStringOrNull(in);
+                    case "rev" -> {
+                        if (in.peek() == JsonToken.NULL) in.nextNull();
+                        else rev = in.nextLong();
+                    }
+                    case "data" -> {
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            data = new Writer();
+                            data.transcode(in);
+                        }
+                    }
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new JsonParseException("Malformed JSON message", e);
+        }
+
+        Sink sink = new Sink();
+        writeHeader(sink, type != null ? MessageType.fromString(type) : null, type, id, rev, data != null);
+        if (data != null) sink.writeBytes(data.sink.buffer, 0, data.sink.position);
+        return sink.toByteArray();
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static void writeHeader(Sink sink, MessageType messageType, String type, String id, Long rev, boolean hasData) {
+        sink.writeByte(VERSION);
+        if (messageType != null) {
+            sink.writeVarint(messageType.getId());
+        } else {
+            sink.writeVarint(0);
+            sink.writeString(type != null ? type : "");
+        }
+
+        sink.writeByte((id != null ? FLAG_ID : 0) | (hasData ? FLAG_DATA : 0) | (rev != null ? FLAG_REV : 0));
+        if (id != null) sink.writeString(id);
+        if (rev != null) sink.writeVarint(rev);
+    }
+
+    /**
+     * Decodes a binary frame payload.
+     *
+     * @throws IllegalArgumentException if the payload is truncated or malformed
+     */
+    public static WSMessage decode(byte[] payload) {
+        Source source = new Source(payload);
+        int version = source.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary protocol version " + version);
+        }
+
+        int typeId = (int) source.readVarint();
+        String type;
+        if (typeId == 0) {
+            type = source.readString();
+        } else {
+            MessageType messageType = MessageType.fromId(typeId);
+            type = messageType != null ? messageType.getValue() : null;
+        }
+
+        int flags = source.readByte();
+        String id = (flags & FLAG_ID) != 0 ? source.readString() : null;
+        Long rev = (flags & FLAG_REV) != 0 ? source.readVarint() : null;
+        JsonElement data = (flags & FLAG_DATA) != 0 ? readValue(source) : JsonNull.INSTANCE;
+
+        WSMessage message = new WSMessage(type, data, id);
+        message.setRev(rev);
+        return message;
+    }
+
+    private static void writeValue(Sink sink, JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            sink.writeByte(TAG_NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            sink.writeByte(TAG_OBJECT);
+            sink.writeVarint(object.size());
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                writeKey(sink, entry.getKey());
+                writeValue(sink, entry.getValue());
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            sink.writeByte(TAG_ARRAY);
+            sink.writeVarint(array.size());
+            for (JsonElement item : array) {
+                writeValue(sink, item);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                sink.writeByte(primitive.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+            } else if (primitive.isNumber()) {
+                writeNumber(sink, primitive.getAsNumber());
+            } else {
+                writeString(sink, primitive.getAsString());
+            }
+        }
+    }
+
+    private static void writeString(Sink sink, String value) {
+        if (isColor(value)) {
+            sink.writeByte(TAG_COLOR);
+            sink.writeIntLE((int) Long.parseLong(value, 1, 9, 16));
+        } else {
+            sink.writeByte(TAG_STRING);
+            sink.writeString(value);
+        }
+    }
+
+    private static void writeNumber(Sink sink, Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            writeInteger(sink, number.longValue());
+            return;
+        }
+
+        if (number instanceof BigInteger || !(number instanceof Double || number instanceof Float || number instanceof BigDecimal)) {
+            // LazilyParsedNumber and friends: keep integers exact when the text has no fraction
+            String text = number.toString();
+            try {
+                writeInteger(sink, Long.parseLong(text));
+                return;
+            } catch (NumberFormatException ignored) {
+                // fall through to floating point
+            }
+        }
+
+        writeDouble(sink, number.doubleValue());
+    }
+
+    private static void writeDouble(Sink sink, double value) {
+        if (value == Math.rint(value) && Math.abs(value) <= MAX_SAFE_INTEGER && !isNegativeZero(value)) {
+            writeInteger(sink, (long) value);
+        } else if ((double) (float) value == value) {
+            sink.writeByte(TAG_FLOAT32);
+            sink.writeIntLE(Float.floatToRawIntBits((float) value));
+        } else {
+            sink.writeByte(TAG_FLOAT64);
+            sink.writeLongLE(Double.doubleToRawLongBits(value));
+        }
+    }
+
+    private static void writeInteger(Sink sink, long value) {
+        if (Math.abs(value) > MAX_SAFE_INTEGER) {
+            // Browsers cannot represent this exactly as a number; send the nearest double like JSON would
+            sink.writeByte(TAG_FLOAT64);
+            sink.writeLongLE(Double.doubleToRawLongBits((double) value));
+            return;
+        }
+        sink.writeByte(TAG_INT);
+        sink.writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private static boolean isNegativeZero(double value) {
+        return value == 0.0 && Double.doubleToRawLongBits(value) != 0L;
+    }
+
+    private static boolean isColor(String value) {
+        if (value.length() != 9 || value.charAt(0) != '#') return false;
+        for (int i = 1; i < 9; i++) {
+            char c = value.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'A' && c <= 'F'))) return false;
+        }
+        return true;
+    }
+
+    private static void writeKey(Sink sink, String key) {
+        Integer index = KEY_INDEX.get(key);
+        if (index != null) {
+            sink.writeVarint(index + 1);
+        } else {
+            sink.writeVarint(0);
+            sink.writeString(key);
+        }
+    }
+
+    private static JsonElement readValue(Source source) {
+        int tag = source.readByte();
+        return switch (tag) {
+            case TAG_NULL -> JsonNull.INSTANCE;
+            case TAG_FALSE -> new JsonPrimitive(false);
+            case TAG_TRUE -> new JsonPrimitive(true);
+            case TAG_INT -> {
+                long raw = source.readVarint();
+                long value = (raw >>> 1) ^ -(raw & 1);
+                yield value == (int) value ? new JsonPrimitive((int) value) : new JsonPrimitive(value);
+            }
+            case TAG_FLOAT32 -> new JsonPrimitive((double) Float.intBitsToFloat(source.readIntLE()));
+            case TAG_FLOAT64 -> new JsonPrimitive(Double.longBitsToDouble(source.readLongLE()));
+            case TAG_STRING -> new JsonPrimitive(source.readString());
+            case TAG_COLOR -> new JsonPrimitive(String.format("#%08X", source.readIntLE()));
+            case TAG_ARRAY -> {
+                int size = source.readLength();
+                JsonArray array = new JsonArray(size);
+                for (int i = 0; i < size; i++) {
+                    array.add(readValue(source));
+                }
+                yield array;
+            }
+            case TAG_OBJECT -> {
+                int size = source.readLength();
+                JsonObject object = new JsonObject();
+                for (int i = 0; i < size; i++) {
+                    String key = readKey(source);
+                    object.add(key, readValue(source));
+                }
+                yield object;
+            }
+            default -> throw new IllegalArgumentException("Unknown value tag " + tag);
+        };
+    }
+
+    private static String readKey(Source source) {
+        // A table index, not a length, so it is not bounded by the bytes that remain
+        long index = source.readVarint();
+        if (index == 0) return source.readString();
+        if (index < 0 || index > KEYS.length) throw new IllegalArgumentException("Unknown key index " + index);
+        return KEYS[(int) index - 1];
+    }
+
+    /**
+     * A {@link JsonWriter} that encodes what is written to it in this binary format instead of JSON, so any code
+     * that streams JSON can produce binary frames unchanged. Null object members are dropped like with
+     * {@code serializeNulls(false)}, and {@link #jsonValue} is transcoded token by token.
+     * <p>
+     * Container sizes are not known up front: each container reserves one byte for its count and is shifted
+     * in place on {@code end} in the rare case the count needs a longer varint.
+     */
+    public static final class Writer extends JsonWriter {
+        private final Sink sink = new Sink();
+        private int[] countOffsets = new int[16];
+        private int[] counts = new int[16];
+        private boolean[] objects = new boolean[16];
+        private int depth;
+        private String pendingName;
+        private boolean complete;
+
+        public Writer() {
+            super(java.io.Writer.nullWriter());
+            setSerializeNulls(false);
+        }
+
+        /**
+         * The encoded value written so far.
+         */
+        public byte[] toByteArray() {
+            return sink.toByteArray();
+        }
+
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            beforeValue();
+            sink.writeByte(TAG_ARRAY);
+            push(false);
+            return this;
+        }
+
+        @Override
+        public JsonWriter endArray() throws IOException {
+            pop(false);
+            return this;
+        }
+
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            beforeValue();
+            sink.writeByte(TAG_OBJECT);
+            push(true);
+            return this;
+        }
+
+        @Override
+        public JsonWriter endObject() throws IOException {
+            pop(true);
+            return this;
+        }
+
+        @Override
+        public JsonWriter name(String name) throws IOException {
+            Objects.requireNonNull(name, "name == null");
+            if (depth == 0 || !objects[depth - 1] || pendingName != null) {
+                throw new IllegalStateException("Unexpected name " + name);
+            }
+            pendingName = name;
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            if (value == null) return nullValue();
+            beforeValue();
+            writeString(sink, value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(boolean value) throws IOException {
+            beforeValue();
+            sink.writeByte(value ? TAG_TRUE : TAG_FALSE);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Boolean value) throws IOException {
+            return value == null ? nullValue() : value(value.booleanValue());
+        }
+
+        /**
+         * Fractional floats are sent as float32 as they are, rather than as the nearest double of their decimal text.
+         */
+        @Override
+        public JsonWriter value(float value) throws IOException {
+            beforeValue();
+            if (value == Math.rint(value) && Math.abs(value) <= MAX_SAFE_INTEGER && !isNegativeZero(value)) {
+                writeInteger(sink, (long) value);
+            } else {
+                sink.writeByte(TAG_FLOAT32);
+                sink.writeIntLE(Float.floatToRawIntBits(value));
+            }
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(double value) throws IOException {
+            beforeValue();
+            writeDouble(sink, value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(long value) throws IOException {
+            beforeValue();
+            writeInteger(sink, value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Number value) throws IOException {
+            if (value == null) return nullValue();
+            beforeValue();
+            writeNumber(sink, value);
+            return this;
+        }
+
+        @Override
+        public JsonWriter nullValue() throws IOException {
+            if (pendingName != null && !getSerializeNulls()) {
+                pendingName = null;
+                return this;
+            }
+            beforeValue();
+            sink.writeByte(TAG_NULL);
+            return this;
+        }
+
+        /**
+         * Transcodes a serialized JSON value. Prefer {@link JsonFragment}, which carries a binary copy already.
+         */
+        @Override
+        public JsonWriter jsonValue(String value) throws IOException {
+            if (value == null) return nullValue();
+            JsonReader in = new JsonReader(new StringReader(value));
+            in.setStrictness(Strictness.LENIENT);
+            transcode(in);
+            return this;
+        }
+
+        /**
+         * Splices in one value that is already encoded, such as a {@link JsonFragment}'s.
+         */
+        void encodedValue(byte[] encoded) throws IOException {
+            beforeValue();
+            sink.writeBytes(encoded, 0, encoded.length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (depth > 0 || pendingName != null) {
+                throw new IOException("Incomplete document");
+            }
+        }
+
+        private void transcode(JsonReader in) throws IOException {
+            switch (in.peek()) {
+                case BEGIN_ARRAY -> {
+                    in.beginArray();
+                    beginArray();
+                    while (in.hasNext()) transcode(in);
+                    in.endArray();
+                    endArray();
+                }
+                case BEGIN_OBJECT -> {
+                    in.beginObject();
+                    beginObject();
+                    while (in.hasNext()) {
+                        name(in.nextName());
+                        transcode(in);
+                    }
+                    in.endObject();
+                    endObject();
+                }
+                case STRING -> value(in.nextString());
+                case NUMBER -> {
+                    String text = in.nextString();
+                    beforeValue();
+                    try {
+                        writeInteger(sink, Long.parseLong(text));
+                    } catch (NumberFormatException e) {
+                        writeDouble(sink, Double.parseDouble(text));
+                    }
+                }
+                case BOOLEAN -> value(in.nextBoolean());
+                case NULL -> {
+                    // Written out explicitly, as the JSON text would keep it
+                    in.nextNull();
+                    beforeValue();
+                    sink.writeByte(TAG_NULL);
+                }
+                default -> throw new IllegalStateException("Unexpected token " + in.peek());
+            }
+        }
+
+        private void beforeValue() {
+            if (depth == 0) {
+                if (complete) throw new IllegalStateException("Document already complete");
+                complete = true;
+                return;
+            }
+            if (objects[depth - 1]) {
+                if (pendingName == null) throw new IllegalStateException("Value without a name");
+                writeKey(sink, pendingName);
+                pendingName = null;
+            }
+            counts[depth - 1]++;
+        }
+
+        private void push(boolean object) {
+            if (depth == counts.length) {
+                countOffsets = Arrays.copyOf(countOffsets, depth << 1);
+                counts = Arrays.copyOf(counts, depth << 1);
+                objects = Arrays.copyOf(objects, depth << 1);
+            }
+            countOffsets[depth] = sink.position;
+            counts[depth] = 0;
+            objects[depth] = object;
+            depth++;
+            sink.writeByte(0);
+        }
+
+        private void pop(boolean object) {
+            if (depth == 0 || objects[depth - 1] != object || pendingName != null) {
+                throw new IllegalStateException("Nesting problem");
+            }
+            depth--;
+            int offset = countOffsets[depth];
+            int count = counts[depth];
+            if (count < 0x80) {
+                sink.buffer[offset] = (byte) count;
+                return;
+            }
+
+            int size = varintSize(count);
+            sink.ensure(size - 1);
+            System.arraycopy(sink.buffer, offset + 1, sink.buffer, offset + size, sink.position - offset - 1);
+            int end = sink.position + size - 1;
+            sink.position = offset;
+            sink.writeVarint(count);
+            sink.position = end;
+        }
+
+        private static int varintSize(int value) {
+            int size = 1;
+            while ((value & ~0x7F) != 0) {
+                value >>>= 7;
+                size++;
+            }
+            return size;
+        }
+    }
+
+    private static final class Sink {
+        private byte[] buffer = new byte[256];
+        private int position;
+
+        private void ensure(int additional) {
+            if (position + additional > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + additional));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeIntLE(int value) {
+            ensure(4);
+            buffer[position++] = (byte) value;
+            buffer[position++] = (byte) (value >>> 8);
+            buffer[position++] = (byte) (value >>> 16);
+            buffer[position++] = (byte) (value >>> 24);
+        }
+
+        private void writeLongLE(long value) {
+            writeIntLE((int) value);
+            writeIntLE((int) (value >>> 32));
+        }
+
+        private void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            writeBytes(utf8, 0, utf8.length);
+        }
+
+        private void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Source {
+        private final byte[] buffer;
+        private int position;
+
+        private Source(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private void require(int count) {
+            if (position + count > buffer.length) {
+                throw new IllegalArgumentException("Truncated binary message");
+            }
+        }
+
+        private int readByte() {
+            require(1);
+            return buffer[position++] & 0xFF;
+        }
+
+        private long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return result;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private int readLength() {
+            long length = readVarint();
+            if (length < 0 || length > buffer.length - position + 1L) {
+                // Every element takes at least one byte, so larger counts cannot be valid
+                throw new IllegalArgumentException("Invalid length " + length);
+            }
+            return (int) length;
+        }
+
+        private int readIntLE() {
+            require(4);
+            int value = (buffer[position] & 0xFF)
+                | (buffer[position + 1] & 0xFF) << 8
+                | (buffer[position + 2] & 0xFF) << 16
+                | (buffer[position + 3] & 0xFF) << 24;
+            position += 4;
+            return value;
+        }
+
+        private long readLongLE() {
+            long low = readIntLE() & 0xFFFFFFFFL;
+            long high = readIntLE() & 0xFFFFFFFFL;
+            return low | high << 32;
+        }
+
+        private String readString() {
+            int length = readLength();
+            require(length);
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
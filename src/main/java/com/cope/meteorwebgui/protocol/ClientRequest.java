@@ -0,0 +1,38 @@
+package com.cope.meteorwebgui.protocol;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Typed payload of a client → server message, decoded by {@link RequestDecoder}.
+ * Setting values stay {@link JsonObject}s because their shape depends on the setting type.
+ */
+public sealed interface ClientRequest {
+    record ModuleToggle(String moduleName) implements ClientRequest {}
+
+    record ModuleList() implements ClientRequest {}
+
+    /**
+     * @param flush set on the last update of an interactive edit, such as releasing a slider,
+     *              so coalesced broadcasts of that edit go out right away
+     */
+    record SettingUpdate(String moduleName, String settingName, JsonObject value, boolean flush) implements ClientRequest {}
+
+    /**
+     * Items are kept as elements so a malformed one fails on its own instead of the whole batch.
+     */
+    record SettingUpdateBatch(JsonArray updates) implements ClientRequest {}
+
+    record SettingGet(String moduleName, String settingName) implements ClientRequest {}
+
+    record RegistryRequest(String registry) implements ClientRequest {}
+
+    record HudToggle(String elementName) implements ClientRequest {}
+
+    /**
+     * Sent when the client opens or leaves its HUD view; previews are only captured and sent while someone watches.
+     */
+    record HudPreviewSubscribe(boolean subscribed) implements ClientRequest {}
+
+    record Ping() implements ClientRequest {}
+}
@@ -0,0 +1,47 @@
+package com.cope.meteorwebgui.protocol;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * A serialized value kept in both wire encodings, for cached parts that are spliced into many messages.
+ * Both forms come from one pass over the same {@link JsonStreams.Body}, and {@link #writeTo} splices whichever
+ * matches the writer, so a binary message never has to re-read JSON text.
+ */
+public final class JsonFragment {
+    private final String json;
+    private final byte[] binary;
+
+    private JsonFragment(String json, byte[] binary) {
+        this.json = json;
+        this.binary = binary;
+    }
+
+    public static JsonFragment of(JsonStreams.Body body) {
+        BinaryCodec.Writer binary = new BinaryCodec.Writer();
+        String json = JsonStreams.write(out -> {
+            body.write(new TeeJsonWriter(out, binary));
+            binary.close();
+        });
+        return new JsonFragment(json, binary.toByteArray());
+    }
+
+    /**
+     * The JSON form, e.g. to hash the content.
+     */
+    public String json() {
+        return json;
+    }
+
+    public void writeTo(JsonWriter out) throws IOException {
+        if (out instanceof BinaryCodec.Writer writer) {
+            writer.encodedValue(binary);
+        } else if (out instanceof TeeJsonWriter tee) {
+            writeTo(tee.json);
+            writeTo(tee.binary);
+        } else {
+            out.jsonValue(json);
+        }
+    }
+}
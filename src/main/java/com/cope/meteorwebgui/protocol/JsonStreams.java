@@ -0,0 +1,101 @@
+package com.cope.meteorwebgui.protocol;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes outbound JSON straight to a reusable per-thread buffer instead of building {@code JsonObject} trees.
+ * The writer is configured like {@code new Gson()} (HTML-safe escaping, null members omitted, lenient numbers),
+ * so streamed messages are byte-for-byte identical to what {@code GSON.toJson(WSMessage)} produced.
+ */
+public final class JsonStreams {
+    // Buffers grown past this by one huge message are dropped instead of being kept alive per thread
+    private static final int MAX_RETAINED_CHARS = 1 << 20;
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    private JsonStreams() {}
+
+    /**
+     * Writes the value of one JSON document, such as the {@code data} of a message.
+     */
+    @FunctionalInterface
+    public interface Body {
+        void write(JsonWriter out) throws IOException;
+    }
+
+    /**
+     * Serializes a complete message, laid out like {@link WSMessage}: {@code type}, {@code data}, then {@code rev} if set.
+     */
+    public static String message(MessageType type, Long rev, Body data) {
+        return write(out -> {
+            out.beginObject();
+            out.name("type").value(type.getValue());
+            out.name("data");
+            data.write(out);
+            if (rev != null) {
+                out.name("rev").value(rev.longValue());
+            }
+            out.endObject();
+        });
+    }
+
+    /**
+     * Serializes a standalone JSON fragment, for example to cache and later splice in with {@link JsonWriter#jsonValue}.
+     */
+    public static String write(Body body) {
+        Buffer buffer = BUFFER.get();
+        // A body may serialize a nested fragment on the same thread; that one gets a private buffer
+        if (buffer.busy) {
+            buffer = new Buffer();
+        }
+
+        buffer.busy = true;
+        try {
+            body.write(buffer.out);
+            return buffer.chars.toString();
+        } catch (IOException e) {
+            buffer.broken = true;
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            buffer.broken = true;
+            throw e;
+        } finally {
+            buffer.busy = false;
+            buffer.reset();
+        }
+    }
+
+    private static final class Buffer {
+        private StringWriter chars;
+        private JsonWriter out;
+        private boolean busy;
+        private boolean broken;
+
+        private Buffer() {
+            open();
+        }
+
+        private void open() {
+            chars = new StringWriter(1024);
+            out = new JsonWriter(chars);
+            out.setHtmlSafe(true);
+            out.setSerializeNulls(false);
+            // Lenient like Gson.toJson, which also lets one writer carry consecutive top-level documents
+            out.setStrictness(Strictness.LENIENT);
+            broken = false;
+        }
+
+        private void reset() {
+            // A failed write leaves the writer mid-document, so start over with a fresh one
+            if (broken || chars.getBuffer().capacity() > MAX_RETAINED_CHARS) {
+                open();
+            } else {
+                chars.getBuffer().setLength(0);
+            }
+        }
+    }
+}
@@ -1,42 +1,68 @@
 package com.cope.meteorwebgui.protocol;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum MessageType {
     // Server -> Client
-    INITIAL_STATE("initial.state"),
-    MODULE_STATE_CHANGED("module.state.changed"),
-    SETTING_VALUE_CHANGED("setting.value.changed"),
-    REGISTRY_DATA("registry.data"),
-    HUD_PREVIEW_UPDATE("hud.preview.update"),
-    HUD_STATE_CHANGED("hud.state.changed"),
-    HUD_SETTING_VALUE_CHANGED("hud.setting.value.changed"),
-    ERROR("error"),
+    INITIAL_STATE(1, "initial.state"),
+    MODULE_STATE_CHANGED(2, "module.state.changed"),
+    SETTING_VALUE_CHANGED(3, "setting.value.changed"),
+    REGISTRY_DATA(4, "registry.data"),
+    HUD_PREVIEW_UPDATE(5, "hud.preview.update"),
+    HUD_STATE_CHANGED(6, "hud.state.changed"),
+    HUD_SETTING_VALUE_CHANGED(7, "hud.setting.value.changed"),
+    ERROR(8, "error"),
+    RESPONSE(9, "response"),
+    SETTING_VALUES_CHANGED(10, "setting.values.changed"),
+    SESSION_RESUMED(11, "session.resumed"),
+    SCHEMA_BUNDLE(12, "schema.bundle"),
+    HUD_PREVIEW_DELTA(13, "hud.preview.delta"),
 
     // Client -> Server
-    MODULE_TOGGLE("module.toggle"),
-    MODULE_LIST("module.list"),
-    SETTING_UPDATE("setting.update"),
-    SETTING_GET("setting.get"),
-    REGISTRY_REQUEST("registry.request"),
-    HUD_TOGGLE("hud.toggle"),
-    PING("ping"),
-    PONG("pong");
+    MODULE_TOGGLE(32, "module.toggle"),
+    MODULE_LIST(33, "module.list"),
+    SETTING_UPDATE(34, "setting.update"),
+    SETTING_GET(35, "setting.get"),
+    REGISTRY_REQUEST(36, "registry.request"),
+    HUD_TOGGLE(37, "hud.toggle"),
+    PING(38, "ping"),
+    PONG(39, "pong"),
+    SETTING_UPDATE_BATCH(40, "setting.update.batch"),
+    HUD_PREVIEW_SUBSCRIBE(41, "hud.preview.subscribe");
+
+    private static final MessageType[] BY_ID = new MessageType[64];
+    private static final Map<String, MessageType> BY_VALUE = new HashMap<>();
+
+    static {
+        for (MessageType type : values()) {
+            BY_ID[type.id] = type;
+            BY_VALUE.put(type.value, type);
+        }
+    }
 
+    /** Numeric id used by the binary wire protocol; stable across releases. */
+    private final int id;
     private final String value;
 
-    MessageType(String value) {
+    MessageType(int id, String value) {
+        this.id = id;
         this.value = value;
     }
 
+    public int getId() {
+        return id;
+    }
+
     public String getValue() {
         return value;
     }
 
+    public static MessageType fromId(int id) {
+        return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+
     public static MessageType fromString(String value) {
-        for (MessageType type : values()) {
-            if (type.value.equals(value)) {
-                return type;
-            }
-        }
-        return null;
+        return value != null ? BY_VALUE.get(value) : null;
     }
 }
@@ -0,0 +1,268 @@
+package com.cope.meteorwebgui.protocol;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decodes client messages without first parsing them into a {@link WSMessage} tree.
+ * The envelope is read with a streaming {@link JsonReader}; as soon as {@code type} is known, {@code data} is
+ * handed to that type's decoder, which pulls only the fields it needs and skips the rest. Clients put
+ * {@code type} first, so {@code data} is only buffered as a tree when a sender orders the fields differently.
+ */
+public final class RequestDecoder {
+    private static final TypeAdapter<JsonElement> TREE = new Gson().getAdapter(JsonElement.class);
+    private static final Map<MessageType, Decoder> DECODERS = new EnumMap<>(MessageType.class);
+
+    static {
+        DECODERS.put(MessageType.MODULE_TOGGLE, in -> {
+            String moduleName = null;
+            if (beginData(in)) {
+                while (in.hasNext()) {
+                    if (in.nextName().equals("moduleName")) moduleName = nextString(in);
+                    else in.skipValue();
+                }
+                in.endObject();
+            }
+            return new ClientRequest.ModuleToggle(require(moduleName, "moduleName"));
+        });
+        DECODERS.put(MessageType.MODULE_LIST, in -> {
+            in.skipValue();
+            return new ClientRequest.ModuleList();
+        });
+        DECODERS.put(MessageType.SETTING_UPDATE, in -> {
+            String moduleName = null;
+            String settingName = null;
+            JsonElement value = null;
+            boolean flush = false;
+            if (beginData(in)) {
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "moduleName" -> moduleName = nextString(in);
+                        case "settingName" -> settingName = nextString(in);
+                        case "value" -> value = TREE.read(in);
+                        case "flush" -> flush = nextBoolean(in);
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+            }
+            return new ClientRequest.SettingUpdate(require(moduleName, "moduleName"), require(settingName, "settingName"),
+                require(value, "value").getAsJsonObject(), flush);
+        });
+        DECODERS.put(MessageType.SETTING_UPDATE_BATCH, in -> {
+            JsonElement updates = null;
+            if (beginData(in)) {
+                while (in.hasNext()) {
+                    if (in.nextName().equals("updates")) updates = TREE.read(in);
+                    else in.skipValue();
+                }
+                in.endObject();
+            }
+            return new ClientRequest.SettingUpdateBatch(require(updates, "updates").getAsJsonArray());
+        });
+        DECODERS.put(MessageType.SETTING_GET, in -> {
+            String moduleName = null;
+            String settingName = null;
+            if (beginData(in)) {
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "moduleName" -> moduleName = nextString(in);
+                        case "settingName" -> settingName = nextString(in);
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+            }
+            return new ClientRequest.SettingGet(require(moduleName, "moduleName"), require(settingName, "settingName"));
+        });
+        DECODERS.put(MessageType.REGISTRY_REQUEST, in -> {
+            String registry = null;
+            if (beginData(in)) {
+                while (in.hasNext()) {
+                    if (in.nextName().equals("registry")) registry = nextString(in);
+                    else in.skipValue();
+                }
+                in.endObject();
+            }
+            return new ClientRequest.RegistryRequest(require(registry, "registry"));
+        });
+        DECODERS.put(MessageType.HUD_TOGGLE, in -> {
+            String elementName = null;
+            if (beginData(in)) {
+                while (in.hasNext()) {
+                    if (in.nextName().equals("elementName")) elementName = nextString(in);
+                    else in.skipValue();
+                }
+                in.endObject();
+            }
+            return new ClientRequest.HudToggle(require(elementName, "elementName"));
+        });
+        DECODERS.put(MessageType.HUD_PREVIEW_SUBSCRIBE, in -> {
+            boolean subscribed = false;
+            if (beginData(in)) {
+                while (in.hasNext()) {
+                    if (in.nextName().equals("subscribed")) subscribed = nextBoolean(in);
+                    else in.skipValue();
+                }
+                in.endObject();
+            }
+            return new ClientRequest.HudPreviewSubscribe(subscribed);
+        });
+        DECODERS.put(MessageType.PING, in -> {
+            in.skipValue();
+            return new ClientRequest.Ping();
+        });
+    }
+
+    private RequestDecoder() {}
+
+    /**
+     * A decoded client message.
+     *
+     * @param type     resolved message type, {@code null} if {@code typeName} is not a known type
+     * @param typeName type string as sent by the client
+     * @param id       request id to answer with, if any
+     * @param request  typed payload, {@code null} if the type is unknown or not accepted from clients
+     */
+    public record Inbound(MessageType type, String typeName, String id, ClientRequest request) {}
+
+    @FunctionalInterface
+    private interface Decoder {
+        /**
+         * Reads the {@code data} value, which may be JSON {@code null}.
+         */
+        ClientRequest read(JsonReader in) throws IOException;
+    }
+
+    /**
+     * Decodes a JSON text frame.
+     *
+     * @throws IOException              if the frame is not well-formed JSON
+     * @throws IllegalArgumentException if a required field is missing
+     */
+    public static Inbound decode(String json) throws IOException {
+        JsonReader in = new JsonReader(new StringReader(json));
+        // Gson.fromJson, which this replaces, reads leniently as well
+        in.setStrictness(Strictness.LENIENT);
+
+        String typeName = null;
+        MessageType type = null;
+        String id = null;
+        ClientRequest request = null;
+        JsonElement pendingData = null;
+        boolean typeSeen = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "type" -> {
+                    typeName = nextString(in);
+                    type = MessageType.fromString(typeName);
+                    typeSeen = true;
+                }
+                case "id" -> id = nextString(in);
+                case "data" -> {
+                    if (!typeSeen) {
+                        pendingData = TREE.read(in);
+                    } else {
+                        Decoder decoder = decoderFor(type);
+                        if (decoder != null) {
+                            request = decoder.read(in);
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                }
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (request == null) {
+            request = decodeTree(type, pendingData);
+        }
+        return new Inbound(type, typeName, id, request);
+    }
+
+    /**
+     * Decodes a message whose envelope was already decoded, such as one from the binary protocol.
+     */
+    public static Inbound decode(WSMessage message) {
+        MessageType type = message.getMessageType();
+        return new Inbound(type, message.getType(), message.getId(), decodeTree(type, message.getData()));
+    }
+
+    private static ClientRequest decodeTree(MessageType type, JsonElement data) {
+        Decoder decoder = decoderFor(type);
+        if (decoder == null) return null;
+        return new DataAdapter(decoder).fromJsonTree(data != null ? data : JsonNull.INSTANCE);
+    }
+
+    private static Decoder decoderFor(MessageType type) {
+        return type != null ? DECODERS.get(type) : null;
+    }
+
+    private static boolean beginData(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return false;
+        }
+        in.beginObject();
+        return true;
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static boolean nextBoolean(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BOOLEAN) {
+            in.skipValue();
+            return false;
+        }
+        return in.nextBoolean();
+    }
+
+    private static <T> T require(T value, String field) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field: " + field);
+        }
+        return value;
+    }
+
+    /**
+     * Lets a streaming decoder consume an already parsed {@code data} tree through Gson's tree reader.
+     */
+    private static final class DataAdapter extends TypeAdapter<ClientRequest> {
+        private final Decoder decoder;
+
+        private DataAdapter(Decoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public ClientRequest read(JsonReader in) throws IOException {
+            return decoder.read(in);
+        }
+
+        @Override
+        public void write(JsonWriter out, ClientRequest request) {
+            throw new UnsupportedOperationException("Client requests are only decoded");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.cope.meteorwebgui.protocol;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Forwards every token to a JSON writer and a binary one, so {@link JsonFragment} gets both encodings in one pass.
+ */
+final class TeeJsonWriter extends JsonWriter {
+    final JsonWriter json;
+    final BinaryCodec.Writer binary;
+
+    TeeJsonWriter(JsonWriter json, BinaryCodec.Writer binary) {
+        super(java.io.Writer.nullWriter());
+        this.json = json;
+        this.binary = binary;
+        setSerializeNulls(false);
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        json.beginArray();
+        binary.beginArray();
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        json.endArray();
+        binary.endArray();
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        json.beginObject();
+        binary.beginObject();
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        json.endObject();
+        binary.endObject();
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        json.name(name);
+        binary.name(name);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        json.value(value);
+        binary.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        json.value(value);
+        binary.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        json.value(value);
+        binary.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+        json.value(value);
+        binary.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        json.value(value);
+        binary.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        json.value(value);
+        binary.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        json.value(value);
+        binary.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        json.nullValue();
+        binary.nullValue();
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        json.jsonValue(value);
+        binary.jsonValue(value);
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        json.flush();
+    }
+
+    @Override
+    public void close() {
+        // The underlying writers belong to the caller
+    }
+}
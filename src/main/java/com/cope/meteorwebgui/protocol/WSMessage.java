@@ -6,6 +6,7 @@ public class WSMessage {
     private String type;
     private JsonElement data;
     private String id;
+    private Long rev;
 
     public WSMessage() {
     }
@@ -56,6 +57,17 @@ public class WSMessage {
         this.id = id;
     }
 
+    /**
+     * Change-log revision for state change broadcasts, {@code null} for everything else.
+     */
+    public Long getRev() {
+        return rev;
+    }
+
+    public void setRev(Long rev) {
+        this.rev = rev;
+    }
+
     public MessageType getMessageType() {
         return MessageType.fromString(type);
     }
@@ -0,0 +1,39 @@
+package com.cope.meteorwebgui.protocol;
+
+/**
+ * Message encodings a client can select through the {@code Sec-WebSocket-Protocol} handshake header.
+ * JSON stays the default so traffic remains readable in browser dev tools.
+ */
+public enum WireProtocol {
+    JSON("meteor-webgui.json"),
+    BINARY("meteor-webgui.binary.v1");
+
+    public static final String HEADER = "sec-websocket-protocol";
+
+    private final String subprotocol;
+
+    WireProtocol(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    /**
+     * Picks the protocol from a client's offer list, preferring binary when it is offered.
+     *
+     * @return the selected protocol, or {@code null} if the client offered none of ours
+     */
+    public static WireProtocol negotiate(String offers) {
+        if (offers == null) return null;
+
+        WireProtocol selected = null;
+        for (String offer : offers.split(",")) {
+            String name = offer.trim();
+            if (BINARY.subprotocol.equals(name)) return BINARY;
+            if (JSON.subprotocol.equals(name)) selected = JSON;
+        }
+        return selected;
+    }
+}
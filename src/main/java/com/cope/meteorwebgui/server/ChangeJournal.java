@@ -0,0 +1,214 @@
+package com.cope.meteorwebgui.server;
+
+import meteordevelopment.meteorclient.settings.Setting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands setting and state changes from Meteor's change callbacks to a dedicated publisher thread.
+ * <p>
+ * Producers only claim a slot in a bounded lock-free ring (one CAS) and store the changed setting, its owner and a
+ * copy of the new value or state; serializing and fanning out happen on the publisher thread. The copy is taken by
+ * the producer because the game thread keeps mutating live values, colors and lists in place, while the publisher
+ * would be reading them. If the ring is full, entries spill into an unbounded queue instead of blocking or dropping.
+ */
+final class ChangeJournal {
+    private static final Logger LOG = LoggerFactory.getLogger("WebGUI Change Journal");
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    static final byte MODULE_SETTING = 0;
+    static final byte HUD_SETTING = 1;
+    static final byte BATCH_END = 2;
+    static final byte FLUSH = 3;
+    static final byte MODULE_STATE = 4;
+    static final byte HUD_STATE = 5;
+
+    /**
+     * Receives entries on the publisher thread, in the order they were recorded.
+     */
+    interface Sink {
+        void setting(byte kind, Object target, Setting<?> setting, Object value, boolean batched);
+
+        void state(byte kind, Object target, Object state);
+
+        void batchEnd();
+
+        void flush();
+
+        /**
+         * Called on every pass of the publisher loop to send anything held back whose time has come.
+         *
+         * @return nanos until it should be called again at the latest
+         */
+        long flushDue(long now);
+    }
+
+    private record Spilled(byte kind, Object target, Setting<?> setting, Object value, boolean batched) {}
+
+    private final int mask;
+    // Per-slot sequence: equals the claiming position when free, position + 1 once written
+    private final AtomicLongArray sequences;
+    private final byte[] kinds;
+    private final Object[] targets;
+    private final Setting<?>[] settings;
+    private final Object[] values;
+    private final boolean[] batched;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final Queue<Spilled> spilled = new ConcurrentLinkedQueue<>();
+    private final Sink sink;
+    private final Thread publisher;
+    private volatile boolean waiting;
+    private volatile boolean running = true;
+
+    ChangeJournal(int capacity, Sink sink) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.kinds = new byte[size];
+        this.targets = new Object[size];
+        this.settings = new Setting<?>[size];
+        this.values = new Object[size];
+        this.batched = new boolean[size];
+        this.sink = sink;
+
+        this.publisher = new Thread(this::run, "meteor-webgui-change-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    /**
+     * Records a change. Never blocks; safe to call from any thread.
+     *
+     * @param value a copy of the setting's value, or the target's state, that nothing else mutates
+     */
+    void append(byte kind, Object target, Setting<?> setting, Object value, boolean inBatch) {
+        // While anything is spilled, later entries queue behind it so each producer's order is kept
+        long position = spilled.isEmpty() ? tail.get() : -1;
+        while (position >= 0) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    kinds[slot] = kind;
+                    targets[slot] = target;
+                    settings[slot] = setting;
+                    values[slot] = value;
+                    batched[slot] = inBatch;
+                    // Publishes the fields above to the consumer
+                    sequences.set(slot, position + 1);
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                position = -1;
+            } else {
+                position = tail.get();
+            }
+        }
+        if (position < 0) {
+            // Full, or behind spilled entries; everything in the ring is older and is published first
+            spilled.offer(new Spilled(kind, target, setting, value, inBatch));
+        }
+
+        if (waiting) {
+            LockSupport.unpark(publisher);
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        LockSupport.unpark(publisher);
+        try {
+            publisher.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            boolean published = drain();
+            long due = flushDue();
+            if (published) continue;
+
+            waiting = true;
+            // Re-check after announcing, so an append that missed the flag is not left waiting for the timeout
+            if (!drain()) {
+                LockSupport.parkNanos(this, Math.min(IDLE_PARK_NANOS, due));
+            }
+            waiting = false;
+        }
+        drain();
+    }
+
+    private long flushDue() {
+        try {
+            return sink.flushDue(System.nanoTime());
+        } catch (Exception e) {
+            LOG.error("Failed to publish held back changes: {}", e.getMessage(), e);
+            return IDLE_PARK_NANOS;
+        }
+    }
+
+    /**
+     * Publishes everything recorded so far.
+     *
+     * @return whether anything was published
+     */
+    private boolean drain() {
+        boolean published = false;
+        while (true) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) break;
+
+            byte kind = kinds[slot];
+            Object target = targets[slot];
+            Setting<?> setting = settings[slot];
+            Object value = values[slot];
+            boolean inBatch = batched[slot];
+            targets[slot] = null;
+            settings[slot] = null;
+            values[slot] = null;
+            sequences.set(slot, head + mask + 1);
+            head++;
+
+            publish(kind, target, setting, value, inBatch);
+            published = true;
+        }
+
+        Spilled entry;
+        while ((entry = spilled.poll()) != null) {
+            publish(entry.kind(), entry.target(), entry.setting(), entry.value(), entry.batched());
+            published = true;
+        }
+        return published;
+    }
+
+    private void publish(byte kind, Object target, Setting<?> setting, Object value, boolean inBatch) {
+        try {
+            if (kind == BATCH_END) {
+                sink.batchEnd();
+            } else if (kind == FLUSH) {
+                sink.flush();
+            } else if (kind == MODULE_STATE || kind == HUD_STATE) {
+                sink.state(kind, target, value);
+            } else {
+                sink.setting(kind, target, setting, value, inBatch);
+            }
+        } catch (Exception e) {
+            LOG.error("Failed to publish change: {}", e.getMessage(), e);
+        }
+    }
+}
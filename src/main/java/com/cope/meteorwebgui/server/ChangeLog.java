@@ -0,0 +1,84 @@
+package com.cope.meteorwebgui.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Bounded history of the state changes broadcast to clients, each stamped with a monotonic revision.
+ * A client that reconnects with the session id and last revision it saw gets only the changes it missed,
+ * as long as they have not been evicted yet.
+ * <p>
+ * Callers synchronize on the log itself to make stamping, logging and fan-out of a change atomic
+ * with respect to a resuming client's registration and replay.
+ */
+final class ChangeLog {
+    private final String session = UUID.randomUUID().toString();
+    private final long[] revisions;
+    private final OutboundMessage[] entries;
+
+    private long revision;
+    private int head;
+    private int size;
+
+    ChangeLog(int capacity) {
+        int slots = Math.max(1, capacity);
+        this.revisions = new long[slots];
+        this.entries = new OutboundMessage[slots];
+    }
+
+    /**
+     * Identifies this server run; revisions from a different session cannot be resumed.
+     */
+    String session() {
+        return session;
+    }
+
+    /**
+     * Revision of the most recently logged change, or 0 if nothing has changed yet.
+     */
+    synchronized long revision() {
+        return revision;
+    }
+
+    synchronized long nextRevision() {
+        return ++revision;
+    }
+
+    /**
+     * Records a change, evicting the oldest entry once the log is full.
+     */
+    synchronized void append(long rev, OutboundMessage message) {
+        int tail = (head + size) % entries.length;
+        revisions[tail] = rev;
+        entries[tail] = message;
+        if (size < entries.length) {
+            size++;
+        } else {
+            head = (head + 1) % entries.length;
+        }
+    }
+
+    /**
+     * Returns the changes logged after {@code since}, oldest first.
+     *
+     * @return the missed changes, or {@code null} if the client must fall back to a full snapshot
+     */
+    synchronized List<OutboundMessage> since(String clientSession, long since) {
+        if (!session.equals(clientSession) || since < 0 || since > revision) return null;
+
+        List<OutboundMessage> missed = new ArrayList<>((int) Math.min(size, revision - since));
+        if (since == revision) return missed;
+
+        long oldest = size > 0 ? revisions[head] : revision + 1;
+        if (since + 1 < oldest) return null;
+
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % entries.length;
+            if (revisions[slot] > since) {
+                missed.add(entries[slot]);
+            }
+        }
+        return missed;
+    }
+}
@@ -0,0 +1,205 @@
+package com.cope.meteorwebgui.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Bounded outbound queue owned by a single WebSocket client.
+ * Producers only enqueue; a writer task on the shared executor performs the blocking socket writes,
+ * so a slow or stalled browser tab never holds up the game thread or other clients.
+ * <p>
+ * A full queue only ever gives up HUD preview frames. Responses and revisioned changes are never dropped; if there
+ * is no room for one, the client is disconnected and catches up from the change log or a snapshot on reconnect.
+ */
+final class ClientOutbox {
+    private static final Logger LOG = LoggerFactory.getLogger("WebGUI Outbox");
+
+    private final MeteorWebSocket socket;
+    private final Executor writer;
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final ArrayDeque<Entry> queue;
+    private final Map<String, Entry> pendingByKey = new HashMap<>();
+    private boolean draining;
+    private boolean closed;
+    private int superseded;
+    private long dropped;
+
+    ClientOutbox(MeteorWebSocket socket, Executor writer, int capacity, OverflowPolicy policy) {
+        this.socket = socket;
+        this.writer = writer;
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+        this.queue = new ArrayDeque<>(Math.min(this.capacity, 64));
+    }
+
+    /**
+     * Queues a shared message for delivery. Never blocks on I/O.
+     *
+     * @param key coalescing key, or {@code null} for messages that must not be merged
+     * @return {@code false} if the outbox is closed or the client was disconnected for overflowing
+     */
+    boolean offer(String key, OutboundMessage message) {
+        boolean schedule = false;
+        boolean disconnect = false;
+        synchronized (this) {
+            if (closed) return false;
+
+            if (key != null && policy == OverflowPolicy.COALESCE) {
+                // Supersede the pending entry and requeue at the tail, so revision order is kept
+                Entry pending = pendingByKey.remove(key);
+                if (pending != null) {
+                    pending.message = null;
+                    superseded++;
+                }
+            }
+
+            if (queue.size() >= capacity && superseded > 0) {
+                queue.removeIf(entry -> entry.message == null);
+                superseded = 0;
+            }
+
+            if (queue.size() >= capacity && (policy == OverflowPolicy.DISCONNECT || !evictDisposable())) {
+                if (policy != OverflowPolicy.DISCONNECT && message.isDisposable()) {
+                    // Nothing older may go, so the preview frame itself is the one to skip
+                    countDropped();
+                    return true;
+                }
+                closed = true;
+                queue.clear();
+                pendingByKey.clear();
+                disconnect = true;
+            } else {
+                Entry entry = new Entry(key, message);
+                queue.addLast(entry);
+                if (key != null && policy == OverflowPolicy.COALESCE) {
+                    pendingByKey.put(key, entry);
+                }
+
+                schedule = !draining;
+                draining = true;
+            }
+        }
+
+        if (disconnect) {
+            LOG.warn("Disconnecting slow WebSocket client {} (outbound queue full at {} messages)",
+                socket.getHandshakeRequest().getRemoteIpAddress(), capacity);
+            execute(socket::abort);
+            return false;
+        }
+
+        if (schedule) {
+            execute(this::drain);
+        }
+        return true;
+    }
+
+    /**
+     * Discards everything still pending. Called once the connection is gone.
+     */
+    synchronized void close() {
+        closed = true;
+        queue.clear();
+        pendingByKey.clear();
+        superseded = 0;
+    }
+
+    synchronized int size() {
+        return queue.size();
+    }
+
+    /**
+     * Removes the oldest entry that may be lost, a superseded one or a HUD preview frame.
+     *
+     * @return {@code false} if every queued message must still be delivered
+     */
+    private boolean evictDisposable() {
+        for (Iterator<Entry> iterator = queue.iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (entry.message == null) {
+                iterator.remove();
+                superseded--;
+                return true;
+            }
+            if (entry.message.isDisposable()) {
+                iterator.remove();
+                if (entry.key != null) {
+                    pendingByKey.remove(entry.key, entry);
+                }
+                countDropped();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void countDropped() {
+        if (++dropped % 100 == 1) {
+            LOG.debug("Outbound queue for {} is full, dropped {} message(s) so far",
+                socket.getHandshakeRequest().getRemoteIpAddress(), dropped);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            OutboundMessage message;
+            synchronized (this) {
+                Entry entry = queue.pollFirst();
+                if (entry == null || closed) {
+                    draining = false;
+                    return;
+                }
+                if (entry.message == null) {
+                    superseded--;
+                    continue;
+                }
+                if (entry.key != null) {
+                    pendingByKey.remove(entry.key, entry);
+                }
+                message = entry.message;
+            }
+
+            if (!socket.isOpen()) {
+                close();
+                continue;
+            }
+
+            try {
+                socket.sendFrame(socket.encode(message));
+            } catch (Exception e) {
+                LOG.debug("Write to WebSocket client failed: {}", e.getMessage());
+                close();
+                socket.abort();
+            }
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            writer.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Server is shutting down; nothing left to deliver
+            synchronized (this) {
+                draining = false;
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private OutboundMessage message;
+
+        private Entry(String key, OutboundMessage message) {
+            this.key = key;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.cope.meteorwebgui.server;
+
+import meteordevelopment.meteorclient.events.world.TickEvent;
+import meteordevelopment.orbit.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Hands game-state mutations from WebSocket threads to the client thread.
+ * Socket threads enqueue without locking; the game thread drains the queue at the start of each tick,
+ * applies the pending commands in arrival order within a fixed time budget, and only then completes
+ * their futures so responses go out after the whole batch has been applied.
+ */
+public class CommandQueue {
+    private static final Logger LOG = LoggerFactory.getLogger("WebGUI Commands");
+    private static final long TICK_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final Queue<Command<?>> pending = new ConcurrentLinkedQueue<>();
+    private final List<Command<?>> applied = new ArrayList<>();
+    private volatile boolean accepting = true;
+
+    /**
+     * Schedules a mutation to run on the game thread during the next tick.
+     *
+     * @return a future completed with the mutation's result once its tick batch has been applied
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> mutation) {
+        Command<T> command = new Command<>(mutation);
+        if (!accepting) {
+            command.reject();
+            return command.future;
+        }
+
+        pending.offer(command);
+        // A shutdown that raced past the check above may already have drained the queue; whoever removes
+        // the command completes it
+        if (!accepting && pending.remove(command)) {
+            command.reject();
+        }
+        return command.future;
+    }
+
+    @EventHandler
+    private void onTick(TickEvent.Pre event) {
+        drain();
+    }
+
+    /**
+     * Applies queued commands until the queue is empty or the tick budget is used up.
+     * Anything left over runs on the next tick. Must be called on the game thread.
+     */
+    void drain() {
+        if (pending.isEmpty()) return;
+
+        long deadline = System.nanoTime() + TICK_BUDGET_NANOS;
+        Command<?> command;
+        while ((command = pending.poll()) != null) {
+            command.apply();
+            applied.add(command);
+            if (System.nanoTime() - deadline >= 0) break;
+        }
+
+        if (!pending.isEmpty()) {
+            LOG.debug("Tick budget used up after {} command(s), deferring the rest", applied.size());
+        }
+
+        for (Command<?> done : applied) {
+            done.complete();
+        }
+        applied.clear();
+    }
+
+    /**
+     * Stops accepting commands and fails everything still queued.
+     */
+    public void shutdown() {
+        accepting = false;
+        Command<?> command;
+        while ((command = pending.poll()) != null) {
+            command.reject();
+        }
+    }
+
+    private static final class Command<T> {
+        private final Supplier<T> mutation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Exception error;
+
+        private Command(Supplier<T> mutation) {
+            this.mutation = mutation;
+        }
+
+        private void apply() {
+            try {
+                result = mutation.get();
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+        private void reject() {
+            future.completeExceptionally(new IllegalStateException("Server is shutting down"));
+        }
+
+        private void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
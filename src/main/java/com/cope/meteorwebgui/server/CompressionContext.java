@@ -0,0 +1,22 @@
+package com.cope.meteorwebgui.server;
+
+/**
+ * How the server-side permessage-deflate compressor treats its sliding window between messages.
+ */
+public enum CompressionContext {
+    /** Reset after every message; compressed frames are built once and shared by all clients. */
+    PER_MESSAGE("Per Message"),
+    /** Keep a context per client; better ratios on repetitive traffic at the cost of compressing per client. */
+    SHARED("Shared");
+
+    private final String title;
+
+    CompressionContext(String title) {
+        this.title = title;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
@@ -0,0 +1,202 @@
+package com.cope.meteorwebgui.server;
+
+import fi.iki.elonen.NanoWSD.WebSocketException;
+import fi.iki.elonen.NanoWSD.WebSocketFrame.CloseCode;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Sits between the client socket and NanoWSD's frame reader on connections that negotiated permessage-deflate.
+ * NanoWSD rejects frames with RSV bits set, so compressed messages are reassembled and inflated here and
+ * handed on as plain, unmasked frames. Uncompressed and control frames pass through unchanged.
+ */
+final class InflatingFrameInputStream extends InputStream {
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+    private static final byte[] DEFLATE_TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+    private static final byte[] EMPTY = new byte[0];
+
+    private final DataInputStream in;
+    // Native state, only ever touched by the thread reading frames; see close()
+    private final Inflater inflater = new Inflater(true);
+    private volatile Thread reader;
+
+    private byte[] pending = EMPTY;
+    private int pendingPos;
+
+    private boolean inCompressedMessage;
+    private int messageOpCode;
+    private byte[] compressed = new byte[1024];
+    private int compressedLength;
+
+    InflatingFrameInputStream(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return pending[pendingPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        if (!fill()) return -1;
+
+        int count = Math.min(length, pending.length - pendingPos);
+        System.arraycopy(pending, pendingPos, buffer, offset, count);
+        pendingPos += count;
+        return count;
+    }
+
+    /**
+     * Closes the socket stream. Another thread closing the connection may find the reader inside {@code inflate},
+     * so only the reading thread ends the inflater: right here if it is the one closing, otherwise once its
+     * blocked read fails or hits the end of the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (Thread.currentThread() == reader) {
+            inflater.end();
+        }
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        if (reader == null) {
+            reader = Thread.currentThread();
+        }
+        try {
+            while (pendingPos >= pending.length) {
+                if (!readFrame()) {
+                    inflater.end();
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            inflater.end();
+            throw e;
+        }
+    }
+
+    private boolean readFrame() throws IOException {
+        int head = in.read();
+        if (head < 0) return false;
+
+        boolean fin = (head & 0x80) != 0;
+        boolean rsv1 = (head & 0x40) != 0;
+        int opCode = head & 0x0F;
+
+        int lengthByte = in.readUnsignedByte();
+        boolean masked = (lengthByte & 0x80) != 0;
+        long length = lengthByte & 0x7F;
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        } else if (length == 127) {
+            length = in.readLong();
+        }
+        if (length < 0 || length > MAX_MESSAGE_SIZE) {
+            throw new WebSocketException(CloseCode.MessageTooBig, "Max frame length has been exceeded.");
+        }
+
+        byte[] mask = null;
+        if (masked) {
+            mask = new byte[4];
+            in.readFully(mask);
+        }
+
+        byte[] payload = new byte[(int) length];
+        in.readFully(payload);
+        if (mask != null) {
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+        }
+
+        boolean control = (opCode & 0x08) != 0;
+        if (control) {
+            if (rsv1) throw new WebSocketException(CloseCode.ProtocolError, "Control frames must not be compressed.");
+            emit(head, payload);
+        } else if (opCode != 0) {
+            if (rsv1) {
+                inCompressedMessage = true;
+                messageOpCode = opCode;
+                compressedLength = 0;
+                append(payload);
+                if (fin) finishMessage();
+            } else {
+                inCompressedMessage = false;
+                emit(head, payload);
+            }
+        } else {
+            if (rsv1) throw new WebSocketException(CloseCode.ProtocolError, "RSV1 must only be set on the first frame of a message.");
+            if (inCompressedMessage) {
+                append(payload);
+                if (fin) finishMessage();
+            } else {
+                emit(head, payload);
+            }
+        }
+        return true;
+    }
+
+    private void append(byte[] payload) throws IOException {
+        int required = compressedLength + payload.length + DEFLATE_TAIL.length;
+        if (required > MAX_MESSAGE_SIZE) {
+            throw new WebSocketException(CloseCode.MessageTooBig, "Max message length has been exceeded.");
+        }
+        if (required > compressed.length) {
+            compressed = Arrays.copyOf(compressed, Math.max(required, compressed.length * 2));
+        }
+        System.arraycopy(payload, 0, compressed, compressedLength, payload.length);
+        compressedLength += payload.length;
+    }
+
+    private void finishMessage() throws IOException {
+        System.arraycopy(DEFLATE_TAIL, 0, compressed, compressedLength, DEFLATE_TAIL.length);
+        inflater.setInput(compressed, 0, compressedLength + DEFLATE_TAIL.length);
+
+        byte[] out = new byte[Math.max(256, compressedLength * 4)];
+        int written = 0;
+        try {
+            while (true) {
+                written += inflater.inflate(out, written, out.length - written);
+                if (inflater.finished()) {
+                    // Peer closed the deflate stream with a final block; start fresh for the next message
+                    inflater.reset();
+                    break;
+                }
+                if (inflater.needsInput() && written < out.length) break;
+                if (written == out.length) {
+                    if (out.length >= MAX_MESSAGE_SIZE) {
+                        throw new WebSocketException(CloseCode.MessageTooBig, "Max message length has been exceeded.");
+                    }
+                    out = Arrays.copyOf(out, Math.min(MAX_MESSAGE_SIZE, out.length * 2));
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new WebSocketException(CloseCode.InvalidFramePayloadData, "Invalid compressed payload: " + e.getMessage());
+        }
+
+        inCompressedMessage = false;
+        emit(0x80 | messageOpCode, Arrays.copyOf(out, written));
+    }
+
+    /**
+     * Queues an unmasked frame with minimal length encoding and all RSV bits cleared for NanoWSD to read.
+     */
+    private void emit(int head, byte[] payload) {
+        int headerLength = OutboundFrame.headerLength(payload.length);
+        byte[] frame = new byte[headerLength + payload.length];
+        OutboundFrame.writeHeader(frame, head & 0x8F, payload.length);
+        System.arraycopy(payload, 0, frame, headerLength, payload.length);
+        pending = frame;
+        pendingPos = 0;
+    }
+}
@@ -0,0 +1,415 @@
+package com.cope.meteorwebgui.server;
+
+import com.cope.meteorwebgui.mapping.HudMapper;
+import com.cope.meteorwebgui.mapping.ModuleMapper;
+import com.cope.meteorwebgui.mapping.TargetIndex;
+import com.cope.meteorwebgui.protocol.JsonFragment;
+import com.cope.meteorwebgui.protocol.MessageType;
+import meteordevelopment.meteorclient.settings.SettingGroup;
+import meteordevelopment.meteorclient.systems.hud.Hud;
+import meteordevelopment.meteorclient.systems.hud.HudElement;
+import meteordevelopment.meteorclient.systems.modules.Category;
+import meteordevelopment.meteorclient.systems.modules.Module;
+import meteordevelopment.meteorclient.systems.modules.Modules;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * INITIAL_STATE snapshot shared by every connecting client.
+ * Each module and HUD element is cached on its own as a serialized {@link JsonFragment}, with its setting metadata,
+ * the expensive part, cached separately inside it. A change to one owner only re-maps that owner: its state for a
+ * toggle or move, its settings as well for a setting change. The rest of the snapshot is spliced from the cache.
+ * <p>
+ * The change-log revision and session are not part of the cached data. They are stamped on when a snapshot is
+ * handed out, so a change elsewhere that bumps the revision does not force a rebuild.
+ * <p>
+ * Clients that opt in get the compact form instead: a {@link MessageType#SCHEMA_BUNDLE} with everything that never
+ * changes at runtime, keyed by a content hash, and an INITIAL_STATE that only carries a values vector aligned
+ * with that schema. A client that already holds the current schema only receives the values.
+ * <p>
+ * {@link #get} and {@link #getCompact} must run on the game thread; invalidation may come from any thread.
+ */
+final class InitialStateCache {
+    private static final Logger LOG = LoggerFactory.getLogger("WebGUI Initial State");
+
+    // Full form: setting metadata per owner, and the whole entry around it
+    private final Map<Module, JsonFragment> moduleSettings = new ConcurrentHashMap<>();
+    private final Map<HudElement, JsonFragment> hudSettings = new ConcurrentHashMap<>();
+    private final Map<Module, JsonFragment> moduleEntries = new ConcurrentHashMap<>();
+    private final Map<HudElement, JsonFragment> hudEntries = new ConcurrentHashMap<>();
+
+    // Compact form: static schema per owner, live values per owner, and the row around them
+    private final Map<Module, JsonFragment> moduleSchemas = new ConcurrentHashMap<>();
+    private final Map<HudElement, JsonFragment> hudSchemas = new ConcurrentHashMap<>();
+    private final Map<Module, SettingValues> moduleValues = new ConcurrentHashMap<>();
+    private final Map<HudElement, SettingValues> hudValues = new ConcurrentHashMap<>();
+    private final Map<Module, JsonFragment> moduleRows = new ConcurrentHashMap<>();
+    private final Map<HudElement, JsonFragment> hudRows = new ConcurrentHashMap<>();
+
+    // Advanced by every invalidation; each assembled part remembers the version it was built from
+    private final AtomicLong moduleVersion = new AtomicLong();
+    private final AtomicLong hudVersion = new AtomicLong();
+
+    private Part modules;
+    private Part hud;
+    private Part moduleValueRows;
+    private Part hudValueRows;
+
+    private Schema schema;
+    private int schemaHudGeneration;
+    private int schemaModuleCount;
+
+    // Last message handed out, reused while neither the data nor the revision has moved on
+    private OutboundMessage snapshot;
+    private Stamp snapshotStamp;
+    private Compact compact;
+    private Stamp compactStamp;
+
+    /**
+     * The schema bundle message and the hash clients cache it under.
+     */
+    record Schema(String hash, OutboundMessage message) {}
+
+    /**
+     * A compact snapshot: the schema it is aligned with and the values-only INITIAL_STATE.
+     */
+    record Compact(Schema schema, OutboundMessage values) {}
+
+    /**
+     * One owner's current setting values, flattened in schema order, and the indices of its hidden settings.
+     */
+    private record SettingValues(JsonFragment values, JsonFragment hidden) {}
+
+    /**
+     * An assembled list of entries, the owner version it reflects, and the set of owners it covers: the module
+     * count for module parts, the HUD generation for HUD parts.
+     */
+    private record Part(JsonFragment data, long version, int generation) {}
+
+    /**
+     * What a handed-out message was built from; fragments compare by identity.
+     */
+    private record Stamp(JsonFragment first, JsonFragment second, long revision, String session) {
+        boolean matches(JsonFragment first, JsonFragment second, long revision, String session) {
+            return this.first == first && this.second == second && this.revision == revision && this.session.equals(session);
+        }
+    }
+
+    /**
+     * A module's settings changed; its metadata is re-mapped on the next snapshot.
+     */
+    void invalidateSettings(Module module) {
+        moduleSettings.remove(module);
+        moduleValues.remove(module);
+        invalidateState(module);
+    }
+
+    void invalidateSettings(HudElement element) {
+        hudSettings.remove(element);
+        hudValues.remove(element);
+        invalidateState(element);
+    }
+
+    /**
+     * A module's active state changed; its entry is rebuilt around the cached setting metadata.
+     */
+    void invalidateState(Module module) {
+        moduleEntries.remove(module);
+        moduleRows.remove(module);
+        moduleVersion.incrementAndGet();
+    }
+
+    /**
+     * A HUD element was toggled, moved or resized. These arrive through {@code broadcastHudStateChange}, driven by
+     * the {@code HudElement} mixin and the event monitor's periodic rescan.
+     */
+    void invalidateState(HudElement element) {
+        hudEntries.remove(element);
+        hudRows.remove(element);
+        hudVersion.incrementAndGet();
+    }
+
+    /**
+     * Returns the current snapshot, rebuilding only what was invalidated.
+     *
+     * @param revision change-log revision the snapshot is stamped with
+     * @param session  server session id clients use to resume later
+     */
+    OutboundMessage get(long revision, String session) {
+        JsonFragment moduleData = modules();
+        JsonFragment hudData = hud();
+        if (snapshot != null && snapshotStamp.matches(moduleData, hudData, revision, session)) {
+            return snapshot;
+        }
+
+        // Only splices the immutable fragments, so it is safe to encode later on a writer thread
+        snapshot = OutboundMessage.of(MessageType.INITIAL_STATE, revision, out -> {
+            out.beginObject();
+            out.name("session").value(session);
+            out.name("modules");
+            moduleData.writeTo(out);
+            out.name("hud");
+            hudData.writeTo(out);
+            out.endObject();
+        });
+        snapshotStamp = new Stamp(moduleData, hudData, revision, session);
+        return snapshot;
+    }
+
+    private JsonFragment modules() {
+        long version = moduleVersion.get();
+        // Modules registered late by an addon change the count without any invalidation
+        int moduleCount = Modules.get().getCount();
+        if (modules != null && modules.version() == version && modules.generation() == moduleCount) {
+            return modules.data();
+        }
+
+        long start = System.nanoTime();
+        JsonFragment data = JsonFragment.of(out -> {
+            out.beginObject();
+            for (Category category : Modules.loopCategories()) {
+                // Skip HUD category
+                if (category.name.equalsIgnoreCase("hud")) {
+                    continue;
+                }
+
+                out.name(category.name).beginArray();
+                for (Module module : Modules.get().getGroup(category)) {
+                    moduleEntries.computeIfAbsent(module, this::mapModule).writeTo(out);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        });
+        modules = new Part(data, version, moduleCount);
+
+        LOG.debug("Reassembled modules ({} chars) in {} us", data.json().length(), (System.nanoTime() - start) / 1000);
+        return data;
+    }
+
+    private JsonFragment hud() {
+        long version = hudVersion.get();
+        // Element state is invalidated explicitly; added and removed elements advance the HUD generation
+        int hudGeneration = TargetIndex.hudGeneration();
+        if (hud != null && hud.version() == version && hud.generation() == hudGeneration) {
+            return hud.data();
+        }
+
+        long start = System.nanoTime();
+        List<HudElement> present = new ArrayList<>();
+        JsonFragment data = JsonFragment.of(out -> {
+            out.beginObject();
+            out.name("elements").beginArray();
+            for (HudElement element : Hud.get()) {
+                hudEntries.computeIfAbsent(element, this::mapElement).writeTo(out);
+                present.add(element);
+            }
+            out.endArray();
+            out.endObject();
+        });
+        hud = new Part(data, version, hudGeneration);
+
+        // Drop cached entries of removed elements
+        if (hudEntries.size() > present.size()) {
+            hudEntries.keySet().retainAll(present);
+            hudSettings.keySet().retainAll(present);
+        }
+
+        LOG.debug("Reassembled HUD elements ({} chars) in {} us", data.json().length(), (System.nanoTime() - start) / 1000);
+        return data;
+    }
+
+    private JsonFragment mapModule(Module module) {
+        JsonFragment settingGroups = moduleSettings.computeIfAbsent(module, m -> mapSettingGroups(m.name, m.settings));
+        return JsonFragment.of(out -> ModuleMapper.writeModule(out, module, settingGroups));
+    }
+
+    private JsonFragment mapElement(HudElement element) {
+        JsonFragment settingGroups = hudSettings.computeIfAbsent(element, e -> mapSettingGroups(HudMapper.getElementIdentifier(e), e.settings));
+        return JsonFragment.of(out -> HudMapper.writeElement(out, element, settingGroups));
+    }
+
+    /**
+     * Serializes one owner's setting groups; an owner whose settings cannot be mapped gets an empty list
+     * rather than breaking the whole snapshot.
+     */
+    private static JsonFragment mapSettingGroups(String owner, Iterable<SettingGroup> groups) {
+        try {
+            return JsonFragment.of(out -> ModuleMapper.writeSettingGroups(out, groups));
+        } catch (RuntimeException e) {
+            LOG.error("Failed to map settings of {}: {}", owner, e.getMessage(), e);
+            return JsonFragment.of(out -> out.beginArray().endArray());
+        }
+    }
+
+    /**
+     * Returns the compact snapshot, rebuilding the schema only when the set of HUD elements changed
+     * and the values only for owners that changed.
+     */
+    Compact getCompact(long revision, String session) {
+        Schema current = schema();
+        JsonFragment moduleData = moduleValues();
+        JsonFragment hudData = hudValues();
+        if (compact != null && compact.schema() == current && compactStamp.matches(moduleData, hudData, revision, session)) {
+            return compact;
+        }
+
+        OutboundMessage values = OutboundMessage.of(MessageType.INITIAL_STATE, revision, out -> {
+            out.beginObject();
+            out.name("session").value(session);
+            out.name("schema").value(current.hash());
+            out.name("modules");
+            moduleData.writeTo(out);
+            out.name("hud");
+            hudData.writeTo(out);
+            out.endObject();
+        });
+        compact = new Compact(current, values);
+        compactStamp = new Stamp(moduleData, hudData, revision, session);
+        return compact;
+    }
+
+    private Schema schema() {
+        int hudGeneration = TargetIndex.hudGeneration();
+        int moduleCount = Modules.get().getCount();
+        if (schema != null && schemaHudGeneration == hudGeneration && schemaModuleCount == moduleCount) {
+            return schema;
+        }
+
+        JsonFragment modules = JsonFragment.of(out -> {
+            out.beginObject();
+            for (Category category : Modules.loopCategories()) {
+                if (category.name.equalsIgnoreCase("hud")) {
+                    continue;
+                }
+
+                out.name(category.name).beginArray();
+                for (Module module : Modules.get().getGroup(category)) {
+                    moduleSchemas.computeIfAbsent(module, m -> JsonFragment.of(o ->
+                        ModuleMapper.writeModuleSchema(o, m, JsonFragment.of(groups -> ModuleMapper.writeSettingGroupSchemas(groups, m.settings)))))
+                        .writeTo(out);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        });
+
+        List<HudElement> present = new ArrayList<>();
+        JsonFragment hud = JsonFragment.of(out -> {
+            out.beginArray();
+            for (HudElement element : Hud.get()) {
+                hudSchemas.computeIfAbsent(element, e -> JsonFragment.of(o ->
+                    HudMapper.writeElementSchema(o, e, JsonFragment.of(groups -> ModuleMapper.writeSettingGroupSchemas(groups, e.settings)))))
+                    .writeTo(out);
+                present.add(element);
+            }
+            out.endArray();
+        });
+        if (hudSchemas.size() > present.size()) {
+            hudSchemas.keySet().retainAll(present);
+            hudValues.keySet().retainAll(present);
+            hudRows.keySet().retainAll(present);
+        }
+
+        // The module set is hashed too, so clients never pair a cached schema with a values vector of another length
+        String hash = StaticAssetCache.hash((moduleCount + "\n" + modules.json() + "\n" + hud.json()).getBytes(StandardCharsets.UTF_8));
+        OutboundMessage message = OutboundMessage.of(MessageType.SCHEMA_BUNDLE, null, out -> {
+            out.beginObject();
+            out.name("hash").value(hash);
+            out.name("modules");
+            modules.writeTo(out);
+            out.name("hud");
+            hud.writeTo(out);
+            out.endObject();
+        });
+
+        schema = new Schema(hash, message);
+        schemaHudGeneration = hudGeneration;
+        schemaModuleCount = moduleCount;
+        LOG.info("Built setting schema {} ({} chars)", hash, modules.json().length() + hud.json().length());
+        return schema;
+    }
+
+    /**
+     * One {@code [active, values, hidden]} entry per module, in schema order across all categories.
+     */
+    private JsonFragment moduleValues() {
+        long version = moduleVersion.get();
+        int moduleCount = Modules.get().getCount();
+        if (moduleValueRows != null && moduleValueRows.version() == version && moduleValueRows.generation() == moduleCount) {
+            return moduleValueRows.data();
+        }
+
+        JsonFragment data = JsonFragment.of(out -> {
+            out.beginArray();
+            for (Category category : Modules.loopCategories()) {
+                if (category.name.equalsIgnoreCase("hud")) {
+                    continue;
+                }
+
+                for (Module module : Modules.get().getGroup(category)) {
+                    moduleRows.computeIfAbsent(module, m -> {
+                        SettingValues values = moduleValues.computeIfAbsent(m, owner -> mapSettingValues(owner.settings));
+                        return JsonFragment.of(row -> {
+                            row.beginArray();
+                            row.value(m.isActive());
+                            values.values().writeTo(row);
+                            values.hidden().writeTo(row);
+                            row.endArray();
+                        });
+                    }).writeTo(out);
+                }
+            }
+            out.endArray();
+        });
+        moduleValueRows = new Part(data, version, moduleCount);
+        return data;
+    }
+
+    /**
+     * One {@code [active, x, y, width, height, values, hidden]} entry per HUD element, in schema order.
+     */
+    private JsonFragment hudValues() {
+        long version = hudVersion.get();
+        int hudGeneration = TargetIndex.hudGeneration();
+        if (hudValueRows != null && hudValueRows.version() == version && hudValueRows.generation() == hudGeneration) {
+            return hudValueRows.data();
+        }
+
+        JsonFragment data = JsonFragment.of(out -> {
+            out.beginArray();
+            for (HudElement element : Hud.get()) {
+                hudRows.computeIfAbsent(element, e -> {
+                    SettingValues values = hudValues.computeIfAbsent(e, owner -> mapSettingValues(owner.settings));
+                    return JsonFragment.of(row -> {
+                        row.beginArray();
+                        row.value(e.isActive());
+                        row.value(e.getX());
+                        row.value(e.getY());
+                        row.value(e.getWidth());
+                        row.value(e.getHeight());
+                        values.values().writeTo(row);
+                        values.hidden().writeTo(row);
+                        row.endArray();
+                    });
+                }).writeTo(out);
+            }
+            out.endArray();
+        });
+        hudValueRows = new Part(data, version, hudGeneration);
+        return data;
+    }
+
+    private static SettingValues mapSettingValues(Iterable<SettingGroup> groups) {
+        return new SettingValues(
+            JsonFragment.of(out -> ModuleMapper.writeSettingValues(out, groups)),
+            JsonFragment.of(out -> ModuleMapper.writeHiddenSettings(out, groups)));
+    }
+}
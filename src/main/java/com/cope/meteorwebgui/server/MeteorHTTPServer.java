@@ -1,11 +1,13 @@
 package com.cope.meteorwebgui.server;
 
+import com.cope.meteorwebgui.protocol.WireProtocol;
 import fi.iki.elonen.NanoHTTPD;
 import fi.iki.elonen.NanoWSD;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -14,10 +16,28 @@ import java.util.Map;
  */
 public class MeteorHTTPServer extends NanoWSD {
     private final MeteorWebSocketHandler webSocketHandler;
+    private final PerMessageDeflate.Options compressionOptions;
+    private final StaticAssetCache assetCache = new StaticAssetCache();
 
-    public MeteorHTTPServer(String hostname, int port, MeteorWebSocketHandler webSocketHandler) {
+    public MeteorHTTPServer(String hostname, int port, MeteorWebSocketHandler webSocketHandler, PerMessageDeflate.Options compressionOptions) {
         super(hostname, port);
         this.webSocketHandler = webSocketHandler;
+        this.compressionOptions = compressionOptions;
+        this.assetCache.preload();
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        Response response = super.serve(session);
+
+        // NanoWSD echoes the client's first offered subprotocol; answer with the one we actually selected
+        if (response != null && response.getStatus() == Response.Status.SWITCH_PROTOCOL) {
+            WireProtocol protocol = WireProtocol.negotiate(session.getHeaders().get(WireProtocol.HEADER));
+            if (protocol != null) {
+                response.addHeader(WireProtocol.HEADER, protocol.getSubprotocol());
+            }
+        }
+        return response;
     }
 
     @Override
@@ -26,7 +46,16 @@ public class MeteorHTTPServer extends NanoWSD {
 
         // Only accept WebSocket connections on /ws path
         if ("/ws".equals(uri)) {
-            return webSocketHandler.createWebSocket(handshake);
+            WireProtocol protocol = WireProtocol.negotiate(handshake.getHeaders().get(WireProtocol.HEADER));
+            PerMessageDeflate deflate = PerMessageDeflate.negotiate(
+                handshake.getHeaders().get(PerMessageDeflate.HEADER_EXTENSIONS), compressionOptions);
+            if (deflate == null) {
+                return webSocketHandler.createWebSocket(handshake, protocol, null);
+            }
+
+            WebSocket socket = webSocketHandler.createWebSocket(new InflatingSession(handshake), protocol, deflate);
+            socket.getHandshakeResponse().addHeader("Sec-WebSocket-Extensions", deflate.responseHeader());
+            return socket;
         }
 
         return null; // Reject WebSocket connection
@@ -43,74 +72,52 @@ public class MeteorHTTPServer extends NanoWSD {
         }
 
         // Serve static files from bundled resources
-        return serveStaticFile(uri);
+        return serveStaticFile(session);
     }
 
     /**
-     * Serves static files from the bundled WebUI resources in the JAR.
+     * Serves static files from the in-memory WebUI cache, honouring conditional requests and Accept-Encoding.
      */
-    private Response serveStaticFile(String uri) {
+    private Response serveStaticFile(IHTTPSession session) {
+        String uri = session.getUri();
+
         // Map root to index.html
         if ("/".equals(uri)) {
             uri = "/index.html";
         }
 
-        // Build resource path (all WebUI files are in /webui/ in JAR resources)
-        String resourcePath = "/webui" + uri;
-
-        // Try to load resource from JAR
-        try (InputStream resourceStream = getClass().getResourceAsStream(resourcePath)) {
-            if (resourceStream == null) {
-                // Resource not found
-                return newNotFoundResponse(uri);
-            }
-
-            // Read the entire resource into memory
-            byte[] data = resourceStream.readAllBytes();
+        StaticAssetCache.Asset asset = assetCache.get(uri);
+        if (asset == null) {
+            return newNotFoundResponse(uri);
+        }
 
-            // Determine MIME type based on file extension
-            String mimeType = detectMimeType(uri);
+        StaticAssetCache.Variant variant = asset.select(session.getHeaders().get("accept-encoding"));
 
-            // Return the resource with appropriate MIME type
-            return newFixedLengthResponse(Response.Status.OK, mimeType, new ByteArrayInputStream(data), data.length);
+        Response response;
+        if (variant.matches(session.getHeaders().get("if-none-match"))) {
+            response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, asset.mimeType, null, 0);
+        } else {
+            response = newFixedLengthResponse(Response.Status.OK, asset.mimeType,
+                new ByteArrayInputStream(variant.data), variant.data.length);
+            if (variant.contentEncoding != null) {
+                response.addHeader("Content-Encoding", variant.contentEncoding);
+            }
+        }
 
-        } catch (IOException e) {
-            e.printStackTrace();
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "Internal Server Error");
+        response.addHeader("ETag", variant.etag);
+        response.addHeader("Cache-Control", asset.cacheControl);
+        if (asset.gzip != null || asset.brotli != null) {
+            response.addHeader("Vary", "Accept-Encoding");
         }
+        return response;
     }
 
     /**
-     * Determines MIME type based on file extension.
+     * Static files are served precompressed from {@link StaticAssetCache}; never gzip them again on the fly.
      */
-    private String detectMimeType(String filename) {
-        if (filename.endsWith(".html")) {
-            return "text/html";
-        } else if (filename.endsWith(".js")) {
-            return "application/javascript";
-        } else if (filename.endsWith(".css")) {
-            return "text/css";
-        } else if (filename.endsWith(".json")) {
-            return "application/json";
-        } else if (filename.endsWith(".png")) {
-            return "image/png";
-        } else if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) {
-            return "image/jpeg";
-        } else if (filename.endsWith(".svg")) {
-            return "image/svg+xml";
-        } else if (filename.endsWith(".ico")) {
-            return "image/x-icon";
-        } else if (filename.endsWith(".woff")) {
-            return "font/woff";
-        } else if (filename.endsWith(".woff2")) {
-            return "font/woff2";
-        } else if (filename.endsWith(".ttf")) {
-            return "font/ttf";
-        } else if (filename.endsWith(".eot")) {
-            return "application/vnd.ms-fontobject";
-        } else {
-            return "application/octet-stream";
-        }
+    @Override
+    protected boolean useGzipWhenAccepted(Response response) {
+        return false;
     }
 
     /**
@@ -123,4 +130,78 @@ public class MeteorHTTPServer extends NanoWSD {
                 "</html>";
         return newFixedLengthResponse(Response.Status.NOT_FOUND, "text/html", html);
     }
+
+    /**
+     * Handshake session whose input stream inflates permessage-deflate frames before NanoWSD parses them.
+     */
+    private static final class InflatingSession implements IHTTPSession {
+        private final IHTTPSession delegate;
+        private final InputStream inputStream;
+
+        private InflatingSession(IHTTPSession delegate) {
+            this.delegate = delegate;
+            this.inputStream = new InflatingFrameInputStream(delegate.getInputStream());
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public void execute() throws IOException {
+            delegate.execute();
+        }
+
+        @Override
+        public CookieHandler getCookies() {
+            return delegate.getCookies();
+        }
+
+        @Override
+        public Map<String, String> getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public Method getMethod() {
+            return delegate.getMethod();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public Map<String, String> getParms() {
+            return delegate.getParms();
+        }
+
+        @Override
+        public Map<String, List<String>> getParameters() {
+            return delegate.getParameters();
+        }
+
+        @Override
+        public String getQueryParameterString() {
+            return delegate.getQueryParameterString();
+        }
+
+        @Override
+        public String getUri() {
+            return delegate.getUri();
+        }
+
+        @Override
+        public void parseBody(Map<String, String> files) throws IOException, ResponseException {
+            delegate.parseBody(files);
+        }
+
+        @Override
+        public String getRemoteIpAddress() {
+            return delegate.getRemoteIpAddress();
+        }
+
+        @Override
+        public String getRemoteHostName() {
+            return delegate.getRemoteHostName();
+        }
+    }
 }
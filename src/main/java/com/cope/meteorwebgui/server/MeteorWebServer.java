@@ -1,11 +1,17 @@
 package com.cope.meteorwebgui.server;
 
+import com.cope.meteorwebgui.hud.HudPreviewService;
 import com.cope.meteorwebgui.mapping.HudMapper;
 import com.cope.meteorwebgui.mapping.ModuleMapper;
+import com.cope.meteorwebgui.mapping.SettingsReflector;
+import com.cope.meteorwebgui.mapping.TargetIndex;
+import com.cope.meteorwebgui.protocol.JsonFragment;
+import com.cope.meteorwebgui.protocol.JsonStreams;
 import com.cope.meteorwebgui.protocol.MessageType;
 import com.cope.meteorwebgui.protocol.WSMessage;
-import com.google.gson.Gson;
+import com.cope.meteorwebgui.systems.WebGUIConfig;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import fi.iki.elonen.NanoHTTPD;
 import meteordevelopment.meteorclient.settings.Setting;
 import meteordevelopment.meteorclient.systems.hud.HudElement;
@@ -14,6 +20,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main server class that manages both HTTP (static file serving) and WebSocket connections.
@@ -21,13 +32,28 @@ import java.io.IOException;
  */
 public class MeteorWebServer {
     private static final Logger LOG = LoggerFactory.getLogger("WebGUI Server");
-    private static final Gson GSON = new Gson();
 
     private final String host;
     private final int port;
     private MeteorHTTPServer httpServer;
     private MeteorWebSocketHandler webSocketHandler;
-    private boolean running = false;
+    private final CommandQueue commandQueue = new CommandQueue();
+    private final InitialStateCache initialState = new InitialStateCache();
+    private final TargetIndex targetIndex = new TargetIndex();
+    private volatile HudPreviewService hudPreviewService;
+
+    // Change callbacks only record a copy of the new value or state into the journal; its publisher thread
+    // serializes and broadcasts
+    private static final int JOURNAL_CAPACITY = 4096;
+    private ChangeJournal journal;
+
+    // Setting change batch opened by the game thread while it applies a setting.update.batch
+    private volatile Thread batchThread;
+    private int batchDepth;
+    // Collected on the publisher thread until the batch's end marker comes through the journal
+    private final Map<String, JsonFragment> batchedSettings = new LinkedHashMap<>();
+    private final Map<String, JsonFragment> batchedHudSettings = new LinkedHashMap<>();
+    private volatile boolean running = false;
 
     public MeteorWebServer(String host, int port) {
         this.host = host;
@@ -44,13 +70,55 @@ public class MeteorWebServer {
         }
 
         // Create WebSocket handler
-        webSocketHandler = new MeteorWebSocketHandler();
+        WebGUIConfig config = WebGUIConfig.get();
+        webSocketHandler = new MeteorWebSocketHandler(this, config.outboundQueueSize.get(), config.overflowPolicy.get(), config.changeLogSize.get());
+
+        PerMessageDeflate.Options compression = new PerMessageDeflate.Options(
+            config.compression.get(), config.compressionThreshold.get(), config.compressionContext.get());
 
         // Create and start HTTP server (which also handles WebSocket upgrades)
-        httpServer = new MeteorHTTPServer(host, port, webSocketHandler);
+        httpServer = new MeteorHTTPServer(host, port, webSocketHandler, compression);
         // Use 0 timeout for WebSocket connections (persistent connections don't need read timeout)
         httpServer.start(0, false);
 
+        SettingCoalescer coalescer = new SettingCoalescer(TimeUnit.MILLISECONDS.toNanos(config.coalesceWindow.get()),
+            (kind, target, setting, value) -> publishSetting(kind, target, setting, value, false));
+        journal = new ChangeJournal(JOURNAL_CAPACITY, new ChangeJournal.Sink() {
+            @Override
+            public void setting(byte kind, Object target, Setting<?> setting, Object value, boolean batched) {
+                if (batched) {
+                    coalescer.discard(setting);
+                    publishSetting(kind, target, setting, value, true);
+                } else {
+                    coalescer.offer(kind, target, setting, value, System.nanoTime());
+                }
+            }
+
+            @Override
+            public void state(byte kind, Object target, Object state) {
+                if (kind == ChangeJournal.MODULE_STATE) {
+                    publishModuleState((Module) target, (Boolean) state);
+                } else {
+                    publishHudState((HudMapper.HudState) state);
+                }
+            }
+
+            @Override
+            public void batchEnd() {
+                publishSettingBatch();
+            }
+
+            @Override
+            public void flush() {
+                coalescer.flushAll();
+            }
+
+            @Override
+            public long flushDue(long now) {
+                return coalescer.flushDue(now);
+            }
+        });
+
         running = true;
         LOG.info("WebGUI server started on {}:{}", host, port);
         LOG.info("Open http://{}:{} in your browser", host, port);
@@ -66,6 +134,13 @@ public class MeteorWebServer {
 
         try {
             running = false;
+            commandQueue.shutdown();
+            if (journal != null) {
+                journal.shutdown();
+            }
+            if (webSocketHandler != null) {
+                webSocketHandler.shutdown();
+            }
             if (httpServer != null) {
                 httpServer.stop();
             }
@@ -76,60 +151,163 @@ public class MeteorWebServer {
     }
 
     /**
-     * Broadcast module state change to all connected clients.
+     * Broadcast module state change to all connected clients. Only records the new state; the message is
+     * built and sent from the publisher thread.
      */
     public void broadcastModuleStateChange(Module module) {
+        initialState.invalidateState(module);
         if (!running) return;
+        journal.append(ChangeJournal.MODULE_STATE, module, null, module.isActive(), false);
+    }
 
-        try {
-            JsonObject data = ModuleMapper.createModuleStateMessage(module);
-            WSMessage message = new WSMessage(MessageType.MODULE_STATE_CHANGED, data);
-            webSocketHandler.broadcast(GSON.toJson(message));
+    private void publishModuleState(Module module, boolean active) {
+        JsonObject data = ModuleMapper.createModuleStateMessage(module, active);
+        WSMessage message = new WSMessage(MessageType.MODULE_STATE_CHANGED, data);
+        webSocketHandler.broadcastChange("module:" + module.name, message);
 
-            LOG.debug("Broadcast module state: {} -> {}", module.name, module.isActive());
-        } catch (Exception e) {
-            LOG.error("Failed to broadcast module state: {}", e.getMessage(), e);
-        }
+        LOG.debug("Broadcast module state: {} -> {}", module.name, active);
     }
 
     /**
-     * Broadcast setting value change to all connected clients.
+     * Broadcast setting value change to all connected clients. Only records a copy of the new value; it is
+     * serialized and sent from the publisher thread.
      */
     public void broadcastSettingChange(Module module, Setting<?> setting) {
+        initialState.invalidateSettings(module);
         if (!running) return;
+        journal.append(ChangeJournal.MODULE_SETTING, module, setting, SettingsReflector.copyValue(setting),
+            batchThread == Thread.currentThread());
+    }
 
-        try {
-            JsonObject data = ModuleMapper.createSettingChangeMessage(module, setting);
-            WSMessage message = new WSMessage(MessageType.SETTING_VALUE_CHANGED, data);
-            webSocketHandler.broadcast(GSON.toJson(message));
+    private void publishSetting(byte kind, Object target, Setting<?> setting, Object value, boolean batched) {
+        if (kind == ChangeJournal.MODULE_SETTING) {
+            publishSettingChange((Module) target, setting, value, batched);
+        } else {
+            publishHudSettingChange((HudElement) target, setting, value, batched);
+        }
+    }
 
-            LOG.debug("Broadcast setting change: {}.{}", module.name, setting.name);
-        } catch (Exception e) {
-            LOG.error("Failed to broadcast setting change: {}", e.getMessage(), e);
+    private void publishSettingChange(Module module, Setting<?> setting, Object value, boolean batched) {
+        // Serialized once here; the message only splices the fragment into each encoding
+        JsonFragment data = JsonFragment.of(out -> ModuleMapper.writeSettingChange(out, module, setting, value));
+        String key = module.name + "/" + setting.name;
+        if (batched) {
+            collectBatched(batchedSettings, key, data);
+            return;
         }
+
+        webSocketHandler.broadcastChange("setting:" + key, MessageType.SETTING_VALUE_CHANGED, data::writeTo);
+
+        LOG.debug("Broadcast setting change: {}.{}", module.name, setting.name);
     }
 
     public void broadcastHudStateChange(HudElement element) {
+        initialState.invalidateState(element);
         if (!running) return;
-        try {
-            JsonObject data = HudMapper.createHudStateMessage(element);
-            WSMessage message = new WSMessage(MessageType.HUD_STATE_CHANGED, data);
-            webSocketHandler.broadcast(GSON.toJson(message));
-            LOG.debug("Broadcast HUD state: {} -> {}", data.get("elementName").getAsString(), element.isActive());
-        } catch (Exception e) {
-            LOG.error("Failed to broadcast HUD state change: {}", e.getMessage(), e);
-        }
+        journal.append(ChangeJournal.HUD_STATE, element, null, HudMapper.HudState.of(element), false);
+    }
+
+    private void publishHudState(HudMapper.HudState state) {
+        JsonObject data = HudMapper.createHudStateMessage(state);
+        WSMessage message = new WSMessage(MessageType.HUD_STATE_CHANGED, data);
+        webSocketHandler.broadcastChange("hud:" + state.elementName(), message);
+        LOG.debug("Broadcast HUD state: {} -> {}", state.elementName(), state.active());
     }
 
     public void broadcastHudSettingChange(HudElement element, Setting<?> setting) {
+        initialState.invalidateSettings(element);
         if (!running) return;
+        journal.append(ChangeJournal.HUD_SETTING, element, setting, SettingsReflector.copyValue(setting),
+            batchThread == Thread.currentThread());
+    }
+
+    private void publishHudSettingChange(HudElement element, Setting<?> setting, Object value, boolean batched) {
+        String elementName = HudMapper.getElementIdentifier(element);
+        JsonFragment data = JsonFragment.of(out -> HudMapper.writeHudSettingChange(out, elementName, setting, value));
+        String key = elementName + "/" + setting.name;
+        if (batched) {
+            collectBatched(batchedHudSettings, key, data);
+            return;
+        }
+
+        webSocketHandler.broadcastChange("hud-setting:" + key, MessageType.HUD_SETTING_VALUE_CHANGED, data::writeTo);
+        LOG.debug("Broadcast HUD setting change: {}.{}", elementName, setting.name);
+    }
+
+    /**
+     * Sends value changes held back by coalescing right away, e.g. once an interactive edit has finished.
+     * Changes recorded before this call are included.
+     */
+    public void flushSettingChanges() {
+        if (running) {
+            journal.append(ChangeJournal.FLUSH, null, null, null, false);
+        }
+    }
+
+    /**
+     * Starts collecting setting change broadcasts made on the calling thread instead of sending each one.
+     * Batches nest; the combined frame goes out when the outermost {@link #endSettingBatch()} runs.
+     */
+    public void beginSettingBatch() {
+        Thread current = Thread.currentThread();
+        if (batchThread != null && batchThread != current) {
+            throw new IllegalStateException("Setting batch already open on " + batchThread.getName());
+        }
+        batchThread = current;
+        batchDepth++;
+    }
+
+    /**
+     * Closes the current batch. Once the publisher reaches it, every change collected in it goes out as one
+     * {@link MessageType#SETTING_VALUES_CHANGED} frame; repeated changes to the same setting collapse into the last value.
+     */
+    public void endSettingBatch() {
+        if (batchThread != Thread.currentThread() || --batchDepth > 0) return;
+        batchThread = null;
+
+        if (running) {
+            journal.append(ChangeJournal.BATCH_END, null, null, null, false);
+        }
+    }
+
+    private void publishSettingBatch() {
+        if (batchedSettings.isEmpty() && batchedHudSettings.isEmpty()) return;
+
+        List<JsonFragment> settings = new ArrayList<>(batchedSettings.values());
+        List<JsonFragment> hudSettings = new ArrayList<>(batchedHudSettings.values());
+        batchedSettings.clear();
+        batchedHudSettings.clear();
+
+        webSocketHandler.broadcastChange(null, MessageType.SETTING_VALUES_CHANGED, out -> {
+            out.beginObject();
+            out.name("settings");
+            writeFragments(out, settings);
+            out.name("hudSettings");
+            writeFragments(out, hudSettings);
+            out.endObject();
+        });
+        LOG.debug("Broadcast batched setting changes: {} module, {} HUD", settings.size(), hudSettings.size());
+    }
+
+    private static void writeFragments(JsonWriter out, List<JsonFragment> fragments) throws IOException {
+        out.beginArray();
+        for (JsonFragment fragment : fragments) {
+            fragment.writeTo(out);
+        }
+        out.endArray();
+    }
+
+    private static void collectBatched(Map<String, JsonFragment> batch, String key, JsonFragment data) {
+        batch.remove(key);
+        batch.put(key, data);
+    }
+
+    public void broadcast(WSMessage message) {
+        if (!running || webSocketHandler == null) return;
         try {
-            JsonObject data = HudMapper.createHudSettingChangeMessage(element, setting);
-            WSMessage message = new WSMessage(MessageType.HUD_SETTING_VALUE_CHANGED, data);
-            webSocketHandler.broadcast(GSON.toJson(message));
-            LOG.debug("Broadcast HUD setting change: {}.{}", data.get("elementName").getAsString(), setting.name);
+            webSocketHandler.broadcast(null, message);
         } catch (Exception e) {
-            LOG.error("Failed to broadcast HUD setting change: {}", e.getMessage(), e);
+            LOG.error("Failed to broadcast message: {}", e.getMessage(), e);
         }
     }
 
@@ -142,6 +320,66 @@ public class MeteorWebServer {
         }
     }
 
+    /**
+     * Sends a HUD preview update to the clients subscribed to previews only. {@code data} is encoded once per
+     * wire protocol in use, possibly on a writer thread, so it must only read immutable snapshots.
+     */
+    public void broadcastHudPreview(MessageType type, JsonStreams.Body data) {
+        if (!running || webSocketHandler == null) return;
+        try {
+            webSocketHandler.broadcastPreview(type, data);
+        } catch (Exception e) {
+            LOG.error("Failed to broadcast HUD preview: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether any client has the HUD view open; previews are not captured otherwise.
+     */
+    public boolean hasHudPreviewSubscribers() {
+        return running && webSocketHandler != null && webSocketHandler.hasPreviewSubscribers();
+    }
+
+    /**
+     * Current INITIAL_STATE message, shared by every client until something changes. Must run on the game thread.
+     */
+    OutboundMessage snapshotInitialState() {
+        return initialState.get(webSocketHandler.getRevision(), webSocketHandler.getSession());
+    }
+
+    /**
+     * Compact counterpart of {@link #snapshotInitialState} for clients that cache the setting schema.
+     */
+    InitialStateCache.Compact snapshotCompactState() {
+        return initialState.getCompact(webSocketHandler.getRevision(), webSocketHandler.getSession());
+    }
+
+    /**
+     * Queue of game-state mutations requested by clients. Must be subscribed to the event bus
+     * so it is drained on the game thread every tick.
+     */
+    public CommandQueue getCommandQueue() {
+        return commandQueue;
+    }
+
+    /**
+     * Name lookup for the modules, HUD elements and settings clients address. Built by the event monitor; game thread only.
+     */
+    public TargetIndex getTargetIndex() {
+        return targetIndex;
+    }
+
+    /**
+     * The preview service whose latest snapshots a client is sent when it subscribes to previews.
+     */
+    public void setHudPreviewService(HudPreviewService hudPreviewService) {
+        this.hudPreviewService = hudPreviewService;
+    }
+
+    public HudPreviewService getHudPreviewService() {
+        return hudPreviewService;
+    }
+
     public boolean isRunning() {
         return running;
     }
@@ -1,24 +1,31 @@
 package com.cope.meteorwebgui.server;
 
-import com.cope.meteorwebgui.mapping.HudMapper;
+import com.cope.meteorwebgui.hud.HudPreviewService;
+import com.cope.meteorwebgui.hud.HudPreviewSnapshot;
 import com.cope.meteorwebgui.mapping.HudMapper;
 import com.cope.meteorwebgui.mapping.ModuleMapper;
 import com.cope.meteorwebgui.mapping.RegistryProvider;
 import com.cope.meteorwebgui.mapping.SettingsReflector;
+import com.cope.meteorwebgui.protocol.BinaryCodec;
+import com.cope.meteorwebgui.protocol.ClientRequest;
 import com.cope.meteorwebgui.protocol.MessageType;
+import com.cope.meteorwebgui.protocol.RequestDecoder;
 import com.cope.meteorwebgui.protocol.WSMessage;
-import com.google.gson.Gson;
+import com.cope.meteorwebgui.protocol.WireProtocol;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import fi.iki.elonen.NanoWSD;
 import meteordevelopment.meteorclient.settings.Setting;
-import meteordevelopment.meteorclient.settings.SettingGroup;
 import meteordevelopment.meteorclient.systems.hud.HudElement;
 import meteordevelopment.meteorclient.systems.modules.Module;
-import meteordevelopment.meteorclient.systems.modules.Modules;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * WebSocket implementation for handling real-time communication with WebUI clients.
@@ -26,60 +33,138 @@ import java.io.IOException;
  */
 public class MeteorWebSocket extends NanoWSD.WebSocket {
     private static final Logger LOG = LoggerFactory.getLogger("WebGUI WebSocket");
-    private static final Gson GSON = new Gson();
 
-    public MeteorWebSocket(NanoWSD.IHTTPSession handshakeRequest) {
+    private final ClientOutbox outbox;
+    private final MeteorWebSocketHandler handler;
+    private final MeteorWebServer server;
+    private final CommandQueue commands;
+    private final WireProtocol protocol;
+    private final PerMessageDeflate deflate;
+    private volatile boolean previewSubscribed;
+
+    public MeteorWebSocket(NanoWSD.IHTTPSession handshakeRequest, MeteorWebSocketHandler handler, WireProtocol protocol, PerMessageDeflate deflate) {
         super(handshakeRequest);
+        this.outbox = handler.createOutbox(this);
+        this.handler = handler;
+        this.server = handler.getServer();
+        this.commands = server.getCommandQueue();
+        this.protocol = protocol != null ? protocol : WireProtocol.JSON;
+        this.deflate = deflate;
     }
 
     @Override
     protected void onOpen() {
-        LOG.info("New WebSocket connection from {}", getHandshakeRequest().getRemoteIpAddress());
+        LOG.info("New WebSocket connection from {} ({})", getHandshakeRequest().getRemoteIpAddress(), protocol.getSubprotocol());
+
+        // A reconnecting client passes the session and last revision it saw: ws://host/ws?session=...&since=...
+        String session = queryParameter("session");
+        long since = parseRevision(queryParameter("since"));
+        if (handler.register(this, session, since)) {
+            JsonObject resumed = new JsonObject();
+            resumed.addProperty("session", session);
+            resumed.addProperty("rev", handler.getRevision());
+            sendMessage(new WSMessage(MessageType.SESSION_RESUMED, resumed));
+
+            LOG.info("Resumed session for client after revision {}", since);
+            return;
+        }
 
-        // Send initial state to client
-        try {
-            JsonObject initialData = new JsonObject();
-            initialData.add("modules", ModuleMapper.mapAllModulesByCategory());
-            initialData.add("hud", HudMapper.mapHudState());
+        // Clients that cache the setting schema pass its hash (possibly empty) and get values only
+        String schemaHash = queryParameter("schema");
+        if (schemaHash != null) {
+            commands.submit(server::snapshotCompactState).whenComplete((compact, error) -> {
+                if (error != null) {
+                    LOG.error("Failed to send initial state: {}", error.getMessage(), error);
+                    return;
+                }
+
+                if (!compact.schema().hash().equals(schemaHash)) {
+                    outbox.offer(null, compact.schema().message());
+                }
+                outbox.offer(null, compact.values());
+
+                LOG.info("Sent compact initial state to client (schema {})",
+                    compact.schema().hash().equals(schemaHash) ? "cached" : "sent");
+            });
+            return;
+        }
+
+        // Send initial state to client; the shared snapshot is built or reused on the game thread
+        commands.submit(server::snapshotInitialState).whenComplete((snapshot, error) -> {
+            if (error != null) {
+                LOG.error("Failed to send initial state: {}", error.getMessage(), error);
+                return;
+            }
 
-            // Registry data is now loaded on-demand via REGISTRY_REQUEST
-            WSMessage message = new WSMessage(MessageType.INITIAL_STATE, initialData);
-            send(GSON.toJson(message));
+            outbox.offer(null, snapshot);
 
             LOG.info("Sent initial state to client (registries will be loaded on-demand)");
-        } catch (Exception e) {
-            LOG.error("Failed to send initial state: {}", e.getMessage(), e);
+        });
+    }
+
+    /**
+     * Previews change several times a second, so they are sent on subscription instead of defeating the initial state's cache.
+     */
+    private void sendPreviews() {
+        HudPreviewService service = server.getHudPreviewService();
+        if (service == null) return;
+
+        Collection<HudPreviewSnapshot> previews = service.currentSnapshots();
+        if (!previews.isEmpty()) {
+            outbox.offer(null, OutboundMessage.of(MessageType.HUD_PREVIEW_UPDATE, null, HudPreviewService.updateData(previews)));
+        }
+    }
+
+    private String queryParameter(String name) {
+        List<String> values = getHandshakeRequest().getParameters().get(name);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+
+    private static long parseRevision(String value) {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
     @Override
     protected void onClose(NanoWSD.WebSocketFrame.CloseCode code, String reason, boolean initiatedByRemote) {
         LOG.info("WebSocket connection closed: {} (code: {}, remote: {})", reason, code, initiatedByRemote);
+        handler.unregister(this);
+        outbox.close();
+        if (deflate != null) {
+            deflate.release();
+        }
     }
 
     @Override
     protected void onMessage(NanoWSD.WebSocketFrame frame) {
         try {
-            String message = frame.getTextPayload();
-            WSMessage wsMessage = GSON.fromJson(message, WSMessage.class);
-            MessageType type = wsMessage.getMessageType();
+            RequestDecoder.Inbound inbound = frame.getOpCode() == NanoWSD.WebSocketFrame.OpCode.Binary
+                ? RequestDecoder.decode(BinaryCodec.decode(frame.getBinaryPayload()))
+                : RequestDecoder.decode(frame.getTextPayload());
 
-            if (type == null) {
-                sendError("Unknown message type: " + wsMessage.getType());
+            if (inbound.type() == null) {
+                sendError("Unknown message type: " + inbound.typeName());
                 return;
             }
 
-            LOG.debug("Received message type: {}", type);
-
-            switch (type) {
-                case MODULE_TOGGLE -> handleModuleToggle(wsMessage);
-                case MODULE_LIST -> handleModuleList(wsMessage);
-                case SETTING_UPDATE -> handleSettingUpdate(wsMessage);
-                case SETTING_GET -> handleSettingGet(wsMessage);
-                case REGISTRY_REQUEST -> handleRegistryRequest(wsMessage);
-                case HUD_TOGGLE -> handleHudToggle(wsMessage);
-                case PING -> handlePing(wsMessage);
-                default -> sendError("Unsupported message type: " + type);
+            LOG.debug("Received message type: {}", inbound.type());
+
+            String id = inbound.id();
+            switch (inbound.request()) {
+                case ClientRequest.ModuleToggle request -> handleModuleToggle(id, request);
+                case ClientRequest.ModuleList request -> handleModuleList(id);
+                case ClientRequest.SettingUpdate request -> handleSettingUpdate(id, request);
+                case ClientRequest.SettingUpdateBatch request -> handleSettingUpdateBatch(id, request);
+                case ClientRequest.SettingGet request -> handleSettingGet(id, request);
+                case ClientRequest.RegistryRequest request -> handleRegistryRequest(id, request);
+                case ClientRequest.HudToggle request -> handleHudToggle(id, request);
+                case ClientRequest.HudPreviewSubscribe request -> handleHudPreviewSubscribe(request);
+                case ClientRequest.Ping request -> handlePing(id);
+                case null -> sendError("Unsupported message type: " + inbound.type());
             }
 
         } catch (Exception e) {
@@ -98,164 +183,187 @@ public class MeteorWebSocket extends NanoWSD.WebSocket {
         LOG.error("WebSocket exception: {}", exception.getMessage(), exception);
     }
 
-    private void handleModuleToggle(WSMessage message) {
-        try {
-            JsonObject data = message.getData().getAsJsonObject();
-            String moduleName = data.get("moduleName").getAsString();
+    private void handleModuleToggle(String requestId, ClientRequest.ModuleToggle request) {
+        String moduleName = request.moduleName();
 
-            Module module = Modules.get().get(moduleName);
+        respond(requestId, "Failed to toggle module", commands.submit(() -> {
+            Module module = server.getTargetIndex().findModule(moduleName);
             if (module == null) {
-                sendError("Module not found: " + moduleName, message.getId());
-                return;
+                throw new CommandFailure("Module not found: " + moduleName);
             }
 
             module.toggle();
 
-            // Send success response
             JsonObject response = new JsonObject();
             response.addProperty("success", true);
             response.addProperty("moduleName", moduleName);
             response.addProperty("active", module.isActive());
 
-            send(GSON.toJson(new WSMessage("response", response, message.getId())));
-
             LOG.info("Toggled module: {} -> {}", moduleName, module.isActive());
-
-        } catch (Exception e) {
-            LOG.error("Failed to toggle module: {}", e.getMessage(), e);
-            sendError("Failed to toggle module: " + e.getMessage(), message.getId());
-        }
+            return response;
+        }));
     }
 
-    private void handleModuleList(WSMessage message) {
+    private void handleModuleList(String requestId) {
         try {
             JsonObject data = ModuleMapper.mapModulesLightweight();
 
             JsonObject response = new JsonObject();
             response.add("modules", data);
 
-            send(GSON.toJson(new WSMessage("response", response, message.getId())));
+            sendMessage(new WSMessage(MessageType.RESPONSE, response, requestId));
 
         } catch (Exception e) {
             LOG.error("Failed to get module list: {}", e.getMessage(), e);
-            sendError("Failed to get module list: " + e.getMessage(), message.getId());
+            sendError("Failed to get module list: " + e.getMessage(), requestId);
         }
     }
 
-    private void handleSettingUpdate(WSMessage message) {
-        try {
-            JsonObject data = message.getData().getAsJsonObject();
-            String moduleName = data.get("moduleName").getAsString();
-            String settingName = data.get("settingName").getAsString();
-            JsonObject value = data.get("value").getAsJsonObject();
+    private void handleSettingUpdate(String requestId, ClientRequest.SettingUpdate request) {
+        String moduleName = request.moduleName();
+        String settingName = request.settingName();
+        JsonObject value = request.value();
 
-            Module module = Modules.get().get(moduleName);
-            if (module != null) {
-                Setting<?> setting = findSetting(module, settingName);
-                if (setting == null) {
-                    sendError("Setting not found: " + settingName, message.getId());
-                    return;
-                }
+        respond(requestId, "Failed to update setting", commands.submit(() -> {
+            JsonObject response = applySettingUpdate(moduleName, settingName, value);
+            if (response.get("success").getAsBoolean()) {
+                LOG.info("Updated setting: {}.{} = {}", moduleName, settingName, value);
+            }
+            if (request.flush()) {
+                server.flushSettingChanges();
+            }
+            return response;
+        }));
+    }
 
-                boolean success = SettingsReflector.setSettingValue(setting, value);
+    private void handleSettingUpdateBatch(String requestId, ClientRequest.SettingUpdateBatch request) {
+        JsonArray updates = request.updates();
+
+        respond(requestId, "Failed to apply setting batch", commands.submit(() -> {
+            JsonArray results = new JsonArray(updates.size());
+            int applied = 0;
+
+            // Value-change callbacks fired while applying are merged into one broadcast
+            server.beginSettingBatch();
+            try {
+                for (JsonElement element : updates) {
+                    JsonObject result = applyBatchItem(element);
+                    if (result.get("success").getAsBoolean()) {
+                        applied++;
+                    }
+                    results.add(result);
+                }
+            } finally {
+                server.endSettingBatch();
+            }
 
-                JsonObject response = new JsonObject();
-                response.addProperty("success", success);
-                response.addProperty("moduleName", moduleName);
-                response.addProperty("settingName", settingName);
+            JsonObject response = new JsonObject();
+            response.addProperty("success", applied == updates.size());
+            response.addProperty("applied", applied);
+            response.add("results", results);
 
-                send(GSON.toJson(new WSMessage("response", response, message.getId())));
+            LOG.info("Applied setting batch: {}/{} updated", applied, updates.size());
+            return response;
+        }));
+    }
 
-                if (success) {
-                    LOG.info("Updated setting: {}.{} = {}", moduleName, settingName, value);
-                }
-                return;
-            }
+    private JsonObject applyBatchItem(JsonElement element) {
+        JsonObject update = element.isJsonObject() ? element.getAsJsonObject() : new JsonObject();
+        JsonElement moduleName = update.get("moduleName");
+        JsonElement settingName = update.get("settingName");
 
-            HudElement hudElement = HudMapper.findElement(moduleName);
-            if (hudElement == null) {
-                sendError("Config target not found: " + moduleName, message.getId());
-                return;
-            }
+        try {
+            return applySettingUpdate(moduleName.getAsString(), settingName.getAsString(), update.get("value").getAsJsonObject());
+        } catch (Exception e) {
+            JsonObject result = new JsonObject();
+            result.addProperty("success", false);
+            if (moduleName != null) result.add("moduleName", moduleName);
+            if (settingName != null) result.add("settingName", settingName);
+            result.addProperty("error", e instanceof CommandFailure ? e.getMessage() : "Failed to update setting: " + e.getMessage());
+            return result;
+        }
+    }
 
-            Setting<?> setting = findHudSetting(hudElement, settingName);
+    /**
+     * Writes one setting on a module or, failing that, a HUD element. Must run on the game thread.
+     */
+    private JsonObject applySettingUpdate(String moduleName, String settingName, JsonObject value) {
+        Module module = server.getTargetIndex().findModule(moduleName);
+        if (module != null) {
+            Setting<?> setting = server.getTargetIndex().findSetting(module, settingName);
             if (setting == null) {
-                sendError("HUD setting not found: " + settingName, message.getId());
-                return;
+                throw new CommandFailure("Setting not found: " + settingName);
             }
 
             boolean success = SettingsReflector.setSettingValue(setting, value);
 
             JsonObject response = new JsonObject();
             response.addProperty("success", success);
-            response.addProperty("elementName", HudMapper.getElementIdentifier(hudElement));
+            response.addProperty("moduleName", moduleName);
             response.addProperty("settingName", settingName);
+            return response;
+        }
 
-            send(GSON.toJson(new WSMessage("response", response, message.getId())));
-
-            if (success) {
-                LOG.info("Updated HUD setting: {}.{} = {}", hudElement.info != null ? hudElement.info.name : hudElement.getClass().getSimpleName(), settingName, value);
-            }
+        HudElement hudElement = server.getTargetIndex().findHudElement(moduleName);
+        if (hudElement == null) {
+            throw new CommandFailure("Config target not found: " + moduleName);
+        }
 
-        } catch (Exception e) {
-            LOG.error("Failed to update setting: {}", e.getMessage(), e);
-            sendError("Failed to update setting: " + e.getMessage(), message.getId());
+        Setting<?> setting = server.getTargetIndex().findSetting(hudElement, settingName);
+        if (setting == null) {
+            throw new CommandFailure("HUD setting not found: " + settingName);
         }
+
+        boolean success = SettingsReflector.setSettingValue(setting, value);
+
+        JsonObject response = new JsonObject();
+        response.addProperty("success", success);
+        response.addProperty("elementName", HudMapper.getElementIdentifier(hudElement));
+        response.addProperty("settingName", settingName);
+        return response;
     }
 
-    private void handleSettingGet(WSMessage message) {
-        try {
-            JsonObject data = message.getData().getAsJsonObject();
-            String moduleName = data.get("moduleName").getAsString();
-            String settingName = data.get("settingName").getAsString();
+    private void handleSettingGet(String requestId, ClientRequest.SettingGet request) {
+        String moduleName = request.moduleName();
+        String settingName = request.settingName();
 
-            Module module = Modules.get().get(moduleName);
+        // Read on the game thread too, so a get queued after an update observes it
+        respond(requestId, "Failed to get setting", commands.submit(() -> {
+            Module module = server.getTargetIndex().findModule(moduleName);
             if (module != null) {
-                Setting<?> setting = findSetting(module, settingName);
+                Setting<?> setting = server.getTargetIndex().findSetting(module, settingName);
                 if (setting == null) {
-                    sendError("Setting not found: " + settingName, message.getId());
-                    return;
+                    throw new CommandFailure("Setting not found: " + settingName);
                 }
 
                 JsonObject response = new JsonObject();
                 response.add("setting", SettingsReflector.getSettingMetadata(setting));
-
-                send(GSON.toJson(new WSMessage("response", response, message.getId())));
-                return;
+                return response;
             }
 
-            HudElement hudElement = HudMapper.findElement(moduleName);
+            HudElement hudElement = server.getTargetIndex().findHudElement(moduleName);
             if (hudElement == null) {
-                sendError("Config target not found: " + moduleName, message.getId());
-                return;
+                throw new CommandFailure("Config target not found: " + moduleName);
             }
 
-            Setting<?> setting = findHudSetting(hudElement, settingName);
+            Setting<?> setting = server.getTargetIndex().findSetting(hudElement, settingName);
             if (setting == null) {
-                sendError("HUD setting not found: " + settingName, message.getId());
-                return;
+                throw new CommandFailure("HUD setting not found: " + settingName);
             }
 
             JsonObject response = new JsonObject();
             response.add("setting", SettingsReflector.getSettingMetadata(setting));
-
-            send(GSON.toJson(new WSMessage("response", response, message.getId())));
-
-        } catch (Exception e) {
-            LOG.error("Failed to get setting: {}", e.getMessage(), e);
-            sendError("Failed to get setting: " + e.getMessage(), message.getId());
-        }
+            return response;
+        }));
     }
 
-    private void handleHudToggle(WSMessage message) {
-        try {
-            JsonObject data = message.getData().getAsJsonObject();
-            String elementName = data.get("elementName").getAsString();
+    private void handleHudToggle(String requestId, ClientRequest.HudToggle request) {
+        String elementName = request.elementName();
 
-            HudElement element = HudMapper.findElement(elementName);
+        respond(requestId, "Failed to toggle HUD element", commands.submit(() -> {
+            HudElement element = server.getTargetIndex().findHudElement(elementName);
             if (element == null) {
-                sendError("HUD element not found: " + elementName, message.getId());
-                return;
+                throw new CommandFailure("HUD element not found: " + elementName);
             }
 
             element.toggle();
@@ -265,27 +373,30 @@ public class MeteorWebSocket extends NanoWSD.WebSocket {
             response.addProperty("elementName", HudMapper.getElementIdentifier(element));
             response.addProperty("active", element.isActive());
 
-            send(GSON.toJson(new WSMessage("response", response, message.getId())));
-
             LOG.info("Toggled HUD element: {} -> {}", elementName, element.isActive());
-        } catch (Exception e) {
-            LOG.error("Failed to toggle HUD element: {}", e.getMessage(), e);
-            sendError("Failed to toggle HUD element: " + e.getMessage(), message.getId());
-        }
+            return response;
+        }));
     }
 
-    private void handlePing(WSMessage message) {
-        try {
-            send(GSON.toJson(new WSMessage(MessageType.PONG, new JsonObject(), message.getId())));
-        } catch (IOException e) {
-            LOG.error("Failed to send pong: {}", e.getMessage(), e);
+    private void handleHudPreviewSubscribe(ClientRequest.HudPreviewSubscribe request) {
+        boolean subscribed = request.subscribed();
+        if (subscribed == previewSubscribed) return;
+
+        previewSubscribed = subscribed;
+        if (subscribed) {
+            // Latest capture right away; the preview service keeps it fresh from the next sample on
+            sendPreviews();
         }
+        LOG.debug("HUD previews {}", subscribed ? "subscribed" : "unsubscribed");
     }
 
-    private void handleRegistryRequest(WSMessage message) {
+    private void handlePing(String requestId) {
+        sendMessage(new WSMessage(MessageType.PONG, new JsonObject(), requestId));
+    }
+
+    private void handleRegistryRequest(String requestId, ClientRequest.RegistryRequest request) {
         try {
-            JsonObject data = message.getData().getAsJsonObject();
-            String registryType = data.get("registry").getAsString();
+            String registryType = request.registry();
 
             LOG.debug("Registry request received for: {}", registryType);
 
@@ -316,40 +427,35 @@ public class MeteorWebSocket extends NanoWSD.WebSocket {
                     LOG.info("Sent modules registry to client");
                 }
                 default -> {
-                    sendError("Unknown registry type: " + registryType, message.getId());
+                    sendError("Unknown registry type: " + registryType, requestId);
                     return;
                 }
             }
 
             response.addProperty("registryType", registryType);
-            send(GSON.toJson(new WSMessage(MessageType.REGISTRY_DATA, response, message.getId())));
+            sendMessage(new WSMessage(MessageType.REGISTRY_DATA, response, requestId));
 
         } catch (Exception e) {
             LOG.error("Failed to send registry: {}", e.getMessage(), e);
-            sendError("Failed to load registry: " + e.getMessage(), message.getId());
+            sendError("Failed to load registry: " + e.getMessage(), requestId);
         }
     }
 
-    private Setting<?> findSetting(Module module, String settingName) {
-        for (SettingGroup group : module.settings) {
-            for (Setting<?> setting : group) {
-                if (setting.name.equals(settingName)) {
-                    return setting;
-                }
+    /**
+     * Sends the result of a queued command once the game thread has applied it.
+     * {@link CommandFailure} messages are passed through as is; anything else is reported with {@code failure} as prefix.
+     */
+    private void respond(String requestId, String failure, CompletableFuture<JsonObject> result) {
+        result.whenComplete((response, error) -> {
+            if (error == null) {
+                sendMessage(new WSMessage(MessageType.RESPONSE, response, requestId));
+            } else if (error instanceof CommandFailure) {
+                sendError(error.getMessage(), requestId);
+            } else {
+                LOG.error("{}: {}", failure, error.getMessage(), error);
+                sendError(failure + ": " + error.getMessage(), requestId);
             }
-        }
-        return null;
-    }
-
-    private Setting<?> findHudSetting(HudElement element, String settingName) {
-        for (SettingGroup group : element.settings) {
-            for (Setting<?> setting : group) {
-                if (setting.name.equals(settingName)) {
-                    return setting;
-                }
-            }
-        }
-        return null;
+        });
     }
 
     private void sendError(String error) {
@@ -357,12 +463,55 @@ public class MeteorWebSocket extends NanoWSD.WebSocket {
     }
 
     private void sendError(String error, String requestId) {
+        JsonObject errorData = new JsonObject();
+        errorData.addProperty("error", error);
+        sendMessage(new WSMessage(MessageType.ERROR, errorData, requestId));
+    }
+
+    private void sendMessage(WSMessage message) {
+        outbox.offer(null, OutboundMessage.of(message));
+    }
+
+    /**
+     * Queues a shared message on this client's outbox without blocking the caller.
+     *
+     * @return {@code false} if the client is gone and should be dropped from broadcasts
+     */
+    boolean enqueue(String key, OutboundMessage message) {
+        return outbox.offer(key, message);
+    }
+
+    boolean isPreviewSubscribed() {
+        return previewSubscribed;
+    }
+
+    /**
+     * Picks the shared frame for this client's wire protocol and applies permessage-deflate if negotiated.
+     */
+    OutboundFrame encode(OutboundMessage message) {
+        OutboundFrame frame = message.frame(protocol);
+        return deflate != null ? deflate.encode(frame) : frame;
+    }
+
+    /**
+     * Tears down the underlying TCP connection without waiting on a (possibly stalled) close handshake.
+     */
+    void abort() {
+        outbox.close();
         try {
-            JsonObject errorData = new JsonObject();
-            errorData.addProperty("error", error);
-            send(GSON.toJson(new WSMessage(MessageType.ERROR, errorData, requestId)));
+            // Runs off the reader thread: this only closes the socket, the reader releases its inflater itself
+            getHandshakeRequest().getInputStream().close();
         } catch (IOException e) {
-            LOG.error("Failed to send error message: {}", e.getMessage(), e);
+            LOG.debug("Failed to abort WebSocket connection: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Expected, user-facing failure of a queued command, such as an unknown module name.
+     */
+    private static final class CommandFailure extends RuntimeException {
+        private CommandFailure(String message) {
+            super(message, null, false, false);
         }
     }
 }
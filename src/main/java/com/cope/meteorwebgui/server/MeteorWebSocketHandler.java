@@ -1,66 +1,191 @@
 package com.cope.meteorwebgui.server;
 
+import com.cope.meteorwebgui.protocol.JsonFragment;
+import com.cope.meteorwebgui.protocol.JsonStreams;
+import com.cope.meteorwebgui.protocol.MessageType;
+import com.cope.meteorwebgui.protocol.WSMessage;
+import com.cope.meteorwebgui.protocol.WireProtocol;
 import fi.iki.elonen.NanoWSD;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages WebSocket connections and provides broadcasting capabilities.
+ * Broadcasting only enqueues onto each client's {@link ClientOutbox}; socket writes happen on writer threads.
  */
 public class MeteorWebSocketHandler {
-    private final List<MeteorWebSocket> connections = new ArrayList<>();
+    private final List<MeteorWebSocket> connections = new CopyOnWriteArrayList<>();
+    private final ExecutorService writerExecutor;
+    private final int outboxCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final MeteorWebServer server;
+    private final ChangeLog changeLog;
+
+    public MeteorWebSocketHandler(MeteorWebServer server, int outboxCapacity, OverflowPolicy overflowPolicy, int changeLogSize) {
+        this.server = server;
+        this.outboxCapacity = outboxCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.changeLog = new ChangeLog(changeLogSize);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "meteor-webgui-ws-writer-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.writerExecutor = Executors.newCachedThreadPool(factory);
+    }
 
     /**
      * Creates a new WebSocket connection.
      */
-    public NanoWSD.WebSocket createWebSocket(NanoWSD.IHTTPSession handshake) {
-        MeteorWebSocket socket = new MeteorWebSocket(handshake) {
-            @Override
-            protected void onOpen() {
-                super.onOpen();
-                synchronized (connections) {
-                    connections.add(this);
-                }
-            }
+    public NanoWSD.WebSocket createWebSocket(NanoWSD.IHTTPSession handshake, WireProtocol protocol, PerMessageDeflate deflate) {
+        return new MeteorWebSocket(handshake, this, protocol, deflate);
+    }
 
-            @Override
-            protected void onClose(NanoWSD.WebSocketFrame.CloseCode code, String reason, boolean initiatedByRemote) {
-                super.onClose(code, reason, initiatedByRemote);
-                synchronized (connections) {
-                    connections.remove(this);
-                }
+    /**
+     * Adds an opened client to the broadcast list. If it asked to resume {@code session} after revision
+     * {@code since} and those changes are still logged, they are queued ahead of any later broadcast.
+     *
+     * @return {@code true} if the client was caught up, {@code false} if it needs a full snapshot
+     */
+    boolean register(MeteorWebSocket socket, String session, long since) {
+        synchronized (changeLog) {
+            connections.add(socket);
+
+            List<OutboundMessage> missed = session != null ? changeLog.since(session, since) : null;
+            if (missed == null) return false;
+
+            for (OutboundMessage message : missed) {
+                socket.enqueue(null, message);
             }
-        };
-        return socket;
+            return true;
+        }
+    }
+
+    void unregister(MeteorWebSocket socket) {
+        connections.remove(socket);
+    }
+
+    String getSession() {
+        return changeLog.session();
     }
 
     /**
-     * Broadcasts a message to all connected clients.
+     * Latest change revision. A snapshot built after registering reflects at least this revision.
+     */
+    long getRevision() {
+        return changeLog.revision();
+    }
+
+    ClientOutbox createOutbox(MeteorWebSocket socket) {
+        return new ClientOutbox(socket, writerExecutor, outboxCapacity, overflowPolicy);
+    }
+
+    MeteorWebServer getServer() {
+        return server;
+    }
+
+    /**
+     * Broadcasts an already serialized JSON message to all connected clients.
      */
     public void broadcast(String message) {
-        synchronized (connections) {
-            List<MeteorWebSocket> deadConnections = new ArrayList<>();
-
-            for (MeteorWebSocket socket : connections) {
-                try {
-                    socket.send(message);
-                } catch (Exception e) {
-                    deadConnections.add(socket);
-                }
+        broadcast(null, OutboundMessage.ofJson(message));
+    }
+
+    /**
+     * Sends a HUD preview message to the clients that currently show the HUD.
+     */
+    public void broadcastPreview(MessageType type, JsonStreams.Body data) {
+        OutboundMessage outbound = null;
+        for (MeteorWebSocket socket : connections) {
+            if (!socket.isPreviewSubscribed()) continue;
+            if (outbound == null) outbound = OutboundMessage.of(type, null, data);
+            if (!socket.enqueue(null, outbound)) {
+                connections.remove(socket);
+            }
+        }
+    }
+
+    /**
+     * Whether any connected client currently shows the HUD.
+     */
+    public boolean hasPreviewSubscribers() {
+        for (MeteorWebSocket socket : connections) {
+            if (socket.isPreviewSubscribed()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Broadcasts a message to all connected clients. Pending messages sharing the same key may be
+     * coalesced so a lagging client only receives the latest value.
+     */
+    public void broadcast(String key, WSMessage message) {
+        broadcast(key, OutboundMessage.of(message));
+    }
+
+    /**
+     * Broadcasts a state change, stamping it with the next revision and keeping it in the change log
+     * so reconnecting clients can catch up on it.
+     */
+    public void broadcastChange(String key, WSMessage message) {
+        synchronized (changeLog) {
+            long revision = changeLog.nextRevision();
+            message.setRev(revision);
+
+            OutboundMessage outbound = OutboundMessage.of(message);
+            changeLog.append(revision, outbound);
+            broadcast(key, outbound);
+        }
+    }
+
+    /**
+     * Like {@link #broadcastChange(String, WSMessage)} for data streamed into each encoding. {@code data} may run
+     * on any client's writer thread, so it must only read immutable state such as {@link JsonFragment}s.
+     */
+    public void broadcastChange(String key, MessageType type, JsonStreams.Body data) {
+        synchronized (changeLog) {
+            long revision = changeLog.nextRevision();
+            OutboundMessage outbound = OutboundMessage.of(type, revision, data);
+            changeLog.append(revision, outbound);
+            broadcast(key, outbound);
+        }
+    }
+
+    /**
+     * Each wire encoding of the message is built once and the same bytes are shared by every client using it.
+     */
+    private void broadcast(String key, OutboundMessage message) {
+        if (connections.isEmpty()) return;
+
+        for (MeteorWebSocket socket : connections) {
+            if (!socket.enqueue(key, message)) {
+                connections.remove(socket);
             }
+        }
+    }
 
-            // Remove dead connections
-            connections.removeAll(deadConnections);
+    /**
+     * Drops all connections and stops the writer threads.
+     */
+    public void shutdown() {
+        for (MeteorWebSocket socket : connections) {
+            socket.abort();
         }
+        connections.clear();
+        writerExecutor.shutdownNow();
     }
 
     /**
      * Returns the number of active connections.
      */
     public int getConnectionCount() {
-        synchronized (connections) {
-            return connections.size();
-        }
+        return connections.size();
     }
 }
@@ -0,0 +1,145 @@
+package com.cope.meteorwebgui.server;
+
+import fi.iki.elonen.NanoWSD;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Immutable, fully framed server-to-client WebSocket message.
+ * The UTF-8 payload and frame header are laid out once in a single array, so the same instance
+ * can be handed to every client's {@link NanoWSD.WebSocket#sendFrame} without re-encoding or copying.
+ * A permessage-deflate variant is derived lazily and shared the same way.
+ */
+final class OutboundFrame extends NanoWSD.WebSocketFrame {
+    private static final byte[] EMPTY = new byte[0];
+    private static final int FIN = 0x80;
+    private static final int RSV1 = 0x40;
+    private static final ThreadLocal<Deflater> RESET_DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private final byte[] wire;
+    private final int headerLength;
+    private volatile OutboundFrame deflated;
+
+    private OutboundFrame(OpCode opCode, byte[] wire, int headerLength) {
+        // The payload lives inside wire; the superclass copy is never used for writing
+        super(opCode, true, EMPTY);
+        this.wire = wire;
+        this.headerLength = headerLength;
+    }
+
+    /**
+     * Frames a text message.
+     */
+    static OutboundFrame text(String payload) {
+        byte[] utf8 = payload.getBytes(StandardCharsets.UTF_8);
+        return frame(OpCode.Text, utf8, 0, utf8.length);
+    }
+
+    static OutboundFrame frame(OpCode opCode, byte[] payload, int offset, int length) {
+        return frame(opCode, FIN | opCode.getValue(), payload, offset, length);
+    }
+
+    private static OutboundFrame frame(OpCode opCode, int firstByte, byte[] payload, int offset, int length) {
+        int headerLength = headerLength(length);
+        byte[] wire = new byte[headerLength + length];
+        writeHeader(wire, firstByte, length);
+        System.arraycopy(payload, offset, wire, headerLength, length);
+        return new OutboundFrame(opCode, wire, headerLength);
+    }
+
+    /**
+     * Size of an unmasked server frame header for the given payload length.
+     */
+    static int headerLength(int payloadLength) {
+        if (payloadLength <= 125) return 2;
+        if (payloadLength <= 0xFFFF) return 4;
+        return 10;
+    }
+
+    /**
+     * Writes an unmasked frame header at the start of {@code target}.
+     */
+    static void writeHeader(byte[] target, int firstByte, int payloadLength) {
+        target[0] = (byte) firstByte;
+        if (payloadLength <= 125) {
+            target[1] = (byte) payloadLength;
+        } else if (payloadLength <= 0xFFFF) {
+            target[1] = 126;
+            target[2] = (byte) (payloadLength >>> 8);
+            target[3] = (byte) payloadLength;
+        } else {
+            target[1] = 127;
+            // Payload lengths fit in 31 bits, so the upper four bytes stay zero
+            target[6] = (byte) (payloadLength >>> 24);
+            target[7] = (byte) (payloadLength >>> 16);
+            target[8] = (byte) (payloadLength >>> 8);
+            target[9] = (byte) payloadLength;
+        }
+    }
+
+    /**
+     * Number of bytes this frame occupies on the wire.
+     */
+    int wireLength() {
+        return wire.length;
+    }
+
+    int payloadLength() {
+        return wire.length - headerLength;
+    }
+
+    /**
+     * Compressed variant for clients that negotiated {@code server_no_context_takeover}.
+     * Without a shared compression context the output is identical for every such client,
+     * so it is computed once and cached. Returns {@code this} when compression does not pay off.
+     */
+    OutboundFrame deflated() {
+        OutboundFrame result = deflated;
+        if (result == null) {
+            Deflater deflater = RESET_DEFLATER.get();
+            deflater.reset();
+            result = deflateWith(deflater);
+            if (result.wire.length >= wire.length) {
+                result = this;
+            }
+            deflated = result;
+        }
+        return result;
+    }
+
+    /**
+     * Compresses the payload with a caller-owned deflater, keeping whatever context it already holds.
+     * The result must be sent even if it is larger, since the peer's inflater tracks the same context.
+     */
+    OutboundFrame deflateWith(Deflater deflater) {
+        int length = payloadLength();
+        deflater.setInput(wire, headerLength, length);
+
+        byte[] out = new byte[Math.max(64, length / 2 + 16)];
+        int written = 0;
+        while (true) {
+            written += deflater.deflate(out, written, out.length - written, Deflater.SYNC_FLUSH);
+            if (written < out.length) break;
+            out = Arrays.copyOf(out, out.length * 2);
+        }
+
+        // RFC 7692: drop the 0x00 0x00 0xFF 0xFF tail produced by the sync flush
+        int compressedLength = Math.max(0, written - 4);
+        return frame(getOpCode(), FIN | RSV1 | getOpCode().getValue(), out, 0, compressedLength);
+    }
+
+    @Override
+    public byte[] getBinaryPayload() {
+        return Arrays.copyOfRange(wire, headerLength, wire.length);
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        out.write(wire);
+        out.flush();
+    }
+}
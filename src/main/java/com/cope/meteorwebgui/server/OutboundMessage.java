@@ -0,0 +1,95 @@
+package com.cope.meteorwebgui.server;
+
+import com.cope.meteorwebgui.protocol.BinaryCodec;
+import com.cope.meteorwebgui.protocol.JsonStreams;
+import com.cope.meteorwebgui.protocol.MessageType;
+import com.cope.meteorwebgui.protocol.WSMessage;
+import com.cope.meteorwebgui.protocol.WireProtocol;
+import com.google.gson.Gson;
+import fi.iki.elonen.NanoWSD.WebSocketFrame.OpCode;
+
+/**
+ * A message on its way to one or more clients. Each wire encoding is produced at most once,
+ * on first use by a client that negotiated it, and the resulting frame is shared by every such client.
+ */
+final class OutboundMessage {
+    private static final Gson GSON = new Gson();
+
+    private final WSMessage message;
+    private final String json;
+    private final MessageType type;
+    private final Long rev;
+    private final JsonStreams.Body data;
+
+    private volatile OutboundFrame textFrame;
+    private volatile OutboundFrame binaryFrame;
+
+    private OutboundMessage(WSMessage message, String json, MessageType type, Long rev, JsonStreams.Body data) {
+        this.message = message;
+        this.json = json;
+        this.type = type;
+        this.rev = rev;
+        this.data = data;
+    }
+
+    static OutboundMessage of(WSMessage message) {
+        return new OutboundMessage(message, null, null, null, null);
+    }
+
+    /**
+     * A message whose data is streamed straight into whichever encoding a client needs.
+     * {@code data} may run on any client's writer thread, possibly more than once, so it must only read
+     * immutable state such as snapshots or {@link com.cope.meteorwebgui.protocol.JsonFragment}s.
+     */
+    static OutboundMessage of(MessageType type, Long rev, JsonStreams.Body data) {
+        return new OutboundMessage(null, null, type, rev, data);
+    }
+
+    /**
+     * Wraps an already serialized JSON message. Binary clients get it transcoded on demand.
+     */
+    static OutboundMessage ofJson(String json) {
+        return new OutboundMessage(null, json, null, null, null);
+    }
+
+    /**
+     * Whether a full outbox may drop this message. Only HUD preview frames qualify, as the next capture replaces them.
+     */
+    boolean isDisposable() {
+        return type == MessageType.HUD_PREVIEW_UPDATE || type == MessageType.HUD_PREVIEW_DELTA;
+    }
+
+    OutboundFrame frame(WireProtocol protocol) {
+        return protocol == WireProtocol.BINARY ? binaryFrame() : textFrame();
+    }
+
+    private OutboundFrame textFrame() {
+        OutboundFrame frame = textFrame;
+        if (frame == null) {
+            String text;
+            if (data != null) {
+                text = JsonStreams.message(type, rev, data);
+            } else {
+                text = json != null ? json : GSON.toJson(message);
+            }
+            frame = OutboundFrame.text(text);
+            textFrame = frame;
+        }
+        return frame;
+    }
+
+    private OutboundFrame binaryFrame() {
+        OutboundFrame frame = binaryFrame;
+        if (frame == null) {
+            byte[] payload;
+            if (data != null) {
+                payload = BinaryCodec.message(type, rev, data);
+            } else {
+                payload = json != null ? BinaryCodec.encodeJson(json) : BinaryCodec.encode(message);
+            }
+            frame = OutboundFrame.frame(OpCode.Binary, payload, 0, payload.length);
+            binaryFrame = frame;
+        }
+        return frame;
+    }
+}
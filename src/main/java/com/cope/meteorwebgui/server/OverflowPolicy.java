@@ -0,0 +1,24 @@
+package com.cope.meteorwebgui.server;
+
+/**
+ * Decides what a client outbox does when a slow consumer lets its queue fill up.
+ */
+public enum OverflowPolicy {
+    /** Evict the oldest pending HUD preview frame to make room, disconnecting if there is none. */
+    DROP_OLDEST("Drop Oldest"),
+    /** Replace pending messages that share a key, then evict like {@link #DROP_OLDEST} when nothing can be merged. */
+    COALESCE("Coalesce"),
+    /** Drop the connection; the client resynchronises from the initial state when it reconnects. */
+    DISCONNECT("Disconnect");
+
+    private final String title;
+
+    OverflowPolicy(String title) {
+        this.title = title;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
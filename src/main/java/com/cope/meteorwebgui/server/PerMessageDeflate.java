@@ -0,0 +1,125 @@
+package com.cope.meteorwebgui.server;
+
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Negotiated RFC 7692 permessage-deflate state for a single WebSocket connection.
+ * Handles the handshake offer/response and server-to-client compression;
+ * inbound decompression is done by {@link InflatingFrameInputStream}.
+ */
+final class PerMessageDeflate {
+    static final String HEADER_EXTENSIONS = "sec-websocket-extensions";
+    private static final String EXTENSION_NAME = "permessage-deflate";
+
+    private final boolean resetPerMessage;
+    private final boolean clientNoContextTakeover;
+    private final int threshold;
+    private Deflater deflater;
+    private boolean released;
+
+    private PerMessageDeflate(boolean resetPerMessage, boolean clientNoContextTakeover, int threshold) {
+        this.resetPerMessage = resetPerMessage;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Server-wide compression settings, read from the WebGUI config at startup.
+     */
+    static final class Options {
+        final boolean enabled;
+        final int threshold;
+        final CompressionContext context;
+
+        Options(boolean enabled, int threshold, CompressionContext context) {
+            this.enabled = enabled;
+            this.threshold = threshold;
+            this.context = context;
+        }
+    }
+
+    /**
+     * Picks the first acceptable permessage-deflate offer from a {@code Sec-WebSocket-Extensions} header.
+     *
+     * @return the negotiated state, or {@code null} if compression is disabled or no offer can be honoured
+     */
+    static PerMessageDeflate negotiate(String offers, Options options) {
+        if (offers == null || options == null || !options.enabled) return null;
+
+        for (String offer : offers.split(",")) {
+            String[] params = offer.split(";");
+            if (!EXTENSION_NAME.equalsIgnoreCase(params[0].trim())) continue;
+
+            boolean serverNoContextTakeover = false;
+            boolean clientNoContextTakeover = false;
+            boolean acceptable = true;
+
+            for (int i = 1; i < params.length && acceptable; i++) {
+                String param = params[i].trim();
+                if (param.isEmpty()) continue;
+
+                String name = param;
+                String value = null;
+                int eq = param.indexOf('=');
+                if (eq >= 0) {
+                    name = param.substring(0, eq).trim();
+                    value = param.substring(eq + 1).trim().replace("\"", "");
+                }
+
+                switch (name.toLowerCase(Locale.ROOT)) {
+                    case "server_no_context_takeover" -> serverNoContextTakeover = true;
+                    case "client_no_context_takeover" -> clientNoContextTakeover = true;
+                    // java.util.zip always compresses with a 32 KiB window
+                    case "server_max_window_bits" -> acceptable = "15".equals(value);
+                    // Our inflater accepts any window size up to 15 bits, so there is nothing to answer
+                    case "client_max_window_bits" -> {}
+                    default -> acceptable = false;
+                }
+            }
+
+            if (acceptable) {
+                boolean reset = serverNoContextTakeover || options.context == CompressionContext.PER_MESSAGE;
+                return new PerMessageDeflate(reset, clientNoContextTakeover, Math.max(0, options.threshold));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Value for the {@code Sec-WebSocket-Extensions} handshake response header.
+     */
+    String responseHeader() {
+        StringBuilder header = new StringBuilder(EXTENSION_NAME);
+        if (resetPerMessage) header.append("; server_no_context_takeover");
+        if (clientNoContextTakeover) header.append("; client_no_context_takeover");
+        return header.toString();
+    }
+
+    /**
+     * Returns the frame to put on the wire for this client. Frames below the size threshold go out uncompressed,
+     * as does anything a writer still sends after the connection was released.
+     */
+    synchronized OutboundFrame encode(OutboundFrame frame) {
+        if (frame.payloadLength() < threshold) return frame;
+        if (resetPerMessage) return frame.deflated();
+        if (released) return frame;
+
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        return frame.deflateWith(deflater);
+    }
+
+    /**
+     * Frees the deflater once the connection is closed; no new one is created afterwards.
+     */
+    synchronized void release() {
+        released = true;
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+}
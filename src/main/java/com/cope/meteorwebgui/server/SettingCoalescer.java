@@ -0,0 +1,136 @@
+package com.cope.meteorwebgui.server;
+
+import meteordevelopment.meteorclient.settings.Setting;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Limits value broadcasts to one per setting per window while it is being dragged or typed into.
+ * <p>
+ * The first change to a quiet setting goes out immediately. Further changes within the window only mark it
+ * pending, and the latest value is sent once the window has passed, so the final value always arrives at most
+ * one window after the last change. {@link #flushAll} sends everything pending right away, for example when
+ * the client reports that a slider was released. Only the latest value copy of a pending setting is kept.
+ * Confined to the change publisher thread.
+ */
+final class SettingCoalescer {
+    interface Publisher {
+        void publish(byte kind, Object owner, Setting<?> setting, Object value);
+    }
+
+    private static final class Slot {
+        private final byte kind;
+        private final Object owner;
+        private long lastSent;
+        private boolean pending;
+        private Object value;
+
+        private Slot(byte kind, Object owner) {
+            this.kind = kind;
+            this.owner = owner;
+        }
+    }
+
+    private final long windowNanos;
+    private final Publisher publisher;
+    // A setting object already identifies its (target, setting) pair
+    private final Map<Setting<?>, Slot> slots = new IdentityHashMap<>();
+    private int pendingCount;
+    private long nextDeadline;
+
+    SettingCoalescer(long windowNanos, Publisher publisher) {
+        this.windowNanos = windowNanos;
+        this.publisher = publisher;
+    }
+
+    void offer(byte kind, Object owner, Setting<?> setting, Object value, long now) {
+        if (windowNanos <= 0) {
+            publisher.publish(kind, owner, setting, value);
+            return;
+        }
+
+        Slot slot = slots.get(setting);
+        if (slot == null) {
+            slot = new Slot(kind, owner);
+            slots.put(setting, slot);
+        } else if (now - slot.lastSent < windowNanos) {
+            slot.value = value;
+            if (!slot.pending) {
+                slot.pending = true;
+                deadline(slot.lastSent + windowNanos);
+            }
+            return;
+        } else if (slot.pending) {
+            // The window passed before flushDue got to it; this change supersedes the held back value
+            slot.pending = false;
+            slot.value = null;
+            pendingCount--;
+        }
+
+        slot.lastSent = now;
+        publisher.publish(kind, owner, setting, value);
+    }
+
+    /**
+     * Forgets {@code setting} because its value was just sent some other way, so an older pending value cannot follow.
+     */
+    void discard(Setting<?> setting) {
+        Slot slot = slots.remove(setting);
+        if (slot != null && slot.pending) {
+            pendingCount--;
+        }
+    }
+
+    /**
+     * Sends the pending settings whose window has passed and forgets ones that have gone quiet.
+     *
+     * @return nanos until the next pending setting is due, or {@link Long#MAX_VALUE} if none is
+     */
+    long flushDue(long now) {
+        if (pendingCount == 0) return Long.MAX_VALUE;
+        if (now - nextDeadline < 0) return nextDeadline - now;
+
+        pendingCount = 0;
+        for (Iterator<Map.Entry<Setting<?>, Slot>> iterator = slots.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Setting<?>, Slot> entry = iterator.next();
+            Slot slot = entry.getValue();
+            if (slot.pending) {
+                long due = slot.lastSent + windowNanos;
+                if (now - due >= 0) {
+                    Object value = slot.value;
+                    slot.pending = false;
+                    slot.value = null;
+                    slot.lastSent = now;
+                    publisher.publish(slot.kind, slot.owner, entry.getKey(), value);
+                } else {
+                    deadline(due);
+                }
+            } else if (now - slot.lastSent >= windowNanos) {
+                iterator.remove();
+            }
+        }
+        return pendingCount == 0 ? Long.MAX_VALUE : Math.max(0, nextDeadline - now);
+    }
+
+    /**
+     * Sends every pending setting now and starts all windows afresh.
+     */
+    void flushAll() {
+        for (Map.Entry<Setting<?>, Slot> entry : slots.entrySet()) {
+            Slot slot = entry.getValue();
+            if (slot.pending) {
+                publisher.publish(slot.kind, slot.owner, entry.getKey(), slot.value);
+            }
+        }
+        slots.clear();
+        pendingCount = 0;
+    }
+
+    private void deadline(long due) {
+        if (pendingCount++ == 0 || due - nextDeadline < 0) {
+            nextDeadline = due;
+        }
+    }
+}
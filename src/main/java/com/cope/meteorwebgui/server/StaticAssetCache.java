@@ -0,0 +1,301 @@
+package com.cope.meteorwebgui.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory index of the bundled WebUI files under {@code /webui}.
+ * Every file is read once, hashed for a strong ETag and, when it compresses well, stored gzipped as well.
+ * Prebuilt {@code .br}/{@code .gz} siblings are picked up when present. The JDK has no Brotli encoder,
+ * so Brotli is only offered for files that ship one; the web UI build writes them (see {@code webui/vite.config.ts}).
+ */
+final class StaticAssetCache {
+    private static final Logger LOG = LoggerFactory.getLogger("WebGUI Assets");
+    private static final String ROOT = "/webui";
+
+    static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    static final String REVALIDATE = "no-cache";
+
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    /**
+     * A cached file and its encoded variants. Each variant carries its own strong ETag.
+     */
+    static final class Asset {
+        final String mimeType;
+        final String cacheControl;
+        final Variant identity;
+        final Variant gzip;
+        final Variant brotli;
+
+        private Asset(String mimeType, String cacheControl, Variant identity, Variant gzip, Variant brotli) {
+            this.mimeType = mimeType;
+            this.cacheControl = cacheControl;
+            this.identity = identity;
+            this.gzip = gzip;
+            this.brotli = brotli;
+        }
+
+        /**
+         * Picks the smallest variant the client accepts, preferring Brotli, then gzip, then identity.
+         */
+        Variant select(String acceptEncoding) {
+            if (brotli != null && accepts(acceptEncoding, "br")) return brotli;
+            if (gzip != null && accepts(acceptEncoding, "gzip")) return gzip;
+            return identity;
+        }
+    }
+
+    static final class Variant {
+        final byte[] data;
+        final String etag;
+        final String contentEncoding;
+
+        private Variant(byte[] data, String etag, String contentEncoding) {
+            this.data = data;
+            this.etag = etag;
+            this.contentEncoding = contentEncoding;
+        }
+
+        /**
+         * Weak comparison against an {@code If-None-Match} header, as RFC 9110 requires for that header.
+         */
+        boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) return false;
+            for (String tag : ifNoneMatch.split(",")) {
+                String candidate = tag.trim();
+                if (candidate.equals("*")) return true;
+                if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+                if (candidate.equals(etag)) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reads every file under {@code /webui} into memory. Files that cannot be enumerated here
+     * (unusual class loaders) are still served through the lazy lookup in {@link #get}.
+     */
+    void preload() {
+        URL root = StaticAssetCache.class.getResource(ROOT);
+        if (root == null) {
+            LOG.warn("No bundled WebUI found at {}", ROOT);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            URI uri = root.toURI();
+            if ("jar".equals(uri.getScheme())) {
+                FileSystem fileSystem;
+                boolean owned = false;
+                try {
+                    fileSystem = FileSystems.newFileSystem(uri, Map.of());
+                    owned = true;
+                } catch (FileSystemAlreadyExistsException e) {
+                    fileSystem = FileSystems.getFileSystem(uri);
+                }
+                try {
+                    index(fileSystem.provider().getPath(uri));
+                } finally {
+                    if (owned) fileSystem.close();
+                }
+            } else {
+                index(Paths.get(uri));
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            LOG.warn("Could not index bundled WebUI, falling back to on-demand loading: {}", e.getMessage());
+        }
+
+        LOG.info("Cached {} WebUI file(s) in {} ms", assets.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void index(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String path = "/" + root.relativize(file).toString().replace('\\', '/');
+                if (isPrecompressedSibling(path)) continue;
+
+                byte[] data = Files.readAllBytes(file);
+                byte[] gzip = readSibling(file.resolveSibling(file.getFileName() + ".gz"));
+                byte[] brotli = readSibling(file.resolveSibling(file.getFileName() + ".br"));
+                assets.put(path, build(path, data, gzip, brotli));
+            }
+        }
+    }
+
+    /**
+     * Returns the cached asset for a request path such as {@code /assets/index-3f2a.js}, loading it on a miss.
+     *
+     * @return the asset, or {@code null} if no such file is bundled
+     */
+    Asset get(String path) {
+        if (path.contains("..")) return null;
+
+        Asset asset = assets.get(path);
+        if (asset != null) return asset;
+
+        try (InputStream stream = StaticAssetCache.class.getResourceAsStream(ROOT + path)) {
+            if (stream == null) return null;
+            byte[] data = stream.readAllBytes();
+            asset = build(path, data, readResource(ROOT + path + ".gz"), readResource(ROOT + path + ".br"));
+        } catch (IOException e) {
+            LOG.error("Failed to load WebUI resource {}: {}", path, e.getMessage());
+            return null;
+        }
+
+        Asset existing = assets.putIfAbsent(path, asset);
+        return existing != null ? existing : asset;
+    }
+
+    private static Asset build(String path, byte[] data, byte[] prebuiltGzip, byte[] prebuiltBrotli) {
+        String mimeType = detectMimeType(path);
+        String hash = hash(data);
+
+        Variant identity = new Variant(data, "\"" + hash + "\"", null);
+
+        byte[] gzipped = prebuiltGzip;
+        if (gzipped == null && isCompressible(mimeType)) {
+            gzipped = gzip(data);
+        }
+        Variant gzip = gzipped != null && gzipped.length < data.length
+            ? new Variant(gzipped, "\"" + hash + "-gzip\"", "gzip")
+            : null;
+
+        Variant brotli = prebuiltBrotli != null && prebuiltBrotli.length < data.length
+            ? new Variant(prebuiltBrotli, "\"" + hash + "-br\"", "br")
+            : null;
+
+        // Vite puts content-hashed bundles under assets/, so their bytes never change for a given URL
+        String cacheControl = path.startsWith("/assets/") ? IMMUTABLE : REVALIDATE;
+        return new Asset(mimeType, cacheControl, identity, gzip, brotli);
+    }
+
+    /**
+     * Determines MIME type based on file extension.
+     */
+    private static String detectMimeType(String filename) {
+        if (filename.endsWith(".html")) {
+            return "text/html";
+        } else if (filename.endsWith(".js")) {
+            return "application/javascript";
+        } else if (filename.endsWith(".css")) {
+            return "text/css";
+        } else if (filename.endsWith(".json")) {
+            return "application/json";
+        } else if (filename.endsWith(".png")) {
+            return "image/png";
+        } else if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) {
+            return "image/jpeg";
+        } else if (filename.endsWith(".svg")) {
+            return "image/svg+xml";
+        } else if (filename.endsWith(".ico")) {
+            return "image/x-icon";
+        } else if (filename.endsWith(".woff")) {
+            return "font/woff";
+        } else if (filename.endsWith(".woff2")) {
+            return "font/woff2";
+        } else if (filename.endsWith(".ttf")) {
+            return "font/ttf";
+        } else if (filename.endsWith(".eot")) {
+            return "application/vnd.ms-fontobject";
+        } else {
+            return "application/octet-stream";
+        }
+    }
+
+    private static boolean isCompressible(String mimeType) {
+        return mimeType.startsWith("text/")
+            || mimeType.equals("application/javascript")
+            || mimeType.equals("application/json")
+            || mimeType.equals("image/svg+xml")
+            || mimeType.equals("image/x-icon")
+            || mimeType.equals("font/ttf")
+            || mimeType.equals("application/vnd.ms-fontobject");
+    }
+
+    private static boolean isPrecompressedSibling(String path) {
+        return path.endsWith(".gz") || path.endsWith(".br");
+    }
+
+    private static byte[] readSibling(Path path) throws IOException {
+        return Files.isRegularFile(path) ? Files.readAllBytes(path) : null;
+    }
+
+    private static byte[] readResource(String resourcePath) throws IOException {
+        try (InputStream stream = StaticAssetCache.class.getResourceAsStream(resourcePath)) {
+            return stream != null ? stream.readAllBytes() : null;
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * First 128 bits of the SHA-256 of {@code data}, in hex.
+     */
+    static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Parses an {@code Accept-Encoding} header, honouring {@code q=0} exclusions and the {@code *} wildcard.
+     */
+    static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) return false;
+
+        Boolean wildcard = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String name = params[0].trim().toLowerCase(Locale.ROOT);
+            boolean allowed = true;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        allowed = Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        allowed = false;
+                    }
+                }
+            }
+
+            if (name.equals(coding)) return allowed;
+            if (name.equals("*")) wildcard = allowed;
+        }
+        return wildcard != null && wildcard;
+    }
+}
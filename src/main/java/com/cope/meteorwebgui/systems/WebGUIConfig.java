@@ -1,5 +1,7 @@
 package com.cope.meteorwebgui.systems;
 
+import com.cope.meteorwebgui.server.CompressionContext;
+import com.cope.meteorwebgui.server.OverflowPolicy;
 import meteordevelopment.meteorclient.settings.*;
 import meteordevelopment.meteorclient.systems.System;
 import meteordevelopment.meteorclient.systems.Systems;
@@ -9,6 +11,7 @@ public class WebGUIConfig extends System<WebGUIConfig> {
     public final Settings settings = new Settings();
 
     private final SettingGroup sgGeneral = settings.getDefaultGroup();
+    private final SettingGroup sgNetwork = settings.createGroup("Network");
 
     // Server Settings
     public final Setting<Boolean> autoStart = sgGeneral.add(new BoolSetting.Builder()
@@ -35,6 +38,66 @@ public class WebGUIConfig extends System<WebGUIConfig> {
         .build()
     );
 
+    // Network Settings
+    public final Setting<Integer> outboundQueueSize = sgNetwork.add(new IntSetting.Builder()
+        .name("outbound-queue-size")
+        .description("Maximum number of messages buffered per WebSocket client before the overflow policy applies.")
+        .defaultValue(256)
+        .min(16)
+        .sliderRange(16, 4096)
+        .build()
+    );
+
+    public final Setting<OverflowPolicy> overflowPolicy = sgNetwork.add(new EnumSetting.Builder<OverflowPolicy>()
+        .name("overflow-policy")
+        .description("What to do when a slow client falls behind and its outbound queue fills up.")
+        .defaultValue(OverflowPolicy.COALESCE)
+        .build()
+    );
+
+    public final Setting<Integer> changeLogSize = sgNetwork.add(new IntSetting.Builder()
+        .name("change-log-size")
+        .description("How many recent changes are kept so reconnecting clients can catch up without a full resync.")
+        .defaultValue(1024)
+        .min(64)
+        .sliderRange(64, 8192)
+        .build()
+    );
+
+    public final Setting<Integer> coalesceWindow = sgNetwork.add(new IntSetting.Builder()
+        .name("coalesce-window")
+        .description("Milliseconds during which repeated changes to one setting, e.g. while dragging a slider, collapse into a single update. 0 sends every change.")
+        .defaultValue(50)
+        .min(0)
+        .sliderRange(0, 500)
+        .build()
+    );
+
+    public final Setting<Boolean> compression = sgNetwork.add(new BoolSetting.Builder()
+        .name("compression")
+        .description("Offer permessage-deflate compression to WebSocket clients.")
+        .defaultValue(true)
+        .build()
+    );
+
+    public final Setting<Integer> compressionThreshold = sgNetwork.add(new IntSetting.Builder()
+        .name("compression-threshold")
+        .description("Messages smaller than this many bytes are sent uncompressed.")
+        .defaultValue(512)
+        .min(0)
+        .sliderRange(0, 8192)
+        .visible(compression::get)
+        .build()
+    );
+
+    public final Setting<CompressionContext> compressionContext = sgNetwork.add(new EnumSetting.Builder<CompressionContext>()
+        .name("compression-context")
+        .description("Per Message compresses each broadcast once for all clients, Shared keeps a per-client context for better ratios.")
+        .defaultValue(CompressionContext.PER_MESSAGE)
+        .visible(compression::get)
+        .build()
+    );
+
     public WebGUIConfig() {
         super("webgui-config");
     }
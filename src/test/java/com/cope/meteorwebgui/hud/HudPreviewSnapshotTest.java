@@ -0,0 +1,134 @@
+package com.cope.meteorwebgui.hud;
+
+import com.cope.meteorwebgui.protocol.JsonStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HudPreviewSnapshotTest {
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int RED = 0xFFFF0000;
+
+    @Test
+    void unchangedSnapshotOnlyCarriesVersions() {
+        HudPreviewSnapshot previous = snapshot(1, 10, 20, null, "FPS: 60");
+        HudPreviewSnapshot next = snapshot(2, 10, 20, null, "FPS: 60");
+
+        JsonObject delta = delta(next, previous);
+
+        assertEquals(Set.of("name", "base", "version", "updatedAt", "changes"), delta.keySet());
+        assertEquals("hud::Fps#1", delta.get("name").getAsString());
+        assertEquals(1, delta.get("base").getAsLong());
+        assertEquals(2, delta.get("version").getAsLong());
+        assertEquals(0, delta.getAsJsonArray("changes").size());
+    }
+
+    @Test
+    void carriesChangedBoundsAndOnlyChangedLineFields() {
+        HudPreviewSnapshot previous = snapshot(1, 10, 20, null, "FPS: 60", "Ping: 30");
+        HudPreviewSnapshot next = snapshot(2, 15, 20, null, "FPS: 61", "Ping: 30");
+
+        JsonObject delta = delta(next, previous);
+
+        assertEquals(15, delta.get("x").getAsInt());
+        assertFalse(delta.has("y"));
+        assertFalse(delta.has("lineCount"));
+        assertFalse(delta.has("draw"));
+        JsonArray changes = delta.getAsJsonArray("changes");
+        assertEquals(1, changes.size());
+        JsonObject change = changes.get(0).getAsJsonObject();
+        assertEquals(Set.of("index", "text"), change.keySet());
+        assertEquals(0, change.get("index").getAsInt());
+        assertEquals("FPS: 61", change.get("text").getAsString());
+    }
+
+    @Test
+    void detectsColorShadowAndScaleChanges() {
+        HudPreviewSnapshot previous = new HudPreviewSnapshot("hud::Fps#1", "FPS", "", "HUD", true, 0, 0, 50, 10, false,
+            1, new String[]{"FPS"}, new double[]{1}, new double[]{2}, new int[]{WHITE}, new double[]{1}, new byte[]{0},
+            null, 100, 1);
+        HudPreviewSnapshot next = new HudPreviewSnapshot("hud::Fps#1", "FPS", "", "HUD", true, 0, 0, 50, 10, false,
+            1, new String[]{"FPS"}, new double[]{1}, new double[]{2}, new int[]{RED}, new double[]{2},
+            new byte[]{HudPreviewFrame.FLAG_SHADOW}, null, 200, 2);
+
+        JsonObject change = delta(next, previous).getAsJsonArray("changes").get(0).getAsJsonObject();
+
+        assertEquals(Set.of("index", "color", "shadow", "scale"), change.keySet());
+        assertEquals("#FFFF0000", change.get("color").getAsString());
+        assertTrue(change.get("shadow").getAsBoolean());
+        assertEquals(2.0, change.get("scale").getAsDouble());
+    }
+
+    @Test
+    void sendsAddedLinesWholeAndNewLineCount() {
+        HudPreviewSnapshot previous = snapshot(1, 0, 0, null, "a");
+        HudPreviewSnapshot next = snapshot(2, 0, 0, null, "a", "b");
+
+        JsonObject delta = delta(next, previous);
+
+        assertEquals(2, delta.get("lineCount").getAsInt());
+        assertEquals(20, delta.get("height").getAsInt());
+        JsonObject added = delta.getAsJsonArray("changes").get(0).getAsJsonObject();
+        assertEquals(Set.of("index", "text", "x", "y", "color", "shadow", "scale"), added.keySet());
+        assertEquals(1, added.get("index").getAsInt());
+        assertEquals("#FFFFFFFF", added.get("color").getAsString());
+    }
+
+    @Test
+    void shrinksLineCountWithoutChanges() {
+        JsonObject delta = delta(snapshot(2, 0, 0, null, "a"), snapshot(1, 0, 0, null, "a", "b"));
+
+        assertEquals(1, delta.get("lineCount").getAsInt());
+        assertEquals(0, delta.getAsJsonArray("changes").size());
+    }
+
+    @Test
+    void sendsDrawListOnlyWhenItChanged() {
+        HudPreviewSnapshot plain = snapshot(1, 0, 0, null, "a");
+        HudPreviewSnapshot quad = snapshot(2, 0, 0, quad(RED), "a");
+        HudPreviewSnapshot sameQuad = snapshot(3, 0, 0, quad(RED), "a");
+
+        JsonObject added = delta(quad, plain);
+        assertTrue(added.get("hasNonText").getAsBoolean());
+        JsonObject draw = added.getAsJsonObject("draw");
+        assertEquals(1, draw.getAsJsonArray("ops").size());
+        assertEquals(HudDrawList.QUAD, draw.getAsJsonArray("ops").get(0).getAsByte());
+        assertEquals(RED, draw.getAsJsonArray("ints").get(0).getAsInt());
+
+        assertFalse(delta(sameQuad, quad).has("draw"));
+        // An empty object tells the client the element stopped drawing primitives
+        assertEquals(new JsonObject(), delta(plain, quad).getAsJsonObject("draw"));
+    }
+
+    private static HudPreviewSnapshot snapshot(long version, int x, int y, HudDrawList draw, String... lines) {
+        int count = lines.length;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        int[] colors = new int[count];
+        double[] scales = new double[count];
+        for (int i = 0; i < count; i++) {
+            ys[i] = i * 10;
+            colors[i] = WHITE;
+            scales[i] = 1;
+        }
+        return new HudPreviewSnapshot("hud::Fps#1", "FPS", "Shows the FPS", "HUD", true, x, y, 50, count * 10,
+            draw != null, count, lines, xs, ys, colors, scales, new byte[count], draw, version * 100, version);
+    }
+
+    private static HudDrawList quad(int color) {
+        HudDrawList list = new HudDrawList();
+        list.quad(1, 2, 3, 4, color);
+        return list.freeze();
+    }
+
+    private static JsonObject delta(HudPreviewSnapshot next, HudPreviewSnapshot previous) {
+        return JsonParser.parseString(JsonStreams.write(out -> next.writeDelta(out, previous))).getAsJsonObject();
+    }
+}
@@ -0,0 +1,174 @@
+package com.cope.meteorwebgui.protocol;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryCodecTest {
+    private static final Gson GSON = new Gson();
+
+    @Test
+    void roundTripsValues() {
+        JsonObject data = JsonParser.parseString("""
+            {"name": "Speed", "active": true, "visible": false, "value": 3, "min": -12345678901,
+             "scale": 0.5, "x": 0.1, "color": "#FF00AA11", "text": "#ff00aa11", "missing": null,
+             "customKey": [1, "two", [], {}], "items": ["é", "\\u2603"]}
+            """).getAsJsonObject();
+
+        WSMessage decoded = roundTrip(new WSMessage(MessageType.SETTING_VALUE_CHANGED, data, "req-1"), 42L);
+
+        assertEquals(MessageType.SETTING_VALUE_CHANGED.getValue(), decoded.getType());
+        assertEquals("req-1", decoded.getId());
+        assertEquals(42L, decoded.getRev());
+        assertEquals(data, decoded.getData());
+    }
+
+    @Test
+    void keepsUnknownTypesAndEmptyData() {
+        WSMessage decoded = roundTrip(new WSMessage("custom.event", null), null);
+
+        assertEquals("custom.event", decoded.getType());
+        assertNull(decoded.getId());
+        assertNull(decoded.getRev());
+        assertEquals(JsonNull.INSTANCE, decoded.getData());
+    }
+
+    @Test
+    void sendsIntegersBeyondDoublePrecisionAsDoubles() {
+        JsonArray data = new JsonArray();
+        data.add(Long.MAX_VALUE);
+
+        WSMessage decoded = roundTrip(new WSMessage(MessageType.RESPONSE, data), null);
+
+        assertEquals((double) Long.MAX_VALUE, decoded.getData().getAsJsonArray().get(0).getAsDouble());
+    }
+
+    @Test
+    void streamedMessageMatchesTreeEncoding() {
+        JsonFragment fragment = JsonFragment.of(out -> {
+            out.beginArray();
+            for (int i = 0; i < 300; i++) out.value(i * 1.5);
+            out.endArray();
+        });
+        JsonStreams.Body body = out -> {
+            out.beginObject();
+            out.name("name").value("HUD");
+            out.name("skipped").value((String) null);
+            out.name("values").beginArray();
+            for (int i = 0; i < 20000; i++) out.value(i);
+            out.endArray();
+            out.name("flags").beginObject();
+            for (int i = 0; i < 200; i++) out.name("flag" + i).value(i % 3 == 0);
+            out.endObject();
+            out.name("cached");
+            fragment.writeTo(out);
+            out.name("spliced").jsonValue("{\"a\": [1, 2.5, null, \"s\"], \"b\": 1e300}");
+            out.endObject();
+        };
+
+        String json = JsonStreams.message(MessageType.INITIAL_STATE, 7L, body);
+        byte[] viaTree = BinaryCodec.encode(GSON.fromJson(json, WSMessage.class));
+
+        assertArrayEquals(viaTree, BinaryCodec.message(MessageType.INITIAL_STATE, 7L, body));
+        assertArrayEquals(viaTree, BinaryCodec.encodeJson(json));
+    }
+
+    @Test
+    void writerSendsFractionalFloatsAsFloat32() {
+        WSMessage decoded = BinaryCodec.decode(BinaryCodec.message(MessageType.HUD_PREVIEW_UPDATE, null, out -> {
+            out.beginArray();
+            out.value(0.1f);
+            out.value(2f);
+            out.endArray();
+        }));
+
+        JsonArray values = decoded.getData().getAsJsonArray();
+        assertEquals((double) 0.1f, values.get(0).getAsDouble());
+        assertEquals(2, values.get(1).getAsInt());
+    }
+
+    @Test
+    void writerRejectsIncompleteDocuments() {
+        assertThrows(RuntimeException.class, () -> BinaryCodec.message(MessageType.RESPONSE, null, out -> out.beginObject()));
+        assertThrows(IllegalStateException.class, () -> BinaryCodec.message(MessageType.RESPONSE, null, out -> {
+            out.beginObject();
+            out.value(1);
+        }));
+    }
+
+    @Test
+    void rejectsUnsupportedVersion() {
+        byte[] payload = encode(new WSMessage(MessageType.PING, null));
+        payload[0] = (byte) (BinaryCodec.VERSION + 1);
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(payload));
+    }
+
+    @Test
+    void rejectsTruncatedPayloads() {
+        byte[] payload = encode(new WSMessage(MessageType.RESPONSE, JsonParser.parseString("{\"name\": \"truncated\"}")));
+
+        for (int length = 0; length < payload.length; length++) {
+            byte[] truncated = Arrays.copyOf(payload, length);
+            assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsStringLengthsThatDoNotFit() {
+        // Custom type name whose length varint is 2^32 + 5: a plain int cast would wrap it to 5
+        byte[] wrapping = {BinaryCodec.VERSION, 0, (byte) 0x85, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10, 'a', 'b', 'c', 'd', 'e', 0};
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(wrapping));
+
+        // Length varint of 2^31, negative as an int
+        byte[] negative = {BinaryCodec.VERSION, 0, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x08, 0};
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(negative));
+    }
+
+    @Test
+    void rejectsContainerCountsLargerThanPayload() {
+        // OBJECT tag with a count of 1000 but no members
+        byte[] payload = {BinaryCodec.VERSION, (byte) MessageType.RESPONSE.getId(), 2, 9, (byte) 0xE8, 0x07};
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(payload));
+    }
+
+    @Test
+    void rejectsUnknownTagsAndKeys() {
+        byte[] unknownTag = {BinaryCodec.VERSION, (byte) MessageType.RESPONSE.getId(), 2, 42};
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(unknownTag));
+
+        byte[] unknownKey = {BinaryCodec.VERSION, (byte) MessageType.RESPONSE.getId(), 2, 9, 1, 0x7F, 0};
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(unknownKey));
+    }
+
+    @Test
+    void compactsKnownKeysAndColors() {
+        JsonObject data = new JsonObject();
+        data.addProperty("color", "#FFFFFFFF");
+        byte[] payload = encode(new WSMessage(MessageType.RESPONSE, data));
+
+        // version, type, flags, object tag, count, key index, color tag, four color bytes
+        assertEquals(11, payload.length);
+        assertTrue(payload.length < GSON.toJson(data).length());
+    }
+
+    private static WSMessage roundTrip(WSMessage message, Long rev) {
+        message.setRev(rev);
+        return BinaryCodec.decode(encode(message));
+    }
+
+    private static byte[] encode(WSMessage message) {
+        return BinaryCodec.encode(message);
+    }
+}
@@ -0,0 +1,140 @@
+package com.cope.meteorwebgui.protocol;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestDecoderTest {
+    @Test
+    void decodesSettingUpdate() throws IOException {
+        RequestDecoder.Inbound inbound = RequestDecoder.decode("""
+            {"type": "setting.update", "id": "7", "data": {"moduleName": "Speed", "settingName": "speed",
+             "value": {"value": 2.5}, "ignored": [1, 2], "flush": true}}
+            """);
+
+        assertEquals(MessageType.SETTING_UPDATE, inbound.type());
+        assertEquals("7", inbound.id());
+        JsonObject value = new JsonObject();
+        value.addProperty("value", 2.5);
+        assertEquals(new ClientRequest.SettingUpdate("Speed", "speed", value, true), inbound.request());
+    }
+
+    @Test
+    void decodesDataSentBeforeType() throws IOException {
+        RequestDecoder.Inbound inbound = RequestDecoder.decode("{\"data\": {\"moduleName\": \"Flight\"}, \"type\": \"module.toggle\"}");
+
+        assertEquals(new ClientRequest.ModuleToggle("Flight"), inbound.request());
+    }
+
+    @Test
+    void acceptsNullOrMissingDataForRequestsWithoutFields() throws IOException {
+        assertInstanceOf(ClientRequest.Ping.class, RequestDecoder.decode("{\"type\": \"ping\", \"data\": null}").request());
+        assertInstanceOf(ClientRequest.ModuleList.class, RequestDecoder.decode("{\"type\": \"module.list\"}").request());
+        assertEquals(new ClientRequest.HudPreviewSubscribe(false),
+            RequestDecoder.decode("{\"type\": \"hud.preview.subscribe\", \"data\": {\"subscribed\": \"yes\"}}").request());
+    }
+
+    @Test
+    void keepsUnknownAndServerOnlyTypesWithoutRequest() throws IOException {
+        RequestDecoder.Inbound unknown = RequestDecoder.decode("{\"type\": \"custom.thing\", \"id\": \"1\", \"data\": {\"a\": 1}}");
+        assertNull(unknown.type());
+        assertEquals("custom.thing", unknown.typeName());
+        assertNull(unknown.request());
+
+        RequestDecoder.Inbound serverOnly = RequestDecoder.decode("{\"type\": \"initial.state\", \"data\": {}}");
+        assertEquals(MessageType.INITIAL_STATE, serverOnly.type());
+        assertNull(serverOnly.request());
+    }
+
+    @Test
+    void rejectsMissingRequiredFields() {
+        assertThrows(IllegalArgumentException.class,
+            () -> RequestDecoder.decode("{\"type\": \"setting.get\", \"data\": {\"moduleName\": \"Speed\"}}"));
+        assertThrows(IllegalArgumentException.class,
+            () -> RequestDecoder.decode("{\"data\": {}, \"type\": \"hud.toggle\"}"));
+    }
+
+    @Test
+    void readsLenientlyButRejectsMalformedJson() throws IOException {
+        assertEquals(new ClientRequest.RegistryRequest("blocks"),
+            RequestDecoder.decode("{type: 'registry.request', data: {registry: 'blocks'}}").request());
+        assertThrows(IOException.class, () -> RequestDecoder.decode("{\"type\": \"ping\", \"data\": {"));
+    }
+
+    @Test
+    void dataRoundTripsThroughEveryDecoder() {
+        JsonObject value = new JsonObject();
+        value.addProperty("value", true);
+        JsonArray updates = JsonParser.parseString("[{\"moduleName\": \"Speed\", \"settingName\": \"speed\", \"value\": {\"value\": 3}}]")
+            .getAsJsonArray();
+
+        List<ClientRequest> requests = List.of(
+            new ClientRequest.ModuleToggle("Flight"),
+            new ClientRequest.ModuleList(),
+            new ClientRequest.SettingUpdate("Speed", "enabled", value, false),
+            new ClientRequest.SettingUpdate("Speed", "enabled", value, true),
+            new ClientRequest.SettingUpdateBatch(updates),
+            new ClientRequest.SettingGet("Speed", "speed"),
+            new ClientRequest.RegistryRequest("items"),
+            new ClientRequest.HudToggle("hud:Watermark#1"),
+            new ClientRequest.HudPreviewSubscribe(true),
+            new ClientRequest.Ping());
+        List<MessageType> types = List.of(MessageType.MODULE_TOGGLE, MessageType.MODULE_LIST, MessageType.SETTING_UPDATE,
+            MessageType.SETTING_UPDATE, MessageType.SETTING_UPDATE_BATCH, MessageType.SETTING_GET, MessageType.REGISTRY_REQUEST,
+            MessageType.HUD_TOGGLE, MessageType.HUD_PREVIEW_SUBSCRIBE, MessageType.PING);
+
+        for (int i = 0; i < requests.size(); i++) {
+            WSMessage message = new WSMessage(types.get(i), toData(requests.get(i)), "id-" + i);
+            RequestDecoder.Inbound inbound = RequestDecoder.decode(message);
+
+            assertEquals(types.get(i), inbound.type());
+            assertEquals("id-" + i, inbound.id());
+            assertEquals(requests.get(i), inbound.request());
+        }
+    }
+
+    @Test
+    void binaryFramesDecodeLikeText() throws IOException {
+        String json = "{\"type\": \"setting.get\", \"id\": \"3\", \"data\": {\"moduleName\": \"Speed\", \"settingName\": \"speed\"}}";
+        WSMessage binary = BinaryCodec.decode(BinaryCodec.encodeJson(json));
+
+        assertEquals(RequestDecoder.decode(json), RequestDecoder.decode(binary));
+    }
+
+    /**
+     * The {@code data} object a client sends for {@code request}; decoding it should yield an equal request.
+     */
+    private static JsonElement toData(ClientRequest request) {
+        JsonObject data = new JsonObject();
+        switch (request) {
+            case ClientRequest.ModuleToggle toggle -> data.addProperty("moduleName", toggle.moduleName());
+            case ClientRequest.ModuleList list -> {}
+            case ClientRequest.SettingUpdate update -> {
+                data.addProperty("moduleName", update.moduleName());
+                data.addProperty("settingName", update.settingName());
+                data.add("value", update.value());
+                if (update.flush()) data.addProperty("flush", true);
+            }
+            case ClientRequest.SettingUpdateBatch batch -> data.add("updates", batch.updates());
+            case ClientRequest.SettingGet get -> {
+                data.addProperty("moduleName", get.moduleName());
+                data.addProperty("settingName", get.settingName());
+            }
+            case ClientRequest.RegistryRequest registry -> data.addProperty("registry", registry.registry());
+            case ClientRequest.HudToggle toggle -> data.addProperty("elementName", toggle.elementName());
+            case ClientRequest.HudPreviewSubscribe subscribe -> data.addProperty("subscribed", subscribe.subscribed());
+            case ClientRequest.Ping ping -> {}
+        }
+        return data;
+    }
+}
@@ -0,0 +1,196 @@
+package com.cope.meteorwebgui.server;
+
+import fi.iki.elonen.NanoWSD.WebSocketException;
+import fi.iki.elonen.NanoWSD.WebSocketFrame.OpCode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InflatingFrameInputStreamTest {
+    private static final byte[] MASK = {0x12, 0x34, 0x56, 0x78};
+
+    @Test
+    void inflatesCompressedMessage() throws IOException {
+        byte[] text = repeat("{\"type\":\"module.toggle\"}", 50);
+        InputStream in = new InflatingFrameInputStream(new ByteArrayInputStream(clientFrame(0x80 | 0x40 | 0x1, deflate(text))));
+
+        assertArrayEquals(plainFrame(0x81, text), in.readAllBytes());
+    }
+
+    @Test
+    void reassemblesFragmentedCompressedMessage() throws IOException {
+        byte[] text = repeat("fragmented payload ", 40);
+        byte[] compressed = deflate(text);
+        int split = compressed.length / 2;
+
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        wire.write(clientFrame(0x40 | 0x1, Arrays.copyOfRange(compressed, 0, split)));
+        wire.write(clientFrame(0x80, Arrays.copyOfRange(compressed, split, compressed.length)));
+        InputStream in = new InflatingFrameInputStream(new ByteArrayInputStream(wire.toByteArray()));
+
+        assertArrayEquals(plainFrame(0x81, text), in.readAllBytes());
+    }
+
+    @Test
+    void passesUncompressedFramesThroughUnmasked() throws IOException {
+        byte[] text = "hello".getBytes(StandardCharsets.UTF_8);
+        byte[] ping = {1, 2, 3};
+
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        wire.write(clientFrame(0x81, text));
+        wire.write(clientFrame(0x89, ping));
+        InputStream in = new InflatingFrameInputStream(new ByteArrayInputStream(wire.toByteArray()));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(plainFrame(0x81, text));
+        expected.write(plainFrame(0x89, ping));
+        assertArrayEquals(expected.toByteArray(), in.readAllBytes());
+    }
+
+    @Test
+    void keepsContextAcrossMessages() throws IOException {
+        byte[] first = repeat("shared context ", 30);
+        byte[] second = repeat("shared context ", 31);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        wire.write(clientFrame(0xC1, deflate(deflater, first)));
+        wire.write(clientFrame(0xC1, deflate(deflater, second)));
+        deflater.end();
+        InputStream in = new InflatingFrameInputStream(new ByteArrayInputStream(wire.toByteArray()));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(plainFrame(0x81, first));
+        expected.write(plainFrame(0x81, second));
+        assertArrayEquals(expected.toByteArray(), in.readAllBytes());
+    }
+
+    @Test
+    void closeFromAnotherThreadLeavesInflaterToReader() throws Exception {
+        byte[] text = repeat("still readable ", 20);
+        byte[] frame = clientFrame(0xC1, deflate(text));
+        byte[] expected = plainFrame(0x81, text);
+        // ByteArrayInputStream ignores close(), so the reader can carry on afterwards
+        InputStream in = new InflatingFrameInputStream(new ByteArrayInputStream(concat(frame, frame)));
+        assertArrayEquals(expected, in.readNBytes(expected.length));
+
+        Thread closer = new Thread(() -> {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        closer.start();
+        closer.join();
+
+        // Had the closing thread ended the inflater, this message could no longer be inflated
+        assertArrayEquals(expected, in.readAllBytes());
+    }
+
+    @Test
+    void rejectsCompressedControlFrame() {
+        InputStream in = new InflatingFrameInputStream(new ByteArrayInputStream(clientFrame(0x80 | 0x40 | 0x9, new byte[]{1})));
+        assertThrows(WebSocketException.class, in::read);
+    }
+
+    @Test
+    void rejectsOversizedFrame() {
+        byte[] header = {(byte) 0x82, (byte) 0xFF, 0, 0, 0, 0, 0x7F, 0, 0, 0};
+        InputStream in = new InflatingFrameInputStream(new ByteArrayInputStream(header));
+        assertThrows(WebSocketException.class, in::read);
+    }
+
+    @Test
+    void serverDeflatedFramesInflateBack() throws IOException {
+        byte[] text = repeat("{\"type\":\"setting.value.changed\",\"data\":{}}", 20);
+        PerMessageDeflate deflate = PerMessageDeflate.negotiate("permessage-deflate; client_max_window_bits",
+            new PerMessageDeflate.Options(true, 0, CompressionContext.PER_MESSAGE));
+        OutboundFrame frame = deflate.encode(OutboundFrame.frame(OpCode.Text, text, 0, text.length));
+
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        frame.write(wire);
+        InputStream in = new InflatingFrameInputStream(new ByteArrayInputStream(wire.toByteArray()));
+
+        assertArrayEquals(plainFrame(0x81, text), in.readAllBytes());
+        deflate.release();
+    }
+
+    @Test
+    void negotiatesOnlyAcceptableOffers() {
+        PerMessageDeflate.Options options = new PerMessageDeflate.Options(true, 64, CompressionContext.SHARED);
+
+        assertEquals("permessage-deflate",
+            PerMessageDeflate.negotiate("permessage-deflate; client_max_window_bits", options).responseHeader());
+        assertEquals("permessage-deflate; server_no_context_takeover; client_no_context_takeover",
+            PerMessageDeflate.negotiate("permessage-deflate; server_no_context_takeover; client_no_context_takeover", options).responseHeader());
+        assertEquals("permessage-deflate",
+            PerMessageDeflate.negotiate("permessage-deflate; server_max_window_bits=10, permessage-deflate", options).responseHeader());
+        assertEquals(null, PerMessageDeflate.negotiate("permessage-deflate; unknown_param", options));
+        assertEquals(null, PerMessageDeflate.negotiate("permessage-deflate",
+            new PerMessageDeflate.Options(false, 64, CompressionContext.SHARED)));
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            return deflate(deflater, data);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // RFC 7692: sync flush, then drop the 00 00 FF FF tail
+    private static byte[] deflate(Deflater deflater, byte[] data) {
+        deflater.setInput(data);
+        byte[] out = new byte[data.length + 64];
+        int written = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+        return Arrays.copyOf(out, written - 4);
+    }
+
+    private static byte[] clientFrame(int head, byte[] payload) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(head);
+        if (payload.length <= 125) {
+            frame.write(0x80 | payload.length);
+        } else {
+            frame.write(0x80 | 126);
+            frame.write(payload.length >>> 8);
+            frame.write(payload.length);
+        }
+        frame.writeBytes(MASK);
+        for (int i = 0; i < payload.length; i++) {
+            frame.write(payload[i] ^ MASK[i & 3]);
+        }
+        return frame.toByteArray();
+    }
+
+    private static byte[] plainFrame(int head, byte[] payload) {
+        int headerLength = OutboundFrame.headerLength(payload.length);
+        byte[] frame = new byte[headerLength + payload.length];
+        OutboundFrame.writeHeader(frame, head, payload.length);
+        System.arraycopy(payload, 0, frame, headerLength, payload.length);
+        return frame;
+    }
+
+    private static byte[] repeat(String text, int count) {
+        return text.repeat(count).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,119 @@
+package com.cope.meteorwebgui.server;
+
+import meteordevelopment.meteorclient.settings.BoolSetting;
+import meteordevelopment.meteorclient.settings.Setting;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SettingCoalescerTest {
+    private static final long WINDOW = 100;
+    private static final Object OWNER = new Object();
+
+    private final List<Object> sent = new ArrayList<>();
+    private final SettingCoalescer coalescer = new SettingCoalescer(WINDOW, (kind, owner, setting, value) -> sent.add(value));
+    private final Setting<?> setting = new BoolSetting.Builder().name("a").defaultValue(false).build();
+    private final Setting<?> other = new BoolSetting.Builder().name("b").defaultValue(false).build();
+
+    @Test
+    void sendsFirstChangeImmediately() {
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 1, 0);
+
+        assertEquals(List.of(1), sent);
+        assertEquals(Long.MAX_VALUE, coalescer.flushDue(0));
+    }
+
+    @Test
+    void holdsChangesWithinWindowAndSendsLatestOnceItPasses() {
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 1, 0);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 2, 10);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 3, 20);
+
+        assertEquals(List.of(1), sent);
+        assertEquals(WINDOW - 50, coalescer.flushDue(50));
+        assertEquals(List.of(1), sent);
+
+        assertEquals(Long.MAX_VALUE, coalescer.flushDue(WINDOW));
+        assertEquals(List.of(1, 3), sent);
+        assertEquals(Long.MAX_VALUE, coalescer.flushDue(WINDOW * 2));
+        assertEquals(List.of(1, 3), sent);
+    }
+
+    @Test
+    void changeAfterWindowSupersedesPendingValue() {
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 1, 0);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 2, 10);
+        // flushDue has not run since the window passed
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 3, WINDOW + 5);
+
+        assertEquals(List.of(1, 3), sent);
+        assertEquals(Long.MAX_VALUE, coalescer.flushDue(WINDOW + 6));
+        assertEquals(Long.MAX_VALUE, coalescer.flushDue(WINDOW * 3));
+        assertEquals(List.of(1, 3), sent);
+    }
+
+    @Test
+    void keepsOtherPendingSettingsWhenOneIsSuperseded() {
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, "a1", 0);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, other, "b1", 0);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, "a2", 10);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, other, "b2", 50);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, "a3", WINDOW + 5);
+
+        assertEquals(List.of("a1", "b1", "a3"), sent);
+        coalescer.flushDue(WINDOW + 5);
+        assertEquals(List.of("a1", "b1", "a3", "b2"), sent);
+        assertEquals(Long.MAX_VALUE, coalescer.flushDue(WINDOW * 3));
+        assertEquals(4, sent.size());
+    }
+
+    @Test
+    void discardedPendingValueIsNotSentAfterDirectChange() {
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 1, 0);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 2, 10);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, other, "b", 20);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, other, "b2", 30);
+        // A batched change to the same setting went out directly with a newer value
+        coalescer.discard(setting);
+
+        assertEquals(WINDOW - 50, coalescer.flushDue(50));
+        assertEquals(Long.MAX_VALUE, coalescer.flushDue(WINDOW * 2));
+        assertEquals(List.of(1, "b", "b2"), sent);
+
+        // The next change starts a fresh window
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 3, WINDOW * 2);
+        assertEquals(List.of(1, "b", "b2", 3), sent);
+    }
+
+    @Test
+    void flushAllSendsPendingChangesOnce() {
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 1, 0);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 2, 10);
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, other, 5, 10);
+
+        coalescer.flushAll();
+        assertEquals(List.of(1, 5), sent.subList(0, 2));
+        // Only the held back value is sent again
+        assertEquals(Set.of(1, 5, 2), Set.copyOf(sent));
+        assertEquals(3, sent.size());
+        assertEquals(Long.MAX_VALUE, coalescer.flushDue(WINDOW * 2));
+
+        // Windows start afresh, so the next change goes out right away
+        coalescer.offer(ChangeJournal.MODULE_SETTING, OWNER, setting, 3, 20);
+        assertEquals(List.of(1, 5, 2, 3), sent);
+    }
+
+    @Test
+    void sendsEveryChangeWithoutWindow() {
+        SettingCoalescer direct = new SettingCoalescer(0, (kind, owner, s, value) -> sent.add(value));
+        direct.offer(ChangeJournal.HUD_SETTING, OWNER, setting, 1, 0);
+        direct.offer(ChangeJournal.HUD_SETTING, OWNER, setting, 2, 0);
+
+        assertEquals(List.of(1, 2), sent);
+        assertEquals(Long.MAX_VALUE, direct.flushDue(0));
+    }
+}
@@ -0,0 +1,337 @@
+// Binary wire format shared with com.cope.meteorwebgui.protocol.BinaryCodec.
+// Tables below are append-only: indices are part of the protocol.
+
+export const BINARY_SUBPROTOCOL = 'meteor-webgui.binary.v1'
+export const JSON_SUBPROTOCOL = 'meteor-webgui.json'
+
+const VERSION = 1
+
+const FLAG_ID = 1
+const FLAG_DATA = 2
+const FLAG_REV = 4
+
+const TAG_NULL = 0
+const TAG_FALSE = 1
+const TAG_TRUE = 2
+const TAG_INT = 3
+const TAG_FLOAT32 = 4
+const TAG_FLOAT64 = 5
+const TAG_STRING = 6
+const TAG_COLOR = 7
+const TAG_ARRAY = 8
+const TAG_OBJECT = 9
+
+const MESSAGE_TYPES: Record<number, string> = {
+  1: 'initial.state',
+  2: 'module.state.changed',
+  3: 'setting.value.changed',
+  4: 'registry.data',
+  5: 'hud.preview.update',
+  6: 'hud.state.changed',
+  7: 'hud.setting.value.changed',
+  8: 'error',
+  9: 'response',
+  10: 'setting.values.changed',
+  11: 'session.resumed',
+  12: 'schema.bundle',
+  13: 'hud.preview.delta',
+  32: 'module.toggle',
+  33: 'module.list',
+  34: 'setting.update',
+  35: 'setting.get',
+  36: 'registry.request',
+  37: 'hud.toggle',
+  38: 'ping',
+  39: 'pong',
+  40: 'setting.update.batch',
+  41: 'hud.preview.subscribe'
+}
+
+const MESSAGE_TYPE_IDS: Record<string, number> = Object.fromEntries(
+  Object.entries(MESSAGE_TYPES).map(([id, type]) => [type, Number(id)])
+)
+
+const KEYS = [
+  'name', 'title', 'description', 'type', 'value', 'defaultValue', 'visible', 'typeMetadata',
+  'settingGroups', 'settings', 'category', 'addon', 'active', 'x', 'y', 'z',
+  'width', 'height', 'lines', 'text', 'color', 'shadow', 'scale', 'elements',
+  'previews', 'group', 'hasNonText', 'updatedAt', 'moduleName', 'settingName', 'elementName', 'success',
+  'r', 'g', 'b', 'a', 'rainbow', 'items', 'entries', 'id',
+  'label', 'min', 'max', 'sliderMin', 'sliderMax', 'noSlider', 'decimalPlaces', 'modules',
+  'hud', 'error', 'registryType', 'registry', 'isKey', 'modifiers', 'family', 'namespace',
+  'updates', 'results', 'hudSettings', 'applied', 'session', 'rev',
+  'schema', 'hash', 'flush', 'subscribed', 'version', 'base', 'lineCount', 'changes',
+  'index', 'draw', 'ops', 'floats', 'ints', 'refs'
+]
+
+const KEY_INDEX = new Map(KEYS.map((key, index) => [key, index]))
+
+const COLOR_PATTERN = /^#[0-9A-F]{8}$/
+
+const textEncoder = new TextEncoder()
+const textDecoder = new TextDecoder()
+
+export interface BinaryMessage {
+  type: string
+  data: any
+  id?: string
+  rev?: number
+}
+
+class Reader {
+  private readonly view: DataView
+  private readonly bytes: Uint8Array
+  private pos = 0
+
+  constructor(buffer: ArrayBuffer) {
+    this.view = new DataView(buffer)
+    this.bytes = new Uint8Array(buffer)
+  }
+
+  private require(count: number) {
+    if (this.pos + count > this.bytes.length) {
+      throw new Error('Truncated binary message')
+    }
+  }
+
+  byte(): number {
+    this.require(1)
+    return this.bytes[this.pos++]
+  }
+
+  varint(): number {
+    // Plain arithmetic instead of bit ops so values up to 2^53 survive
+    let result = 0
+    let scale = 1
+    for (let i = 0; i < 10; i++) {
+      const b = this.byte()
+      result += (b & 0x7f) * scale
+      if ((b & 0x80) === 0) return result
+      scale *= 128
+    }
+    throw new Error('Malformed varint')
+  }
+
+  uint32(): number {
+    this.require(4)
+    const value = this.view.getUint32(this.pos, true)
+    this.pos += 4
+    return value
+  }
+
+  float32(): number {
+    this.require(4)
+    const value = this.view.getFloat32(this.pos, true)
+    this.pos += 4
+    return value
+  }
+
+  float64(): number {
+    this.require(8)
+    const value = this.view.getFloat64(this.pos, true)
+    this.pos += 8
+    return value
+  }
+
+  string(): string {
+    const length = this.varint()
+    this.require(length)
+    const value = textDecoder.decode(this.bytes.subarray(this.pos, this.pos + length))
+    this.pos += length
+    return value
+  }
+}
+
+class Writer {
+  private bytes = new Uint8Array(256)
+  private view = new DataView(this.bytes.buffer)
+  private pos = 0
+
+  private ensure(count: number) {
+    if (this.pos + count <= this.bytes.length) return
+    const grown = new Uint8Array(Math.max(this.bytes.length * 2, this.pos + count))
+    grown.set(this.bytes.subarray(0, this.pos))
+    this.bytes = grown
+    this.view = new DataView(grown.buffer)
+  }
+
+  byte(value: number) {
+    this.ensure(1)
+    this.bytes[this.pos++] = value
+  }
+
+  varint(value: number) {
+    this.ensure(10)
+    while (value >= 0x80) {
+      this.bytes[this.pos++] = (value % 128) | 0x80
+      value = Math.floor(value / 128)
+    }
+    this.bytes[this.pos++] = value
+  }
+
+  uint32(value: number) {
+    this.ensure(4)
+    this.view.setUint32(this.pos, value, true)
+    this.pos += 4
+  }
+
+  float32(value: number) {
+    this.ensure(4)
+    this.view.setFloat32(this.pos, value, true)
+    this.pos += 4
+  }
+
+  float64(value: number) {
+    this.ensure(8)
+    this.view.setFloat64(this.pos, value, true)
+    this.pos += 8
+  }
+
+  string(value: string) {
+    const utf8 = textEncoder.encode(value)
+    this.varint(utf8.length)
+    this.ensure(utf8.length)
+    this.bytes.set(utf8, this.pos)
+    this.pos += utf8.length
+  }
+
+  finish(): Uint8Array {
+    return this.bytes.slice(0, this.pos)
+  }
+}
+
+function readValue(reader: Reader): any {
+  const tag = reader.byte()
+  switch (tag) {
+    case TAG_NULL:
+      return null
+    case TAG_FALSE:
+      return false
+    case TAG_TRUE:
+      return true
+    case TAG_INT: {
+      const raw = reader.varint()
+      return raw % 2 === 0 ? raw / 2 : -(raw + 1) / 2
+    }
+    case TAG_FLOAT32:
+      return reader.float32()
+    case TAG_FLOAT64:
+      return reader.float64()
+    case TAG_STRING:
+      return reader.string()
+    case TAG_COLOR:
+      return '#' + reader.uint32().toString(16).toUpperCase().padStart(8, '0')
+    case TAG_ARRAY: {
+      const size = reader.varint()
+      const array = new Array(size)
+      for (let i = 0; i < size; i++) {
+        array[i] = readValue(reader)
+      }
+      return array
+    }
+    case TAG_OBJECT: {
+      const size = reader.varint()
+      const object: Record<string, any> = {}
+      for (let i = 0; i < size; i++) {
+        const index = reader.varint()
+        const key = index === 0 ? reader.string() : KEYS[index - 1]
+        if (key === undefined) throw new Error(`Unknown key index ${index}`)
+        object[key] = readValue(reader)
+      }
+      return object
+    }
+    default:
+      throw new Error(`Unknown value tag ${tag}`)
+  }
+}
+
+function writeValue(writer: Writer, value: any) {
+  if (value === null || value === undefined) {
+    writer.byte(TAG_NULL)
+  } else if (typeof value === 'boolean') {
+    writer.byte(value ? TAG_TRUE : TAG_FALSE)
+  } else if (typeof value === 'number') {
+    if (Number.isSafeInteger(value) && !Object.is(value, -0)) {
+      writer.byte(TAG_INT)
+      writer.varint(value >= 0 ? value * 2 : -value * 2 - 1)
+    } else if (Math.fround(value) === value) {
+      writer.byte(TAG_FLOAT32)
+      writer.float32(value)
+    } else {
+      writer.byte(TAG_FLOAT64)
+      writer.float64(value)
+    }
+  } else if (typeof value === 'string') {
+    if (COLOR_PATTERN.test(value)) {
+      writer.byte(TAG_COLOR)
+      writer.uint32(parseInt(value.slice(1), 16))
+    } else {
+      writer.byte(TAG_STRING)
+      writer.string(value)
+    }
+  } else if (Array.isArray(value)) {
+    writer.byte(TAG_ARRAY)
+    writer.varint(value.length)
+    for (const item of value) {
+      writeValue(writer, item)
+    }
+  } else if (typeof value === 'object') {
+    // Match JSON.stringify: undefined members are dropped
+    const entries = Object.entries(value).filter(([, item]) => item !== undefined)
+    writer.byte(TAG_OBJECT)
+    writer.varint(entries.length)
+    for (const [key, item] of entries) {
+      const index = KEY_INDEX.get(key)
+      if (index !== undefined) {
+        writer.varint(index + 1)
+      } else {
+        writer.varint(0)
+        writer.string(key)
+      }
+      writeValue(writer, item)
+    }
+  } else {
+    writer.byte(TAG_NULL)
+  }
+}
+
+export function decodeMessage(buffer: ArrayBuffer): BinaryMessage {
+  const reader = new Reader(buffer)
+  const version = reader.byte()
+  if (version !== VERSION) {
+    throw new Error(`Unsupported binary protocol version ${version}`)
+  }
+
+  const typeId = reader.varint()
+  const type = typeId === 0 ? reader.string() : MESSAGE_TYPES[typeId] ?? `unknown:${typeId}`
+  const flags = reader.byte()
+  const id = (flags & FLAG_ID) !== 0 ? reader.string() : undefined
+  const rev = (flags & FLAG_REV) !== 0 ? reader.varint() : undefined
+  const data = (flags & FLAG_DATA) !== 0 ? readValue(reader) : null
+
+  const message: BinaryMessage = { type, data }
+  if (id !== undefined) message.id = id
+  if (rev !== undefined) message.rev = rev
+  return message
+}
+
+export function encodeMessage(message: BinaryMessage): Uint8Array {
+  const writer = new Writer()
+  writer.byte(VERSION)
+
+  const typeId = MESSAGE_TYPE_IDS[message.type]
+  if (typeId !== undefined) {
+    writer.varint(typeId)
+  } else {
+    writer.varint(0)
+    writer.string(message.type)
+  }
+
+  const hasData = message.data !== null && message.data !== undefined
+  writer.byte((message.id !== undefined ? FLAG_ID : 0) | (hasData ? FLAG_DATA : 0) | (message.rev !== undefined ? FLAG_REV : 0))
+  if (message.id !== undefined) writer.string(message.id)
+  if (message.rev !== undefined) writer.varint(message.rev)
+  if (hasData) writeValue(writer, message.data)
+
+  return writer.finish()
+}
@@ -0,0 +1,124 @@
+// Compact initial state shared with com.cope.meteorwebgui.server.InitialStateCache.
+// The schema bundle holds everything that never changes at runtime and is cached across reloads
+// by its hash; initial.state then only carries values aligned with it.
+
+import type { ModuleInfo, SettingGroup } from '../stores/modules'
+import type { HudElementState, HudInitialStatePayload } from '../stores/hud'
+
+const STORAGE_KEY = 'meteor-webgui:schema'
+
+type SettingSchema = Omit<SettingGroup['settings'][number], 'value' | 'visible'>
+
+interface GroupSchema {
+  name: string
+  settings: SettingSchema[]
+}
+
+interface ModuleSchema {
+  name: string
+  title: string
+  description: string
+  category: string
+  addon: string
+  settingGroups: GroupSchema[]
+}
+
+interface HudElementSchema extends ModuleSchema {
+  group: string
+}
+
+export interface SchemaBundle {
+  hash: string
+  modules: Record<string, ModuleSchema[]>
+  hud: HudElementSchema[]
+}
+
+// [active, values, hidden]
+type ModuleValues = [boolean, any[], number[]]
+// [active, x, y, width, height, values, hidden]
+type HudValues = [boolean, number, number, number, number, any[], number[]]
+
+export interface CompactState {
+  session: string
+  schema: string
+  modules: ModuleValues[]
+  hud: HudValues[]
+}
+
+let bundle: SchemaBundle | null = null
+
+export function loadSchema(): SchemaBundle | null {
+  if (bundle) return bundle
+  try {
+    const stored = localStorage.getItem(STORAGE_KEY)
+    bundle = stored ? JSON.parse(stored) : null
+  } catch {
+    bundle = null
+  }
+  return bundle
+}
+
+export function storeSchema(next: SchemaBundle) {
+  bundle = next
+  try {
+    localStorage.setItem(STORAGE_KEY, JSON.stringify(next))
+  } catch (e) {
+    // Quota exceeded or storage disabled; keep it for this page only
+    console.warn('Failed to persist setting schema:', e)
+  }
+}
+
+export function clearSchema() {
+  bundle = null
+  try {
+    localStorage.removeItem(STORAGE_KEY)
+  } catch {
+    // ignore
+  }
+}
+
+function expandGroups(groups: GroupSchema[], values: any[], hidden: number[]): SettingGroup[] {
+  const hiddenSet = new Set(hidden)
+  let index = 0
+  return groups.map((group) => ({
+    name: group.name,
+    settings: group.settings.map((setting) => {
+      const i = index++
+      return { ...setting, value: values[i], visible: !hiddenSet.has(i) }
+    })
+  }))
+}
+
+// Returns null if the state was built against a schema we do not have
+export function expandCompactState(state: CompactState): {
+  modules: Record<string, ModuleInfo[]>
+  hud: HudInitialStatePayload
+} | null {
+  const schema = loadSchema()
+  if (!schema || schema.hash !== state.schema) return null
+
+  const modules: Record<string, ModuleInfo[]> = {}
+  let index = 0
+  for (const [category, entries] of Object.entries(schema.modules)) {
+    modules[category] = entries.map((module) => {
+      const [active, values, hidden] = state.modules[index++]
+      return { ...module, active, settingGroups: expandGroups(module.settingGroups, values, hidden) }
+    })
+  }
+
+  const elements: HudElementState[] = schema.hud.map((element, i) => {
+    const [active, x, y, width, height, values, hidden] = state.hud[i]
+    return {
+      ...element,
+      active,
+      x,
+      y,
+      width,
+      height,
+      lines: [],
+      settingGroups: expandGroups(element.settingGroups, values, hidden)
+    }
+  })
+
+  return { modules, hud: { elements } }
+}
@@ -11,6 +11,14 @@ export interface HudTextLine {
   scale: number
 }
 
+// Non-text primitives in draw order; see com.cope.meteorwebgui.hud.HudDrawList for the layout
+export interface HudDrawList {
+  ops: number[]
+  floats: number[]
+  ints: number[]
+  refs: string[]
+}
+
 export interface HudElementState extends ModuleInfo {
   group: string
   x: number
@@ -19,7 +27,9 @@ export interface HudElementState extends ModuleInfo {
   height: number
   hasNonText?: boolean
   updatedAt?: number
+  version?: number
   lines: HudTextLine[]
+  draw?: HudDrawList
 }
 
 export interface HudInitialStatePayload {
@@ -32,8 +42,29 @@ export interface HudPreviewPayload extends Partial<HudElementState> {
   lines: HudTextLine[]
   hasNonText?: boolean
   updatedAt?: number
+  version?: number
+}
+
+// Changes relative to the preview version `base`; see HudPreviewSnapshot.writeDelta
+export interface HudPreviewDelta {
+  name: string
+  base: number
+  version: number
+  updatedAt?: number
+  active?: boolean
+  x?: number
+  y?: number
+  width?: number
+  height?: number
+  hasNonText?: boolean
+  lineCount?: number
+  // Replaces the whole list; an empty object means the element no longer draws primitives
+  draw?: Partial<HudDrawList>
+  changes: Array<Partial<HudTextLine> & { index: number }>
 }
 
+const EMPTY_LINE: HudTextLine = { text: '', x: 0, y: 0, color: '#FFFFFFFF', shadow: false, scale: 1 }
+
 export const useHudStore = defineStore('hud', () => {
   const elements = ref<Record<string, HudElementState>>({})
   const loading = ref(true)
@@ -74,8 +105,11 @@ export const useHudStore = defineStore('hud', () => {
           width: preview.width ?? 0,
           height: preview.height ?? 0,
           lines: preview.lines || [],
+          draw: preview.draw,
           hasNonText: preview.hasNonText,
           updatedAt: preview.updatedAt,
+          // applyPreviewDelta only accepts deltas built against the version held here
+          version: preview.version,
           settingGroups: []
         }
         continue
@@ -84,7 +118,29 @@ export const useHudStore = defineStore('hud', () => {
       map[preview.name] = {
         ...existing,
         ...preview,
-        lines: preview.lines || existing.lines
+        lines: preview.lines || existing.lines,
+        // Full previews always carry the draw list if there is one
+        draw: preview.draw
+      }
+    }
+  }
+
+  function applyPreviewDelta(deltas?: HudPreviewDelta[]) {
+    if (!deltas?.length) return
+    for (const delta of deltas) {
+      const element = elements.value[delta.name]
+      // Built against a version we do not have; the next keyframe brings us back in sync
+      if (!element || (element.version !== delta.base && element.version !== delta.version)) continue
+
+      const { name, base, changes, lineCount, draw, ...fields } = delta
+      const lines = element.lines.slice(0, lineCount ?? element.lines.length)
+      for (const { index, ...change } of changes) {
+        lines[index] = { ...(lines[index] ?? EMPTY_LINE), ...change }
+      }
+      Object.assign(element, fields)
+      element.lines = lines
+      if (draw) {
+        element.draw = draw.ops ? (draw as HudDrawList) : undefined
       }
     }
   }
@@ -121,6 +177,7 @@ export const useHudStore = defineStore('hud', () => {
     orderedElements,
     setInitialState,
     applyPreviewUpdate,
+    applyPreviewDelta,
     applyStateChange,
     updateSettingValue
   }
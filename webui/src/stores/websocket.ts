@@ -2,11 +2,14 @@ import { defineStore } from 'pinia'
 import { ref } from 'vue'
 import { useModulesStore } from './modules'
 import { useHudStore } from './hud'
+import { BINARY_SUBPROTOCOL, JSON_SUBPROTOCOL, decodeMessage, encodeMessage } from '../protocol/binary'
+import { clearSchema, expandCompactState, loadSchema, storeSchema } from '../protocol/schema'
 
 export interface WSMessage {
   type: string
   data: any
   id?: string
+  rev?: number
 }
 
 export interface RegistryData {
@@ -29,6 +32,16 @@ export interface RegistryData {
   potions?: Array<{ id: string; namespace: string }>
 }
 
+// JSON stays the default; opt into the compact binary encoding with ?wire=binary
+// or localStorage['meteor-webgui:wire'] = 'binary'
+function preferredSubprotocols(): string[] {
+  const requested = new URLSearchParams(window.location.search).get('wire')
+    ?? localStorage.getItem('meteor-webgui:wire')
+  return requested === 'binary'
+    ? [BINARY_SUBPROTOCOL, JSON_SUBPROTOCOL]
+    : [JSON_SUBPROTOCOL]
+}
+
 export const useWebSocketStore = defineStore('websocket', () => {
   const ws = ref<WebSocket | null>(null)
   const connected = ref(false)
@@ -36,6 +49,12 @@ export const useWebSocketStore = defineStore('websocket', () => {
   const error = ref<string | null>(null)
   const registries = ref<RegistryData | null>(null)
 
+  // Change-log position, sent on reconnect so the server only replays what we missed
+  let session: string | null = null
+  let lastRev = 0
+  // Whether the HUD view is open; re-announced on every connection since the server forgets it
+  let previewsWanted = false
+
   const modulesStore = useModulesStore()
   const hudStore = useHudStore()
 
@@ -51,16 +70,26 @@ export const useWebSocketStore = defineStore('websocket', () => {
       // In production, uses same host/port as the page was loaded from
       const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:'
       const host = window.location.host || 'localhost:8080'
-      const wsUrl = `${protocol}//${host}/ws`
+      // Always announce the cached schema hash (empty if none) so the server sends values only
+      const params = new URLSearchParams({ schema: loadSchema()?.hash ?? '' })
+      if (session) {
+        params.set('session', session)
+        params.set('since', String(lastRev))
+      }
+      const wsUrl = `${protocol}//${host}/ws?${params}`
       console.log('Connecting to WebSocket:', wsUrl)
 
-      ws.value = new WebSocket(wsUrl)
+      ws.value = new WebSocket(wsUrl, preferredSubprotocols())
+      ws.value.binaryType = 'arraybuffer'
 
       ws.value.onopen = () => {
-        console.log('WebSocket connected')
+        console.log('WebSocket connected', ws.value?.protocol || '(no subprotocol)')
         connected.value = true
         reconnecting.value = false
         error.value = null
+        if (previewsWanted) {
+          sendPreviewSubscription()
+        }
       }
 
       ws.value.onclose = () => {
@@ -84,7 +113,9 @@ export const useWebSocketStore = defineStore('websocket', () => {
 
       ws.value.onmessage = (event) => {
         try {
-          const message: WSMessage = JSON.parse(event.data)
+          const message: WSMessage = event.data instanceof ArrayBuffer
+            ? decodeMessage(event.data)
+            : JSON.parse(event.data)
           handleMessage(message)
         } catch (e) {
           console.error('Failed to parse WebSocket message:', e)
@@ -99,11 +130,39 @@ export const useWebSocketStore = defineStore('websocket', () => {
   function handleMessage(message: WSMessage) {
     console.log('Received message:', message.type, message.data)
 
+    if (message.rev !== undefined && message.type !== 'initial.state') {
+      lastRev = Math.max(lastRev, message.rev)
+    }
+
     switch (message.type) {
+      case 'session.resumed':
+        console.log('Resumed session at revision', message.data.rev)
+        break
+
+      case 'schema.bundle':
+        storeSchema(message.data)
+        break
+
       case 'initial.state':
-        modulesStore.setInitialState(message.data.modules)
-        if (message.data.hud) {
-          hudStore.setInitialState(message.data.hud)
+        session = message.data.session ?? null
+        lastRev = message.rev ?? 0
+        if (message.data.schema !== undefined) {
+          const expanded = expandCompactState(message.data)
+          if (!expanded) {
+            // Our cached schema went stale between connect and reply; start over and fetch it again
+            console.warn('Initial state does not match cached schema, reloading it')
+            clearSchema()
+            session = null
+            ws.value?.close()
+            break
+          }
+          modulesStore.setInitialState(expanded.modules)
+          hudStore.setInitialState(expanded.hud)
+        } else {
+          modulesStore.setInitialState(message.data.modules)
+          if (message.data.hud) {
+            hudStore.setInitialState(message.data.hud)
+          }
         }
         // Store registry data
         if (message.data.registries) {
@@ -127,6 +186,15 @@ export const useWebSocketStore = defineStore('websocket', () => {
         )
         break
 
+      case 'setting.values.changed':
+        for (const change of message.data.settings ?? []) {
+          modulesStore.updateSettingValue(change.moduleName, change.settingName, change.value)
+        }
+        for (const change of message.data.hudSettings ?? []) {
+          hudStore.updateSettingValue(change.elementName, change.settingName, change.value)
+        }
+        break
+
       case 'registry.data':
         // Handle lazy-loaded registry data
         if (!registries.value) {
@@ -155,6 +223,10 @@ export const useWebSocketStore = defineStore('websocket', () => {
         hudStore.applyPreviewUpdate(message.data.elements)
         break
 
+      case 'hud.preview.delta':
+        hudStore.applyPreviewDelta(message.data.elements)
+        break
+
       case 'hud.state.changed':
         hudStore.applyStateChange(message.data)
         break
@@ -179,7 +251,11 @@ export const useWebSocketStore = defineStore('websocket', () => {
 
   function send(message: WSMessage) {
     if (ws.value && ws.value.readyState === WebSocket.OPEN) {
-      ws.value.send(JSON.stringify(message))
+      if (ws.value.protocol === BINARY_SUBPROTOCOL) {
+        ws.value.send(encodeMessage(message))
+      } else {
+        ws.value.send(JSON.stringify(message))
+      }
     } else {
       console.error('WebSocket not connected')
       error.value = 'Not connected to server'
@@ -194,6 +270,30 @@ export const useWebSocketStore = defineStore('websocket', () => {
     connected.value = false
   }
 
+  // Applies many settings in one round trip; the server answers with per-item results
+  function updateSettings(updates: Array<{ moduleName: string; settingName: string; value: any }>) {
+    send({
+      type: 'setting.update.batch',
+      data: { updates }
+    })
+  }
+
+  // The server only captures and sends HUD previews while some client has them subscribed
+  function setHudPreviewsSubscribed(subscribed: boolean) {
+    if (previewsWanted === subscribed) return
+    previewsWanted = subscribed
+    if (ws.value?.readyState === WebSocket.OPEN) {
+      sendPreviewSubscription()
+    }
+  }
+
+  function sendPreviewSubscription() {
+    send({
+      type: 'hud.preview.subscribe',
+      data: { subscribed: previewsWanted }
+    })
+  }
+
   function requestRegistry(type: string) {
     console.log('Requesting registry:', type)
     send({
@@ -210,6 +310,8 @@ export const useWebSocketStore = defineStore('websocket', () => {
     connect,
     disconnect,
     send,
+    updateSettings,
+    setHudPreviewsSubscribed,
     requestRegistry
   }
 })
@@ -1,8 +1,34 @@
-import { defineConfig } from 'vite'
+import { writeFileSync } from 'node:fs'
+import { join } from 'node:path'
+import { brotliCompressSync, constants } from 'node:zlib'
+import { defineConfig, type Plugin } from 'vite'
 import vue from '@vitejs/plugin-vue'
 
+// The JDK has no Brotli encoder, so the server only offers br for files that ship a .br sibling (see StaticAssetCache)
+function brotli(): Plugin {
+  return {
+    name: 'webui-brotli',
+    apply: 'build',
+    writeBundle(options, bundle) {
+      for (const [fileName, output] of Object.entries(bundle)) {
+        if (!/\.(html|js|css|json|svg|ico|ttf|eot)$/.test(fileName)) continue
+        const source = Buffer.from(output.type === 'chunk' ? output.code : output.source)
+        const compressed = brotliCompressSync(source, {
+          params: {
+            [constants.BROTLI_PARAM_QUALITY]: constants.BROTLI_MAX_QUALITY,
+            [constants.BROTLI_PARAM_SIZE_HINT]: source.length
+          }
+        })
+        if (compressed.length < source.length) {
+          writeFileSync(join(options.dir!, `${fileName}.br`), compressed)
+        }
+      }
+    }
+  }
+}
+
 export default defineConfig({
-  plugins: [vue()],
+  plugins: [vue(), brotli()],
   base: '/', // Use absolute paths for bundling in JAR
   server: {
     port: 3000,